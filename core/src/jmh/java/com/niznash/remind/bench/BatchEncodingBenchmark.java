@@ -0,0 +1,46 @@
+package com.niznash.remind.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.niznash.remind.util.SqlUtil;
+
+/**
+ * Encodes the {@code _id IN (...)} selection of a batch delete of {@code count} reminders.
+ *
+ * @author niznash@gmail.com (Alejandro Nijamkin)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchEncodingBenchmark {
+
+    @Param({ "1000", "100000", "1000000" })
+    public int count;
+
+    private long[] mIds;
+
+    @Setup
+    public void setUp() {
+        mIds = Sizes.ids(count);
+    }
+
+    @Benchmark
+    public String inSelection() {
+        return SqlUtil.inSelection("_id", mIds);
+    }
+}
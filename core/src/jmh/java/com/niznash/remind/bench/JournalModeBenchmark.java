@@ -0,0 +1,158 @@
+package com.niznash.remind.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Three threads read pages of the reminder list while a fourth commits batches of writes, on a
+ * database file with the schema and statements of {@code RemindProvider}, in both journal modes
+ * {@code RemindDatabaseHelper} uses: the rollback journal with {@code synchronous=FULL} before
+ * Honeycomb, the write-ahead log with {@code synchronous=NORMAL} after.
+ *
+ * <p>Every thread has a connection of its own, as the framework gives queries in write-ahead log
+ * mode. Runs on the SQLite of the JDK host, not the one of a device: compare the modes, not the
+ * numbers.
+ *
+ * @author niznash@gmail.com (Alejandro Nijamkin)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JournalModeBenchmark {
+
+    private static final int COUNT = 10000;
+
+    // Same as ReminderPagedCursor.DEFAULT_PAGE_SIZE
+    private static final int PAGE_SIZE = 50;
+
+    // Rows updated by every write, as a group commit of the service does
+    private static final int BATCH_SIZE = 32;
+
+    private static final String PAGE_SQL = "SELECT _id, title, time, recurrence FROM reminder"
+        + " WHERE time>=? ORDER BY time ASC, _id ASC LIMIT " + PAGE_SIZE;
+    private static final String UPDATE_SQL = "UPDATE reminder SET time=? WHERE _id=?";
+
+    @State(Scope.Benchmark)
+    public static class Database {
+        @Param({ "DELETE", "WAL" })
+        public String journal;
+
+        File file;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException, SQLException {
+            file = File.createTempFile("remind", ".db");
+            Connection connection = open(this);
+            Statement statement = connection.createStatement();
+            statement.execute("PRAGMA journal_mode=" + journal);
+            statement.execute("CREATE TABLE reminder (_id INTEGER PRIMARY KEY AUTOINCREMENT,"
+                    + " title TEXT NOT NULL, time INTEGER NOT NULL,"
+                    + " recurrence INTEGER NOT NULL DEFAULT 0)");
+            statement.execute("CREATE INDEX reminder_time_index ON reminder (time)");
+            statement.close();
+
+            connection.setAutoCommit(false);
+            PreparedStatement insert =
+                connection.prepareStatement("INSERT INTO reminder (title, time) VALUES (?, ?)");
+            long[] times = Sizes.randomTimes(COUNT);
+            for (int i = 0; i < COUNT; i++) {
+                insert.setString(1, "Reminder " + i);
+                insert.setLong(2, times[i]);
+                insert.executeUpdate();
+            }
+            connection.commit();
+            connection.close();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            new File(file.getPath() + "-wal").delete();
+            new File(file.getPath() + "-shm").delete();
+            file.delete();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Session {
+        Connection connection;
+        PreparedStatement page;
+        PreparedStatement update;
+        final Random random = new Random();
+
+        @Setup(Level.Trial)
+        public void setUp(Database database) throws SQLException {
+            connection = open(database);
+            page = connection.prepareStatement(PAGE_SQL);
+            update = connection.prepareStatement(UPDATE_SQL);
+            connection.setAutoCommit(false);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws SQLException {
+            connection.close();
+        }
+    }
+
+    private static Connection open(Database database) throws SQLException {
+        Connection connection = DriverManager.getConnection("jdbc:sqlite:" + database.file);
+        Statement statement = connection.createStatement();
+        statement.execute("PRAGMA busy_timeout=10000");
+        statement.execute("PRAGMA synchronous=" + ("WAL".equals(database.journal) ? 1 : 2));
+        statement.close();
+        return connection;
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public int read(Session session) throws SQLException {
+        session.page.setLong(1, Sizes.START + (long) (session.random.nextDouble() * Sizes.SPREAD));
+        ResultSet rows = session.page.executeQuery();
+        int count = 0;
+        while (rows.next()) {
+            count++;
+        }
+        rows.close();
+        session.connection.commit();
+        return count;
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public void write(Session session) throws SQLException {
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            session.update.setLong(1,
+                    Sizes.START + (long) (session.random.nextDouble() * Sizes.SPREAD));
+            session.update.setLong(2, 1 + session.random.nextInt(COUNT));
+            session.update.executeUpdate();
+        }
+        session.connection.commit();
+    }
+}
@@ -0,0 +1,67 @@
+package com.niznash.remind.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.niznash.remind.util.LatencyHistogram;
+
+/**
+ * Records durations in a histogram, as the provider and the service do around every operation,
+ * from one thread and from four at once. The cost should be a small fraction of the cheapest
+ * operation timed, a query of a few microseconds.
+ *
+ * @author niznash@gmail.com (Alejandro Nijamkin)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LatencyHistogramBenchmark {
+
+    private final LatencyHistogram mHistogram = new LatencyHistogram("bench");
+    private long[] mDurations;
+
+    @Setup
+    public void setUp() {
+        // Durations from a microsecond to about a second
+        mDurations = new long[1024];
+        for (int i = 0; i < mDurations.length; i++) {
+            mDurations[i] = (long) Math.pow(10, 3 + 6.0 * i / mDurations.length);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Benchmark
+    public void record(Cursor cursor) {
+        mHistogram.record(mDurations[cursor.next]);
+        cursor.next = (cursor.next + 1) & (mDurations.length - 1);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordContended(Cursor cursor) {
+        record(cursor);
+    }
+
+    @Benchmark
+    public long percentile() {
+        return mHistogram.getPercentile(99);
+    }
+}
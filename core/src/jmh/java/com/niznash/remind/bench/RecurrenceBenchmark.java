@@ -0,0 +1,80 @@
+package com.niznash.remind.bench;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.niznash.remind.util.Recurrence;
+import com.niznash.remind.util.TimeUtil;
+
+/**
+ * Computes the next occurrence of recurring reminders, as the list does for every recurring row it
+ * binds and the scheduler does every time one fires.
+ *
+ * <p>{@code years} is how long ago the first occurrence was: the cost should not grow with it.
+ *
+ * @author niznash@gmail.com (Alejandro Nijamkin)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecurrenceBenchmark {
+
+    @Param({ "0", "1", "20" })
+    public int years;
+
+    private long[] mTimes;
+    private int mNext;
+    private long mStart;
+
+    private final int mHourly = Recurrence.everyHours(3);
+    private final int mDaily = Recurrence.everyDays(1);
+    private final int mWeekdays = Recurrence.onDaysOfWeek(Calendar.MONDAY, Calendar.TUESDAY,
+            Calendar.WEDNESDAY, Calendar.THURSDAY, Calendar.FRIDAY);
+
+    @Setup
+    public void setUp() {
+        // With daylight saving time, so the local time of day has to be kept across changes
+        TimeZone.setDefault(TimeZone.getTimeZone("America/New_York"));
+        TimeUtil.invalidate();
+
+        mTimes = Sizes.randomTimes(1024);
+        mStart = Sizes.START - years * 365L * 24 * 60 * 60 * 1000;
+    }
+
+    private long nextTime() {
+        final long time = mTimes[mNext];
+        mNext = (mNext + 1) & (mTimes.length - 1);
+        return time;
+    }
+
+    @Benchmark
+    public long hourly() {
+        return TimeUtil.nextOccurrence(mStart, mHourly, nextTime());
+    }
+
+    @Benchmark
+    public long daily() {
+        return TimeUtil.nextOccurrence(mStart, mDaily, nextTime());
+    }
+
+    @Benchmark
+    public long weekdays() {
+        return TimeUtil.nextOccurrence(mStart, mWeekdays, nextTime());
+    }
+}
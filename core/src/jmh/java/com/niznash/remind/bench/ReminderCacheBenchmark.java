@@ -0,0 +1,72 @@
+package com.niznash.remind.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.niznash.remind.content.Reminder;
+import com.niznash.remind.content.ReminderCache;
+import com.niznash.remind.util.Recurrence;
+
+/**
+ * Looks up reminders in a {@link ReminderCache} of the size the app uses, for {@code count}
+ * reminders. Lookups are skewed towards recently used IDs, the way repeated edits are; a miss
+ * replaces the least recently used entry, as a database load would.
+ *
+ * @author niznash@gmail.com (Alejandro Nijamkin)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReminderCacheBenchmark {
+
+    // Same as RemindData.CACHE_CAPACITY
+    private static final int CAPACITY = 512;
+
+    @Param({ "1000", "100000", "1000000" })
+    public int count;
+
+    private long[] mLookups;
+    private int mNext;
+    private ReminderCache mCache;
+    private final Reminder mReminder = new Reminder();
+
+    @Setup
+    public void setUp() {
+        mCache = new ReminderCache(CAPACITY, 0);
+
+        // Nine out of ten lookups go to a small hot set, the rest anywhere
+        Random random = new Random(count);
+        mLookups = new long[1 << 16];
+        for (int i = 0; i < mLookups.length; i++) {
+            final int bound = random.nextInt(10) != 0 ? Math.min(count, CAPACITY / 2) : count;
+            mLookups[i] = 1 + random.nextInt(bound);
+        }
+    }
+
+    @Benchmark
+    public boolean getOrLoad() {
+        final long id = mLookups[mNext];
+        mNext = (mNext + 1) & (mLookups.length - 1);
+        if (mCache.get(id, mReminder)) {
+            return true;
+        }
+
+        mCache.put(id, "Reminder", id, Recurrence.NONE);
+        return false;
+    }
+}
@@ -0,0 +1,100 @@
+package com.niznash.remind.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.niznash.remind.content.MemoryReminderStore;
+import com.niznash.remind.content.Reminder;
+import com.niznash.remind.content.ReminderStore;
+import com.niznash.remind.util.Recurrence;
+
+/**
+ * Reads from a {@link MemoryReminderStore} holding {@code count} reminders: single reminders by
+ * ID, pages of the list the size the list loads, and updates that move a reminder in time.
+ *
+ * @author niznash@gmail.com (Alejandro Nijamkin)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReminderStoreBenchmark {
+
+    // Same as ReminderPagedCursor.DEFAULT_PAGE_SIZE
+    private static final int PAGE_SIZE = 50;
+
+    @Param({ "1000", "100000", "1000000" })
+    public int count;
+
+    private MemoryReminderStore mStore;
+    private long[] mTimes;
+    private long[] mIds;
+    private int mNext;
+    private final Reminder mReminder = new Reminder();
+
+    @Setup
+    public void setUp() {
+        mStore = new MemoryReminderStore();
+        long[] times = Sizes.randomTimes(count);
+        String[] titles = new String[count];
+        for (int i = 0; i < count; i++) {
+            titles[i] = "Reminder " + i;
+        }
+        mStore.create(titles, times);
+
+        // Page starts and lookups, anywhere in the list
+        Random random = new Random(count);
+        mTimes = new long[1 << 12];
+        mIds = new long[mTimes.length];
+        for (int i = 0; i < mTimes.length; i++) {
+            final int index = random.nextInt(count);
+            mTimes[i] = times[index];
+            mIds[i] = index + 1;
+        }
+    }
+
+    @Benchmark
+    public boolean get() {
+        final long id = mIds[next()];
+        return mStore.get(id, mReminder);
+    }
+
+    @Benchmark
+    public int queryPage(final Blackhole blackhole) {
+        final int i = next();
+        return mStore.query(mTimes[i], mIds[i], Long.MAX_VALUE, 0, PAGE_SIZE,
+                new ReminderStore.Visitor() {
+                    public void visit(long id, String title, long time, int recurrence) {
+                        blackhole.consume(title);
+                    }
+                });
+    }
+
+    @Benchmark
+    public boolean update() {
+        final int i = next();
+        return mStore.update(mIds[i], "Reminder", mTimes[(i + 1) & (mTimes.length - 1)],
+                Recurrence.NONE);
+    }
+
+    private int next() {
+        final int i = mNext;
+        mNext = (mNext + 1) & (mTimes.length - 1);
+        return i;
+    }
+}
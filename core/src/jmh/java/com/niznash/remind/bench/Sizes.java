@@ -0,0 +1,43 @@
+package com.niznash.remind.bench;
+
+import java.util.Random;
+
+/**
+ * Shared data sets for the benchmarks.
+ *
+ * @author niznash@gmail.com (Alejandro Nijamkin)
+ */
+final class Sizes {
+
+    // Reminder times start here and spread over about a year
+    static final long START = 1350000000000L;
+    static final long SPREAD = 365L * 24 * 60 * 60 * 1000;
+
+    private Sizes() {
+    }
+
+    /**
+     * @param count Number of reminders
+     * @return Random reminder times, reproducible across runs
+     */
+    static long[] randomTimes(int count) {
+        Random random = new Random(count);
+        long[] times = new long[count];
+        for (int i = 0; i < count; i++) {
+            times[i] = START + (long) (random.nextDouble() * SPREAD);
+        }
+        return times;
+    }
+
+    /**
+     * @param count Number of reminders
+     * @return Sequential reminder IDs, starting at 1 like SQLite's
+     */
+    static long[] ids(int count) {
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = i + 1;
+        }
+        return ids;
+    }
+}
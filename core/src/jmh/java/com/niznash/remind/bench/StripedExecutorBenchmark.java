@@ -0,0 +1,90 @@
+package com.niznash.remind.bench;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.niznash.remind.util.StripedExecutor;
+
+/**
+ * Runs a burst of reminder operations through the executor of the service, each blocked for a
+ * while as a write waiting on the disk is, and waits for all of them to finish.
+ *
+ * <p>{@code lanes} of 1 is the single worker the service used to have. {@code spread} is how many
+ * reminders the burst touches: with few, most operations are ordered behind each other anyway.
+ * With {@code grouped}, the operations queued on a lane are committed together, blocking once per
+ * group, as the writes of the service are.
+ *
+ * @author niznash@gmail.com (Alejandro Nijamkin)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StripedExecutorBenchmark {
+
+    // Operations per burst, and how long each blocks
+    private static final int BURST = 64;
+    private static final long OP_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    @Param({ "1", "4" })
+    public int lanes;
+
+    @Param({ "1", "64" })
+    public int spread;
+
+    @Param({ "false", "true" })
+    public boolean grouped;
+
+    private StripedExecutor mExecutor;
+    private long[] mIds;
+    private CountDownLatch mDone;
+
+    private final Runnable mOp = new Runnable() {
+        public void run() {
+            LockSupport.parkNanos(OP_NANOS);
+            mDone.countDown();
+        }
+    };
+
+    // Blocks once, for as long as one operation does
+    private final StripedExecutor.Group mGroup = new StripedExecutor.Group() {
+        public void run(List<Runnable> tasks) {
+            LockSupport.parkNanos(OP_NANOS);
+            for (int i = 0; i < tasks.size(); i++) {
+                mDone.countDown();
+            }
+        }
+    };
+
+    @Setup
+    public void setUp() {
+        // Same limits as the service
+        mExecutor = new StripedExecutor(lanes, 64, 2, "bench");
+        mIds = Sizes.ids(spread);
+    }
+
+    @Benchmark
+    public void burst() throws InterruptedException {
+        mDone = new CountDownLatch(BURST);
+        for (int i = 0; i < BURST; i++) {
+            mExecutor.execute(mIds[i % mIds.length], mOp, grouped ? mGroup : null);
+        }
+        mDone.await();
+    }
+}
@@ -0,0 +1,76 @@
+package com.niznash.remind.bench;
+
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.niznash.remind.util.TimeFormatter;
+
+/**
+ * Formats reminder times the way the list does while scrolling.
+ *
+ * <p>{@link #formatScrolling} walks the times of {@code count} reminders in list (time) order, as a
+ * fling does; {@link #formatCacheHit} formats the same minute over and over, and should show
+ * {@code 0 B/op} under {@code -prof gc}. {@link #formatCalendar} is the per-call
+ * {@code SimpleDateFormat} baseline.
+ *
+ * @author niznash@gmail.com (Alejandro Nijamkin)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimeFormatBenchmark {
+
+    @Param({ "1000", "100000", "1000000" })
+    public int count;
+
+    private long[] mTimes;
+    private int mNext;
+    private TimeFormatter mFormatter;
+    private java.text.SimpleDateFormat mBaseline;
+
+    @Setup
+    public void setUp() {
+        mTimes = Sizes.randomTimes(count);
+        java.util.Arrays.sort(mTimes);
+        mFormatter = new TimeFormatter(Locale.US, TimeZone.getTimeZone("America/New_York"));
+        mBaseline = new java.text.SimpleDateFormat("MMM dd h:mma", Locale.US);
+        mBaseline.setTimeZone(TimeZone.getTimeZone("America/New_York"));
+    }
+
+    private long nextTime() {
+        final long time = mTimes[mNext];
+        mNext = mNext + 1 < mTimes.length ? mNext + 1 : 0;
+        return time;
+    }
+
+    @Benchmark
+    public String formatScrolling() {
+        return mFormatter.format(nextTime());
+    }
+
+    @Benchmark
+    public String formatCacheHit() {
+        return mFormatter.format(Sizes.START);
+    }
+
+    @Benchmark
+    public String formatCalendar() {
+        return mBaseline.format(new java.util.Date(nextTime()));
+    }
+}
@@ -0,0 +1,186 @@
+package com.niznash.remind.bench;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.niznash.remind.schedule.DueQueue;
+import com.niznash.remind.schedule.TimingWheel;
+
+/**
+ * Tracks {@code count} pending reminders spread over a year, in a {@link TimingWheel}, a
+ * {@link DueQueue} and a {@link PriorityQueue} of entry objects as the baseline.
+ *
+ * <p>The {@code reschedule} benchmarks cancel a pending reminder and add a new one, keeping the
+ * count steady. The {@code advance} benchmarks move time forward by a minute, reminders that come
+ * due being added back a year later. The {@code seed} benchmark builds the schedule from scratch
+ * out of reminders in key order, the way it is rebuilt after a reboot.
+ *
+ * @author niznash@gmail.com (Alejandro Nijamkin)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimingWheelBenchmark {
+
+    /**
+     * Baseline entry.
+     */
+    private static class Entry implements Comparable<Entry> {
+        final long id;
+        final long time;
+
+        Entry(long id, long time) {
+            this.id = id;
+            this.time = time;
+        }
+
+        public int compareTo(Entry other) {
+            if (time != other.time) {
+                return time < other.time ? -1 : 1;
+            }
+            return id < other.id ? -1 : (id == other.id ? 0 : 1);
+        }
+    }
+
+    @Param({ "1000", "100000", "1000000" })
+    public int count;
+
+    private TimingWheel mWheel;
+    private DueQueue mQueue;
+    private PriorityQueue<Entry> mBaseline;
+
+    // Baseline entries in the order they were added, the oldest is cancelled first
+    private Entry[] mPending;
+    private int mOldest;
+    private long mNextId;
+
+    // New reminder times, anywhere within the year
+    private long[] mTimes;
+    private int mNextTime;
+
+    private long mNow;
+
+    // Times of the pending reminders in key order
+    private long[] mSortedTimes;
+
+    private final TimingWheel.Expiry mRescheduleWheel = new TimingWheel.Expiry() {
+        public void onExpired(long id, long time) {
+            mWheel.add(id, time + Sizes.SPREAD);
+        }
+    };
+
+    @Setup
+    public void setUp() {
+        mNow = Sizes.START;
+        long[] times = Sizes.randomTimes(count);
+        mWheel = new TimingWheel(mNow, count);
+        mQueue = new DueQueue(count);
+        mBaseline = new PriorityQueue<Entry>(count);
+        mPending = new Entry[count];
+        for (int i = 0; i < count; i++) {
+            // Nothing may be due yet
+            final long time = Math.max(times[i], mNow + TimingWheel.MINUTE);
+            mPending[i] = new Entry(i + 1, time);
+            mWheel.add(i + 1, time);
+            mQueue.put(i + 1, time);
+            mBaseline.add(mPending[i]);
+        }
+        mNextId = count + 1;
+        mSortedTimes = times.clone();
+        Arrays.sort(mSortedTimes);
+
+        Random random = new Random(count);
+        mTimes = new long[1 << 12];
+        for (int i = 0; i < mTimes.length; i++) {
+            mTimes[i] = mNow + TimingWheel.MINUTE + (long) (random.nextDouble() * Sizes.SPREAD);
+        }
+    }
+
+    @Benchmark
+    public boolean rescheduleWheel() {
+        // IDs are sequential, so the oldest pending one is count behind the next
+        mWheel.remove(mNextId - count);
+        return mWheel.add(mNextId++, nextTime());
+    }
+
+    @Benchmark
+    public long rescheduleQueue() {
+        mQueue.remove(mNextId - count);
+        mQueue.put(mNextId++, nextTime());
+        return mQueue.peekTime();
+    }
+
+    @Benchmark
+    public boolean rescheduleBaseline() {
+        final Entry added = new Entry(mNextId++, nextTime());
+        mBaseline.remove(mPending[mOldest]);
+        mPending[mOldest] = added;
+        mOldest = (mOldest + 1) % count;
+        return mBaseline.add(added);
+    }
+
+    @Benchmark
+    public int advanceWheel() {
+        mNow += TimingWheel.MINUTE;
+        return mWheel.advance(mNow, mRescheduleWheel);
+    }
+
+    @Benchmark
+    public int advanceQueue() {
+        mNow += TimingWheel.MINUTE;
+        int expired = 0;
+        while (mQueue.peekTime() <= mNow) {
+            final long time = mQueue.peekTime();
+            mQueue.put(mQueue.peekId(), time + Sizes.SPREAD);
+            expired++;
+        }
+        return expired;
+    }
+
+    @Benchmark
+    public int advanceBaseline() {
+        mNow += TimingWheel.MINUTE;
+        int expired = 0;
+        while (mBaseline.peek().time <= mNow) {
+            final Entry entry = mBaseline.poll();
+            mBaseline.add(new Entry(entry.id, entry.time + Sizes.SPREAD));
+            expired++;
+        }
+        return expired;
+    }
+
+    @Benchmark
+    public int seed() {
+        TimingWheel wheel = new TimingWheel(Sizes.START, 1024);
+        DueQueue queue = new DueQueue();
+        for (int i = 0; i < mSortedTimes.length; i++) {
+            if (!wheel.add(i + 1, mSortedTimes[i])) {
+                queue.put(i + 1, mSortedTimes[i]);
+            }
+        }
+        return wheel.size() + queue.size();
+    }
+
+    private long nextTime() {
+        final long time = mTimes[mNextTime];
+        mNextTime = (mNextTime + 1) & (mTimes.length - 1);
+        return time;
+    }
+}
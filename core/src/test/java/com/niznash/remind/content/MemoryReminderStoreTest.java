@@ -0,0 +1,200 @@
+package com.niznash.remind.content;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import com.niznash.remind.util.Recurrence;
+
+/**
+ * Tests for {@link MemoryReminderStore}, against a {@link TreeMap} ordered on the same
+ * {@code (time, id)} key.
+ *
+ * @author niznash@gmail.com (Alejandro Nijamkin)
+ */
+public class MemoryReminderStoreTest {
+
+    /**
+     * Collects the IDs a query returns, in order.
+     */
+    private static class Collector implements ReminderStore.Visitor {
+        final List<Long> ids = new ArrayList<Long>();
+
+        public void visit(long id, String title, long time, int recurrence) {
+            ids.add(id);
+        }
+    }
+
+    @Test
+    public void createsReadsUpdatesAndDeletes() {
+        MemoryReminderStore store = new MemoryReminderStore();
+        final long id = store.create("Call mom", 1000, Recurrence.NONE);
+
+        Reminder reminder = new Reminder();
+        assertTrue(store.get(id, reminder));
+        assertEquals(id, reminder.id);
+        assertEquals("Call mom", reminder.title);
+        assertEquals(1000, reminder.time);
+
+        assertTrue(store.update(id, "Call dad", 2000, Recurrence.everyDays(1)));
+        assertTrue(store.get(id, reminder));
+        assertEquals("Call dad", reminder.title);
+        assertEquals(2000, reminder.time);
+        assertEquals(Recurrence.everyDays(1), reminder.recurrence);
+
+        assertTrue(store.delete(id));
+        assertFalse(store.get(id, reminder));
+        assertFalse(store.update(id, "Gone", 3000, Recurrence.NONE));
+        assertFalse(store.delete(id));
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    public void movesGenerationOncePerWriteThatChangesSomething() {
+        MemoryReminderStore store = new MemoryReminderStore();
+        assertEquals(0, store.getGeneration());
+
+        final long id = store.create("A", 1, Recurrence.NONE);
+        assertEquals(1, store.getGeneration());
+        assertEquals(1, store.getLastWriteGeneration());
+
+        assertEquals(3, store.create(new String[] { "B", "C", "D" }, new long[] { 2, 3, 4 }));
+        assertEquals(2, store.getGeneration());
+
+        assertFalse(store.delete(id + 100));
+        assertEquals(0, store.delete(new long[] { id + 100, id + 101 }));
+        assertEquals(2, store.getGeneration());
+
+        ReminderDelta writes = new ReminderDelta();
+        writes.addInserted(-1, "E", 5, Recurrence.NONE);
+        writes.addUpdated(id, "A2", 6, Recurrence.NONE);
+        writes.addDeleted(id + 100);
+        ReminderDelta changes = store.apply(writes);
+        assertEquals(3, store.getGeneration());
+        assertEquals(2, changes.size());
+        assertEquals(ReminderDelta.INSERTED, changes.getKind(0));
+        assertEquals(ReminderDelta.UPDATED, changes.getKind(1));
+        assertEquals(id, changes.getId(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTitlesWithoutTimes() {
+        new MemoryReminderStore().create(new String[] { "A", "B" }, new long[] { 1 });
+    }
+
+    @Test
+    public void matchesTreeMap() {
+        Random random = new Random(3);
+        MemoryReminderStore store = new MemoryReminderStore();
+        TreeMap<ReminderKey, Long> byKey = new TreeMap<ReminderKey, Long>();
+        HashMap<Long, ReminderKey> byId = new HashMap<Long, ReminderKey>();
+        HashMap<Long, Integer> recurrences = new HashMap<Long, Integer>();
+        List<Long> ids = new ArrayList<Long>();
+
+        for (int step = 0; step < 5000; step++) {
+            final int op = random.nextInt(10);
+            // Few distinct times, so ties are common
+            final long time = random.nextInt(100);
+            final int recurrence = random.nextInt(4) == 0 ? Recurrence.everyHours(2)
+                    : Recurrence.NONE;
+            if (op < 4 || ids.isEmpty()) {
+                final long id = store.create("R" + step, time, recurrence);
+                ids.add(id);
+                byKey.put(new ReminderKey(time, id), id);
+                byId.put(id, new ReminderKey(time, id));
+                recurrences.put(id, recurrence);
+            } else if (op < 7) {
+                final long id = ids.get(random.nextInt(ids.size()));
+                ReminderKey old = byId.get(id);
+                assertEquals(old != null, store.update(id, "U" + step, time, recurrence));
+                if (old != null) {
+                    byKey.remove(old);
+                    byKey.put(new ReminderKey(time, id), id);
+                    byId.put(id, new ReminderKey(time, id));
+                    recurrences.put(id, recurrence);
+                }
+            } else if (op < 8) {
+                final long id = ids.get(random.nextInt(ids.size()));
+                ReminderKey old = byId.remove(id);
+                assertEquals(old != null, store.delete(id));
+                if (old != null) {
+                    byKey.remove(old);
+                    recurrences.remove(id);
+                }
+            } else {
+                checkQuery(random, store, byKey);
+            }
+
+            assertEquals(byId.size(), store.size());
+        }
+
+        // Every page, in turn, adds up to everything
+        Collector all = new Collector();
+        long afterTime = Long.MIN_VALUE;
+        long afterId = Long.MIN_VALUE;
+        while (true) {
+            Collector page = new Collector();
+            if (store.query(afterTime, afterId, Long.MAX_VALUE, Long.MAX_VALUE, 7, page) == 0) {
+                break;
+            }
+            all.ids.addAll(page.ids);
+            ReminderKey last = byId.get(page.ids.get(page.ids.size() - 1));
+            afterTime = last.time;
+            afterId = last.id;
+        }
+        assertEquals(new ArrayList<Long>(byKey.values()), all.ids);
+
+        // The recurring ones, in any order
+        Collector recurring = new Collector();
+        store.queryRecurring(recurring);
+        HashSet<Long> expected = new HashSet<Long>();
+        for (Long id : byId.keySet()) {
+            if (Recurrence.isRecurring(recurrences.get(id))) {
+                expected.add(id);
+            }
+        }
+        assertEquals(expected, new HashSet<Long>(recurring.ids));
+    }
+
+    /**
+     * Runs a query over a random range, bounded or not on either end, and checks it.
+     */
+    private static void checkQuery(Random random, MemoryReminderStore store,
+            TreeMap<ReminderKey, Long> byKey) {
+        final boolean fromStart = random.nextInt(4) == 0;
+        final boolean toEnd = random.nextInt(4) == 0;
+        final long afterTime = fromStart ? Long.MIN_VALUE : random.nextInt(110) - 5;
+        final long afterId = random.nextInt(4) == 0 ? Long.MAX_VALUE : random.nextInt(300);
+        final long throughTime = toEnd ? Long.MAX_VALUE : random.nextInt(110) - 5;
+        final long throughId = random.nextInt(4) == 0 ? Long.MAX_VALUE : random.nextInt(300);
+        final int limit = random.nextInt(3) == 0 ? ReminderStore.NO_LIMIT : random.nextInt(20);
+
+        List<Long> expected = new ArrayList<Long>();
+        for (ReminderKey key : byKey.keySet()) {
+            if (limit != ReminderStore.NO_LIMIT && expected.size() == limit) {
+                break;
+            }
+            final boolean after = fromStart
+                    || key.compareTo(new ReminderKey(afterTime, afterId)) > 0;
+            final boolean through = toEnd
+                    || key.compareTo(new ReminderKey(throughTime, throughId)) <= 0;
+            if (after && through) {
+                expected.add(key.id);
+            }
+        }
+
+        Collector collector = new Collector();
+        assertEquals(expected.size(), store.query(afterTime, afterId, throughTime, throughId,
+                limit, collector));
+        assertEquals(expected, collector.ids);
+    }
+}
@@ -0,0 +1,210 @@
+package com.niznash.remind.content;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.niznash.remind.util.Recurrence;
+
+/**
+ * Tests for {@link ReminderCache}, against a {@link LinkedHashMap} in access order holding as many
+ * reminders.
+ *
+ * @author niznash@gmail.com (Alejandro Nijamkin)
+ */
+public class ReminderCacheTest {
+
+    /**
+     * The least-recently-used cache the reminder cache should behave like.
+     */
+    private static class Model extends LinkedHashMap<Long, Reminder> {
+        private static final long serialVersionUID = 1L;
+
+        private final int mCapacity;
+
+        Model(int capacity) {
+            super(16, 0.75f, true);
+            mCapacity = capacity;
+        }
+
+        void put(long id, String title, long time, int recurrence) {
+            Reminder reminder = new Reminder();
+            reminder.set(id, title, time, recurrence);
+            put(Long.valueOf(id), reminder);
+        }
+
+        void trimToSize(int size) {
+            Iterator<Long> eldest = keySet().iterator();
+            while (size() > size) {
+                eldest.next();
+                eldest.remove();
+            }
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Reminder> eldest) {
+            return size() > mCapacity;
+        }
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        ReminderCache cache = new ReminderCache(3, 0);
+        Reminder reminder = new Reminder();
+        cache.put(1, "A", 100, Recurrence.NONE);
+        cache.put(2, "B", 200, Recurrence.NONE);
+        cache.put(3, "C", 300, Recurrence.NONE);
+
+        // 1 is now the most recently used, so 2 goes first, then 3
+        assertTrue(cache.get(1, reminder));
+        cache.put(4, "D", 400, Recurrence.NONE);
+        assertFalse(cache.get(2, reminder));
+        cache.put(3, "C2", 301, Recurrence.everyDays(1));
+        cache.put(5, "E", 500, Recurrence.NONE);
+        assertFalse(cache.get(1, reminder));
+
+        assertTrue(cache.get(3, reminder));
+        assertEquals("C2", reminder.title);
+        assertEquals(301, reminder.time);
+        assertEquals(Recurrence.everyDays(1), reminder.recurrence);
+        assertEquals(3, cache.size());
+        assertEquals(2, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+
+        cache.trimToSize(1);
+        assertEquals(1, cache.size());
+        assertTrue(cache.get(3, reminder));
+    }
+
+    @Test
+    public void skipsFillsThatRacedWithWrites() {
+        ReminderCache cache = new ReminderCache(4, 0);
+        Reminder reminder = new Reminder();
+
+        // A write lands between the read of the store and the fill
+        long version = cache.getVersion();
+        cache.put(1, "New", 200, Recurrence.NONE);
+        assertFalse(cache.fill(version, 1, "Old", 100, Recurrence.NONE));
+        assertTrue(cache.get(1, reminder));
+        assertEquals("New", reminder.title);
+
+        // So does a delete, which must not be undone
+        version = cache.getVersion();
+        cache.remove(1);
+        assertFalse(cache.fill(version, 1, "Old", 100, Recurrence.NONE));
+        assertFalse(cache.get(1, reminder));
+
+        // Nothing in between
+        version = cache.getVersion();
+        assertTrue(cache.fill(version, 2, "Read", 300, Recurrence.NONE));
+        assertTrue(cache.get(2, reminder));
+        assertEquals("Read", reminder.title);
+
+        // A fill does not move the version, so fills don't stop each other
+        assertTrue(cache.fill(version, 3, "Also read", 400, Recurrence.NONE));
+        version = cache.getVersion();
+        cache.clear();
+        assertFalse(cache.fill(version, 3, "Also read", 400, Recurrence.NONE));
+        version = cache.getVersion();
+        cache.onWrite(1);
+        assertFalse(cache.fill(version, 3, "Also read", 400, Recurrence.NONE));
+    }
+
+    @Test
+    public void clearsOnChangesItDidNotSee() {
+        ReminderCache cache = new ReminderCache(4, 5);
+        Reminder reminder = new Reminder();
+        cache.put(1, "A", 100, Recurrence.NONE);
+
+        // Its own write, then the notification for it
+        cache.onWrite(6);
+        cache.onChange(6);
+        assertTrue(cache.get(1, reminder));
+
+        // A write that skipped a generation
+        cache.onWrite(8);
+        assertFalse(cache.get(1, reminder));
+
+        // A change made elsewhere
+        cache.put(1, "A", 100, Recurrence.NONE);
+        cache.onWrite(9);
+        cache.onChange(10);
+        assertFalse(cache.get(1, reminder));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void matchesLinkedHashMap() {
+        Random random = new Random(7);
+        final int capacity = 32;
+        ReminderCache cache = new ReminderCache(capacity, 0);
+        Model model = new Model(capacity);
+        Reminder reminder = new Reminder();
+        long hits = 0;
+        long misses = 0;
+
+        // Version as of a read of the store, and whether a write came after it
+        long version = cache.getVersion();
+        boolean stale = false;
+
+        for (int step = 0; step < 50000; step++) {
+            // Few IDs, some only differing in their high half, so they collide in the hash table
+            // and removals have entries to shift back
+            final long id = random.nextInt(2) == 0 ? random.nextInt(80)
+                    : (long) random.nextInt(80) << 32;
+            final long time = random.nextInt(1000);
+            final int op = random.nextInt(100);
+            if (op < 40) {
+                final Reminder expected = model.get(Long.valueOf(id));
+                assertEquals(expected != null, cache.get(id, reminder));
+                if (expected != null) {
+                    hits++;
+                    assertEquals(id, reminder.id);
+                    assertEquals(expected.title, reminder.title);
+                    assertEquals(expected.time, reminder.time);
+                    assertEquals(expected.recurrence, reminder.recurrence);
+                } else {
+                    misses++;
+                }
+            } else if (op < 65) {
+                cache.put(id, "P" + step, time, Recurrence.NONE);
+                model.put(id, "P" + step, time, Recurrence.NONE);
+                stale = true;
+            } else if (op < 80) {
+                cache.remove(id);
+                model.remove(Long.valueOf(id));
+                stale = true;
+            } else if (op < 92) {
+                final int recurrence = Recurrence.everyHours(1 + random.nextInt(5));
+                assertEquals(!stale, cache.fill(version, id, "F" + step, time, recurrence));
+                if (!stale) {
+                    model.put(id, "F" + step, time, recurrence);
+                }
+            } else if (op < 96) {
+                // Start over reading the store
+                version = cache.getVersion();
+                stale = false;
+            } else if (op < 99) {
+                final int size = random.nextInt(capacity);
+                cache.trimToSize(size);
+                model.trimToSize(size);
+            } else {
+                cache.clear();
+                model.clear();
+                stale = true;
+            }
+
+            assertEquals(model.size(), cache.size());
+        }
+
+        assertEquals(hits, cache.getHitCount());
+        assertEquals(misses, cache.getMissCount());
+    }
+}
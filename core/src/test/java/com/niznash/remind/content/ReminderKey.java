@@ -0,0 +1,35 @@
+package com.niznash.remind.content;
+
+/**
+ * A {@code (time, id)} key, in {@link RemindProvider.ReminderColumns#DEFAULT_SORT_ORDER}: the order
+ * of the stores, the time index and the due queue. For tests to keep reference models in a
+ * {@link java.util.TreeMap}.
+ *
+ * @author niznash@gmail.com (Alejandro Nijamkin)
+ */
+public class ReminderKey implements Comparable<ReminderKey> {
+
+    /** The time of the reminder */
+    public final long time;
+
+    /** The ID of the reminder */
+    public final long id;
+
+    /**
+     * Constructor.
+     *
+     * @param time The time of the reminder
+     * @param id The ID of the reminder
+     */
+    public ReminderKey(long time, long id) {
+        this.time = time;
+        this.id = id;
+    }
+
+    public int compareTo(ReminderKey other) {
+        if (time != other.time) {
+            return time < other.time ? -1 : 1;
+        }
+        return id < other.id ? -1 : (id == other.id ? 0 : 1);
+    }
+}
@@ -0,0 +1,126 @@
+package com.niznash.remind.content;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.niznash.remind.util.Recurrence;
+import com.niznash.remind.util.TimeUtil;
+
+/**
+ * Tests for {@link UpcomingReminders}, against every reminder due, sorted.
+ *
+ * @author niznash@gmail.com (Alejandro Nijamkin)
+ */
+public class UpcomingRemindersTest {
+
+    private static final long HOUR = 60 * 60 * 1000;
+    private static final long DAY = 24 * HOUR;
+
+    // Some time, in 2012
+    private static final long NOW = 1350000000000L;
+
+    private TimeZone mDefaultTimeZone;
+
+    @Before
+    public void setUp() {
+        mDefaultTimeZone = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("America/New_York"));
+        TimeUtil.invalidate();
+    }
+
+    @After
+    public void tearDown() {
+        TimeZone.setDefault(mDefaultTimeZone);
+        TimeUtil.invalidate();
+    }
+
+    @Test
+    public void placesRecurringReminderAtItsNextOccurrence() {
+        UpcomingReminders upcoming = new UpcomingReminders(NOW, 3);
+
+        // Started a week ago, daily: due within a day, before the one-shot ones
+        upcoming.visit(1, "Daily", NOW - 7 * DAY + HOUR, Recurrence.everyDays(1));
+        upcoming.visit(2, "Soon", NOW + 2 * HOUR, Recurrence.NONE);
+        upcoming.visit(3, "Later", NOW + 3 * HOUR, Recurrence.NONE);
+        upcoming.visit(4, "Last", NOW + 4 * HOUR, Recurrence.NONE);
+        upcoming.visit(5, "Past", NOW - HOUR, Recurrence.NONE);
+
+        assertEquals(3, upcoming.size());
+        assertEquals(1, upcoming.getId(0));
+        assertEquals(NOW + HOUR, upcoming.getDueTime(0));
+        assertEquals(NOW - 7 * DAY + HOUR, upcoming.getTime(0));
+        assertEquals(2, upcoming.getId(1));
+        assertEquals(3, upcoming.getId(2));
+        assertEquals("Later", upcoming.getTitle(2));
+    }
+
+    @Test
+    public void includesOccurrenceDueRightAtTheTime() {
+        UpcomingReminders upcoming = new UpcomingReminders(NOW, ReminderStore.NO_LIMIT);
+        upcoming.visit(1, "Hourly", NOW - 5 * HOUR, Recurrence.everyHours(1));
+        upcoming.visit(2, "Now", NOW, Recurrence.NONE);
+        assertEquals(2, upcoming.size());
+        assertEquals(NOW, upcoming.getDueTime(0));
+        assertEquals(NOW, upcoming.getDueTime(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNegativeLimit() {
+        new UpcomingReminders(NOW, -2);
+    }
+
+    @Test
+    public void matchesSortedReference() {
+        Random random = new Random(17);
+        for (int run = 0; run < 200; run++) {
+            final long after = NOW + random.nextInt(30) * HOUR;
+            final int limit = random.nextInt(4) == 0 ? ReminderStore.NO_LIMIT
+                    : random.nextInt(20);
+            UpcomingReminders upcoming = new UpcomingReminders(after, limit);
+            List<long[]> expected = new ArrayList<long[]>();
+
+            final int count = random.nextInt(60);
+            for (int id = 0; id < count; id++) {
+                // Few distinct times, so ties are common
+                final long time = NOW + (random.nextInt(60) - 20) * HOUR;
+                final int recurrence = random.nextInt(3) == 0
+                        ? Recurrence.everyHours(1 + random.nextInt(30)) : Recurrence.NONE;
+                final long due = Recurrence.isRecurring(recurrence)
+                        ? TimeUtil.nextOccurrence(time, recurrence, after - 1) : time;
+                if (due >= after) {
+                    expected.add(new long[] { due, id });
+                }
+                upcoming.visit(id, "R" + id, time, recurrence);
+            }
+
+            Collections.sort(expected, new Comparator<long[]>() {
+                public int compare(long[] a, long[] b) {
+                    if (a[0] != b[0]) {
+                        return a[0] < b[0] ? -1 : 1;
+                    }
+                    return a[1] < b[1] ? -1 : (a[1] == b[1] ? 0 : 1);
+                }
+            });
+            if (limit != ReminderStore.NO_LIMIT && expected.size() > limit) {
+                expected = expected.subList(0, limit);
+            }
+
+            assertEquals(expected.size(), upcoming.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i)[0], upcoming.getDueTime(i));
+                assertEquals(expected.get(i)[1], upcoming.getId(i));
+                assertEquals("R" + expected.get(i)[1], upcoming.getTitle(i));
+            }
+        }
+    }
+}
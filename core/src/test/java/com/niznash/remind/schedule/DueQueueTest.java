@@ -0,0 +1,137 @@
+package com.niznash.remind.schedule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import com.niznash.remind.content.ReminderKey;
+
+/**
+ * Tests for {@link DueQueue}, against a {@link TreeMap} ordered on the same {@code (time, id)} key.
+ *
+ * @author niznash@gmail.com (Alejandro Nijamkin)
+ */
+public class DueQueueTest {
+
+    @Test
+    public void isEmptyAtFirst() {
+        DueQueue queue = new DueQueue();
+        assertEquals(0, queue.size());
+        assertEquals(DueQueue.NONE, queue.peekId());
+        assertEquals(Long.MAX_VALUE, queue.peekTime());
+        assertEquals(DueQueue.NONE, queue.poll());
+        assertFalse(queue.remove(1));
+    }
+
+    @Test
+    public void breaksTiesById() {
+        DueQueue queue = new DueQueue(1);
+        queue.put(3, 100);
+        queue.put(1, 100);
+        queue.put(2, 100);
+        queue.put(4, 50);
+        assertEquals(4, queue.poll());
+        assertEquals(1, queue.poll());
+        assertEquals(2, queue.poll());
+        assertEquals(3, queue.poll());
+    }
+
+    @Test
+    public void movesRemindersPutAgain() {
+        DueQueue queue = new DueQueue();
+        queue.put(1, 100);
+        queue.put(2, 200);
+        queue.put(3, 300);
+        queue.put(3, 50);
+        assertEquals(3, queue.peekId());
+        queue.put(3, 400);
+        queue.put(1, 250);
+        assertEquals(3, queue.size());
+        assertEquals(2, queue.poll());
+        assertEquals(1, queue.poll());
+        assertEquals(3, queue.poll());
+    }
+
+    @Test
+    public void keepsHeapIndexOnRemove() {
+        // Removing from the middle moves the last entry there, which may have to go up or down
+        DueQueue queue = new DueQueue();
+        for (int id = 0; id < 64; id++) {
+            queue.put(id, (id * 37) % 64);
+        }
+        for (int id = 0; id < 64; id += 3) {
+            assertTrue(queue.remove(id));
+            assertFalse(queue.contains(id));
+        }
+        for (int id = 1; id < 64; id += 3) {
+            queue.put(id, 1000 - id);
+        }
+
+        long lastTime = Long.MIN_VALUE;
+        int count = 0;
+        while (queue.size() > 0) {
+            final long time = queue.peekTime();
+            final long id = queue.poll();
+            assertTrue(time >= lastTime);
+            assertFalse(queue.contains(id));
+            lastTime = time;
+            count++;
+        }
+        assertEquals(64 - 22, count);
+    }
+
+    @Test
+    public void matchesTreeMap() {
+        Random random = new Random(7);
+        DueQueue queue = new DueQueue(1);
+        TreeMap<ReminderKey, Long> byKey = new TreeMap<ReminderKey, Long>();
+        HashMap<Long, ReminderKey> byId = new HashMap<Long, ReminderKey>();
+
+        for (int step = 0; step < 50000; step++) {
+            final long id = random.nextInt(1000);
+            final int op = random.nextInt(10);
+            if (op < 5) {
+                // Few distinct times, so ties are common
+                final long time = random.nextInt(200);
+                ReminderKey old = byId.put(id, new ReminderKey(time, id));
+                if (old != null) {
+                    byKey.remove(old);
+                }
+                byKey.put(new ReminderKey(time, id), id);
+                queue.put(id, time);
+            } else if (op < 8) {
+                ReminderKey old = byId.remove(id);
+                if (old != null) {
+                    byKey.remove(old);
+                }
+                assertEquals(old != null, queue.remove(id));
+            } else if (op < 9) {
+                if (byKey.isEmpty()) {
+                    assertEquals(DueQueue.NONE, queue.poll());
+                } else {
+                    ReminderKey first = byKey.pollFirstEntry().getKey();
+                    byId.remove(first.id);
+                    assertEquals(first.time, queue.peekTime());
+                    assertEquals(first.id, queue.poll());
+                }
+            } else if (random.nextInt(100) == 0) {
+                queue.clear();
+                byKey.clear();
+                byId.clear();
+            }
+
+            assertEquals(byKey.size(), queue.size());
+            assertEquals(byId.containsKey(id), queue.contains(id));
+            if (!byKey.isEmpty()) {
+                assertEquals(byKey.firstKey().id, queue.peekId());
+                assertEquals(byKey.firstKey().time, queue.peekTime());
+            }
+        }
+    }
+}
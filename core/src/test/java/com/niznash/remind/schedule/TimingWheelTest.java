@@ -0,0 +1,214 @@
+package com.niznash.remind.schedule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link TimingWheel}, against a {@link TreeMap} of the reminders pending.
+ *
+ * @author niznash@gmail.com (Alejandro Nijamkin)
+ */
+public class TimingWheelTest {
+
+    private static final long MINUTE = TimingWheel.MINUTE;
+    private static final long DAY = 24 * 60 * MINUTE;
+    private static final long PERIOD = TimingWheel.DAYS * DAY;
+
+    // Some time, not on a minute
+    private static final long START = 1350000000000L + 12345;
+
+    /**
+     * Collects expired reminders, as ID to time.
+     */
+    private static class Collector implements TimingWheel.Expiry {
+        final TreeMap<Long, Long> expired = new TreeMap<Long, Long>();
+
+        public void onExpired(long id, long time) {
+            assertTrue("Expired twice: " + id, expired.put(id, time) == null);
+        }
+    }
+
+    @Test
+    public void expiresRemindersDueUpToTheEndOfTheMinute() {
+        TimingWheel wheel = new TimingWheel(START, 0);
+        final long minute = START - START % MINUTE;
+        assertFalse(wheel.add(1, minute + MINUTE - 1));
+        assertTrue(wheel.add(2, minute + MINUTE));
+        assertTrue(wheel.add(3, minute + 2 * MINUTE - 1));
+        assertTrue(wheel.add(4, minute + 2 * MINUTE));
+        assertEquals(3, wheel.size());
+
+        Collector collector = new Collector();
+        assertEquals(2, wheel.advance(minute + MINUTE, collector));
+        assertEquals(2, collector.expired.size());
+        assertTrue(collector.expired.containsKey(2L));
+        assertTrue(collector.expired.containsKey(3L));
+        assertTrue(wheel.contains(4));
+        assertEquals(minute + 2 * MINUTE, wheel.getHorizon());
+    }
+
+    @Test
+    public void holdsRemindersPastTheDayLevelInOverflow() {
+        TimingWheel wheel = new TimingWheel(START, 0);
+        final long far = START + 2 * PERIOD + 5 * DAY;
+        assertTrue(wheel.add(1, far));
+        assertTrue(wheel.add(2, START + PERIOD - MINUTE));
+        assertTrue(wheel.contains(1));
+
+        // Crosses into the next periods, with the far one still out of reach
+        Collector collector = new Collector();
+        assertEquals(1, wheel.advance(far - MINUTE, collector));
+        assertTrue(collector.expired.containsKey(2L));
+        assertTrue(wheel.contains(1));
+        assertEquals(0, wheel.advance(far - MINUTE, new Collector()));
+
+        assertEquals(1, wheel.advance(far, collector));
+        assertEquals(Long.valueOf(far), collector.expired.get(1L));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void removesRemindersThatCascadedDown() {
+        TimingWheel wheel = new TimingWheel(START, 0);
+        final long due = START + PERIOD + 3 * DAY + 7 * MINUTE;
+        assertTrue(wheel.add(1, due));
+        assertTrue(wheel.add(2, due));
+
+        // Moves them from overflow to the day level, then the hour level, then the minute level
+        Collector collector = new Collector();
+        wheel.advance(due - 2 * DAY, collector);
+        assertTrue(wheel.contains(1));
+        wheel.advance(due - 2 * 60 * MINUTE, collector);
+        assertTrue(wheel.contains(1));
+        wheel.advance(due - 2 * MINUTE, collector);
+        assertTrue(collector.expired.isEmpty());
+
+        assertTrue(wheel.remove(1));
+        assertFalse(wheel.contains(1));
+        assertFalse(wheel.remove(1));
+        assertEquals(1, wheel.advance(due, collector));
+        assertEquals(1, collector.expired.size());
+        assertTrue(collector.expired.containsKey(2L));
+    }
+
+    @Test
+    public void advancesToTheNextMinuteWithRemindersDue() {
+        TimingWheel wheel = new TimingWheel(START, 0);
+        wheel.add(1, START + PERIOD + DAY);
+        wheel.add(2, START + 3 * DAY);
+        wheel.add(3, START + 3 * DAY + 10);
+
+        Collector collector = new Collector();
+        assertEquals(2, wheel.advanceToNext(collector));
+        assertEquals(2, collector.expired.size());
+        assertTrue(wheel.getHorizon() > START + 3 * DAY + 10);
+        assertTrue(wheel.getHorizon() <= START + 3 * DAY + MINUTE + 10);
+
+        assertEquals(1, wheel.advanceToNext(collector));
+        assertEquals(Long.valueOf(START + PERIOD + DAY), collector.expired.get(1L));
+        assertEquals(0, wheel.advanceToNext(collector));
+    }
+
+    @Test
+    public void matchesTreeMap() {
+        Random random = new Random(42);
+        long now = START;
+        TimingWheel wheel = new TimingWheel(now, 0);
+        TreeMap<Long, Long> pending = new TreeMap<Long, Long>();
+
+        for (int step = 0; step < 20000; step++) {
+            final long id = random.nextInt(500);
+            final int op = random.nextInt(10);
+            if (op < 5) {
+                final long time = now + randomDelay(random);
+                final boolean added = wheel.add(id, time);
+                assertEquals(tick(time) > tick(now), added);
+                if (added) {
+                    pending.put(id, time);
+                } else {
+                    pending.remove(id);
+                }
+            } else if (op < 7) {
+                assertEquals(pending.remove(id) != null, wheel.remove(id));
+            } else if (op < 9) {
+                now += randomDelay(random) / 4;
+                Collector collector = new Collector();
+                assertEquals(expireUpTo(pending, tick(now)), expiredBy(wheel.advance(now,
+                        collector), collector));
+            } else {
+                Collector collector = new Collector();
+                final int count = wheel.advanceToNext(collector);
+                if (pending.isEmpty()) {
+                    assertEquals(0, count);
+                } else {
+                    long next = Long.MAX_VALUE;
+                    for (long time : pending.values()) {
+                        next = Math.min(next, tick(time));
+                    }
+                    assertEquals(expireUpTo(pending, next), expiredBy(count, collector));
+                    now = Math.max(now, next * MINUTE);
+                }
+            }
+
+            assertEquals(pending.size(), wheel.size());
+            assertEquals(pending.containsKey(id), wheel.contains(id));
+        }
+    }
+
+    /**
+     * @return A delay that lands in any level of the wheel, overflow included
+     */
+    private static long randomDelay(Random random) {
+        switch (random.nextInt(5)) {
+            case 0:
+                return random.nextInt((int) (2 * MINUTE));
+            case 1:
+                return (long) (random.nextDouble() * 2 * 60 * MINUTE);
+            case 2:
+                return (long) (random.nextDouble() * 2 * DAY);
+            case 3:
+                return (long) (random.nextDouble() * PERIOD);
+            default:
+                return (long) (random.nextDouble() * 3 * PERIOD);
+        }
+    }
+
+    /**
+     * Checks the count an advance returned against what it passed to the collector.
+     *
+     * @return The reminders expired
+     */
+    private static TreeMap<Long, Long> expiredBy(int count, Collector collector) {
+        assertEquals(collector.expired.size(), count);
+        return collector.expired;
+    }
+
+    /**
+     * Removes the reminders due up to the end of a minute from the reference.
+     *
+     * @return Them
+     */
+    private static TreeMap<Long, Long> expireUpTo(TreeMap<Long, Long> pending, long tick) {
+        TreeMap<Long, Long> expired = new TreeMap<Long, Long>();
+        for (Iterator<Map.Entry<Long, Long>> i = pending.entrySet().iterator(); i.hasNext();) {
+            Map.Entry<Long, Long> entry = i.next();
+            if (tick(entry.getValue()) <= tick) {
+                expired.put(entry.getKey(), entry.getValue());
+                i.remove();
+            }
+        }
+        return expired;
+    }
+
+    private static long tick(long time) {
+        return time / MINUTE;
+    }
+}
@@ -0,0 +1,104 @@
+package com.niznash.remind.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Calendar;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link Recurrence}.
+ *
+ * @author niznash@gmail.com (Alejandro Nijamkin)
+ */
+public class RecurrenceTest {
+
+    @Test
+    public void readsBackIntervals() {
+        for (int interval : new int[] { 1, 2, 24, 1000, Recurrence.MAX_INTERVAL }) {
+            final int hourly = Recurrence.everyHours(interval);
+            assertEquals(Recurrence.KIND_HOURLY, Recurrence.getKind(hourly));
+            assertEquals(interval, Recurrence.getInterval(hourly));
+            assertTrue(Recurrence.isRecurring(hourly));
+
+            final int daily = Recurrence.everyDays(interval);
+            assertEquals(Recurrence.KIND_DAILY, Recurrence.getKind(daily));
+            assertEquals(interval, Recurrence.getInterval(daily));
+            assertTrue(Recurrence.isRecurring(daily));
+        }
+        assertFalse(Recurrence.isRecurring(Recurrence.NONE));
+        assertEquals(Recurrence.NONE, Recurrence.getKind(Recurrence.NONE));
+    }
+
+    @Test
+    public void readsBackEverySetOfDays() {
+        for (int days = 1; days < 1 << 7; days++) {
+            int[] daysOfWeek = new int[Integer.bitCount(days)];
+            int count = 0;
+            for (int day = Calendar.SUNDAY; day <= Calendar.SATURDAY; day++) {
+                if ((days & (1 << (day - Calendar.SUNDAY))) != 0) {
+                    daysOfWeek[count++] = day;
+                }
+            }
+
+            final int rule = Recurrence.onDaysOfWeek(daysOfWeek);
+            assertEquals(Recurrence.KIND_WEEKLY, Recurrence.getKind(rule));
+            for (int day = Calendar.SUNDAY; day <= Calendar.SATURDAY; day++) {
+                assertEquals((days & (1 << (day - Calendar.SUNDAY))) != 0,
+                        Recurrence.isOnDayOfWeek(rule, day));
+            }
+        }
+    }
+
+    @Test
+    public void ignoresRepeatedDays() {
+        assertEquals(Recurrence.onDaysOfWeek(Calendar.MONDAY),
+                Recurrence.onDaysOfWeek(Calendar.MONDAY, Calendar.MONDAY));
+    }
+
+    @Test
+    public void rejectsInvalidArguments() {
+        assertRejected(new Runnable() {
+            public void run() {
+                Recurrence.everyHours(0);
+            }
+        });
+        assertRejected(new Runnable() {
+            public void run() {
+                Recurrence.everyDays(-1);
+            }
+        });
+        assertRejected(new Runnable() {
+            public void run() {
+                Recurrence.everyDays(Recurrence.MAX_INTERVAL + 1);
+            }
+        });
+        assertRejected(new Runnable() {
+            public void run() {
+                Recurrence.onDaysOfWeek();
+            }
+        });
+        assertRejected(new Runnable() {
+            public void run() {
+                Recurrence.onDaysOfWeek(Calendar.MONDAY, Calendar.SATURDAY + 1);
+            }
+        });
+        assertRejected(new Runnable() {
+            public void run() {
+                Recurrence.onDaysOfWeek(Calendar.SUNDAY - 1);
+            }
+        });
+    }
+
+    private static void assertRejected(Runnable runnable) {
+        try {
+            runnable.run();
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+}
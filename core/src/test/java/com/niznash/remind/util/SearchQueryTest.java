@@ -0,0 +1,172 @@
+package com.niznash.remind.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link SearchQuery}, against the full-text index of a real SQLite.
+ *
+ * @author niznash@gmail.com (Alejandro Nijamkin)
+ */
+public class SearchQueryTest {
+
+    // Letters of both cases, digits, delimiters and non-ASCII characters, one outside the BMP
+    private static final String[] ALPHABET = {
+        "a", "b", "c", "A", "B", "C", "1", "2", " ", " ", "-", "_", ".", "'", "\"", "*", "é", "É",
+        "ñ", "中", "😀",
+    };
+
+    private Connection mConnection;
+    private final List<String> mTitles = new ArrayList<String>();
+
+    @Before
+    public void setUp() throws SQLException {
+        mConnection = DriverManager.getConnection("jdbc:sqlite::memory:");
+        Statement statement = mConnection.createStatement();
+        statement.execute("CREATE VIRTUAL TABLE search USING fts4 (title)");
+        statement.close();
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        mConnection.close();
+    }
+
+    @Test
+    public void hasNoWordsInDelimitersOnly() {
+        SearchQuery query = new SearchQuery("  - _ . ");
+        assertTrue(query.isEmpty());
+        assertNull(query.toFtsQuery());
+        assertFalse(query.matches("anything"));
+        assertTrue(new SearchQuery(null).isEmpty());
+    }
+
+    @Test
+    public void buildsPrefixQueryOfLowercasedWords() {
+        SearchQuery query = new SearchQuery("  Call MOM_at 5pm\"* ");
+        assertEquals("Call MOM_at 5pm\"*", query.getText());
+        assertEquals("call* mom* at* 5pm*", query.toFtsQuery());
+        assertTrue(query.matches("5PM: at the dentist, call mommy"));
+        assertFalse(query.matches("call mom at 5"));
+    }
+
+    @Test
+    public void foldsAsciiCaseOnly() {
+        assertTrue(new SearchQuery("CAFé").matches("café"));
+        assertTrue(new SearchQuery("CAFÉ").matches("cafÉ"));
+        assertFalse(new SearchQuery("café").matches("CAFÉ"));
+        assertTrue(new SearchQuery("Café").isPrefixOf("cAFé au lait"));
+        assertFalse(new SearchQuery("café").isPrefixOf("CAFÉ"));
+        assertFalse(new SearchQuery("café au lait").isPrefixOf("café"));
+    }
+
+    @Test
+    public void matchesLikeFullTextIndex() throws SQLException {
+        Random random = new Random(11);
+        for (int i = 0; i < 500; i++) {
+            insert(randomText(random, 12));
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            SearchQuery query = new SearchQuery(randomText(random, 4));
+            if (query.isEmpty()) {
+                continue;
+            }
+            assertEquals(query.toFtsQuery(), search(query), matchedInMemory(query));
+        }
+    }
+
+    @Test
+    public void narrowsOnlyToSubsetsOfFullTextIndex() throws SQLException {
+        Random random = new Random(13);
+        for (int i = 0; i < 500; i++) {
+            insert(randomText(random, 12));
+        }
+
+        int narrowing = 0;
+        for (int i = 0; i < 1000; i++) {
+            // Mostly more typed after the first query, as while typing, sometimes anything
+            final String text = randomText(random, 3);
+            SearchQuery first = new SearchQuery(text);
+            SearchQuery second = new SearchQuery(random.nextInt(4) == 0
+                    ? randomText(random, 5) : text + randomText(random, 2));
+            if (first.isEmpty() || second.isEmpty() || !second.narrows(first)) {
+                continue;
+            }
+
+            narrowing++;
+            Set<Integer> wider = search(first);
+            for (Integer row : search(second)) {
+                assertTrue(second.toFtsQuery() + " in " + first.toFtsQuery(),
+                        wider.contains(row));
+            }
+        }
+        assertTrue(narrowing > 100);
+    }
+
+    private void insert(String title) throws SQLException {
+        PreparedStatement statement =
+            mConnection.prepareStatement("INSERT INTO search (docid, title) VALUES (?, ?)");
+        statement.setInt(1, mTitles.size());
+        statement.setString(2, title);
+        statement.executeUpdate();
+        statement.close();
+        mTitles.add(title);
+    }
+
+    /**
+     * @return The rows the full-text index matches with a query
+     */
+    private Set<Integer> search(SearchQuery query) throws SQLException {
+        PreparedStatement statement =
+            mConnection.prepareStatement("SELECT docid FROM search WHERE title MATCH ?");
+        statement.setString(1, query.toFtsQuery());
+        ResultSet rows = statement.executeQuery();
+        Set<Integer> found = new HashSet<Integer>();
+        while (rows.next()) {
+            found.add(rows.getInt(1));
+        }
+        statement.close();
+        return found;
+    }
+
+    /**
+     * @return The rows {@link SearchQuery#matches(String)} accepts
+     */
+    private Set<Integer> matchedInMemory(SearchQuery query) {
+        Set<Integer> found = new HashSet<Integer>();
+        for (int row = 0; row < mTitles.size(); row++) {
+            if (query.matches(mTitles.get(row))) {
+                found.add(row);
+            }
+        }
+        return found;
+    }
+
+    private static String randomText(Random random, int maxLength) {
+        StringBuilder sb = new StringBuilder();
+        final int length = 1 + random.nextInt(maxLength);
+        for (int i = 0; i < length; i++) {
+            sb.append(ALPHABET[random.nextInt(ALPHABET.length)]);
+        }
+        return sb.toString();
+    }
+}
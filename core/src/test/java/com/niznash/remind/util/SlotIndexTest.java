@@ -0,0 +1,93 @@
+package com.niznash.remind.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link SlotIndex}, against a {@link HashMap} of the same keys.
+ *
+ * @author niznash@gmail.com (Alejandro Nijamkin)
+ */
+public class SlotIndexTest {
+
+    @Test
+    public void findsNothingWhenEmpty() {
+        SlotIndex index = new SlotIndex(4);
+        assertEquals(SlotIndex.NONE, index.find(0));
+        assertEquals(SlotIndex.NONE, index.find(-1));
+        assertEquals(4, index.getCapacity());
+    }
+
+    @Test
+    public void keepsKeysAcrossGrowth() {
+        SlotIndex index = new SlotIndex(2);
+        index.add(0, 10);
+        index.add(1, -10);
+        index.grow(8);
+        assertEquals(8, index.getCapacity());
+        assertEquals(0, index.find(10));
+        assertEquals(1, index.find(-10));
+        assertEquals(-10, index.getKey(1));
+
+        index.add(7, Long.MAX_VALUE);
+        assertEquals(7, index.find(Long.MAX_VALUE));
+
+        index.clear();
+        assertEquals(SlotIndex.NONE, index.find(10));
+        assertEquals(SlotIndex.NONE, index.find(Long.MAX_VALUE));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsShrinking() {
+        new SlotIndex(4).grow(2);
+    }
+
+    @Test
+    public void matchesHashMap() {
+        Random random = new Random(17);
+        final int capacity = 64;
+        SlotIndex index = new SlotIndex(capacity);
+        Map<Long, Integer> slots = new HashMap<Long, Integer>();
+        List<Integer> free = new ArrayList<Integer>();
+        for (int slot = capacity - 1; slot >= 0; slot--) {
+            free.add(slot);
+        }
+
+        for (int step = 0; step < 20000; step++) {
+            // Few keys, some only differing in their high half, so probe sequences run into
+            // each other and removals have entries to shift back
+            final long key = random.nextInt(2) == 0 ? random.nextInt(100)
+                    : (long) random.nextInt(100) << 32;
+            final Integer slot = slots.get(key);
+            if (slot == null && !free.isEmpty() && random.nextInt(3) != 0) {
+                final int added = free.remove(free.size() - 1);
+                index.add(added, key);
+                slots.put(key, added);
+            } else if (slot != null && random.nextInt(2) == 0) {
+                index.remove(slot);
+                slots.remove(key);
+                free.add(slot);
+            }
+
+            assertEquals(slotOf(slots, key), index.find(key));
+            if (step % 1000 == 0) {
+                for (Map.Entry<Long, Integer> entry : slots.entrySet()) {
+                    assertEquals(entry.getValue().intValue(), index.find(entry.getKey()));
+                    assertEquals(entry.getKey().longValue(), index.getKey(entry.getValue()));
+                }
+            }
+        }
+    }
+
+    private static int slotOf(Map<Long, Integer> slots, long key) {
+        final Integer slot = slots.get(key);
+        return slot != null ? slot : SlotIndex.NONE;
+    }
+}
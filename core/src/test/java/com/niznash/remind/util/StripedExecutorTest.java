@@ -0,0 +1,257 @@
+package com.niznash.remind.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link StripedExecutor}.
+ *
+ * @author niznash@gmail.com (Alejandro Nijamkin)
+ */
+public class StripedExecutorTest {
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    /**
+     * A task tagged with what it stands for, that records the order tasks ran in.
+     */
+    private static class Step implements Runnable {
+        final int tag;
+        final List<Integer> ran;
+        final CountDownLatch done;
+
+        Step(int tag, List<Integer> ran, CountDownLatch done) {
+            this.tag = tag;
+            this.ran = ran;
+            this.done = done;
+        }
+
+        public void run() {
+            synchronized (ran) {
+                ran.add(tag);
+            }
+            done.countDown();
+        }
+    }
+
+    /**
+     * A group that runs its tasks one after the other, and records every group it ran.
+     */
+    private static class RecordingGroup implements StripedExecutor.Group {
+        final List<List<Runnable>> runs = new ArrayList<List<Runnable>>();
+
+        public void run(List<Runnable> tasks) {
+            synchronized (runs) {
+                runs.add(new ArrayList<Runnable>(tasks));
+            }
+            for (Runnable task : tasks) {
+                task.run();
+            }
+        }
+    }
+
+    @Test
+    public void runsTasksForAKeyInOrder() throws InterruptedException {
+        final int keys = 16;
+        final int tasksPerKey = 200;
+        StripedExecutor executor = new StripedExecutor(4, "test");
+        CountDownLatch done = new CountDownLatch(keys * tasksPerKey);
+
+        List<List<Integer>> ran = new ArrayList<List<Integer>>();
+        for (int key = 0; key < keys; key++) {
+            ran.add(new ArrayList<Integer>());
+        }
+        for (int i = 0; i < tasksPerKey; i++) {
+            for (int key = 0; key < keys; key++) {
+                executor.execute(key, new Step(i, ran.get(key), done));
+            }
+        }
+
+        assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        for (int key = 0; key < keys; key++) {
+            List<Integer> steps = ran.get(key);
+            assertEquals(tasksPerKey, steps.size());
+            for (int i = 0; i < tasksPerKey; i++) {
+                assertEquals("Key " + key, Integer.valueOf(i), steps.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void runsMultiLaneTaskOnlyOnceEveryLaneGotToIt() throws InterruptedException {
+        final int keys = 64;
+        StripedExecutor executor = new StripedExecutor(4, "test");
+        final AtomicInteger before = new AtomicInteger();
+        final AtomicInteger seenByBarrier = new AtomicInteger(-1);
+        final AtomicInteger afterTooEarly = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(keys * 2 + 1);
+
+        long[] all = new long[keys];
+        for (int key = 0; key < keys; key++) {
+            all[key] = key;
+            // Slow enough that the lanes get to the barrier at different times
+            executor.execute(key, new Runnable() {
+                public void run() {
+                    sleep(2);
+                    before.incrementAndGet();
+                    done.countDown();
+                }
+            });
+        }
+        executor.execute(all, new Runnable() {
+            public void run() {
+                seenByBarrier.set(before.get());
+                done.countDown();
+            }
+        });
+        for (int key = 0; key < keys; key++) {
+            executor.execute(key, new Runnable() {
+                public void run() {
+                    if (seenByBarrier.get() < 0) {
+                        afterTooEarly.incrementAndGet();
+                    }
+                    done.countDown();
+                }
+            });
+        }
+
+        assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(keys, seenByBarrier.get());
+        assertEquals(0, afterTooEarly.get());
+    }
+
+    @Test
+    public void neverMixesGroups() throws InterruptedException {
+        StripedExecutor executor = new StripedExecutor(1, 16, 50, "test");
+        RecordingGroup a = new RecordingGroup();
+        RecordingGroup b = new RecordingGroup();
+        List<Integer> ran = new ArrayList<Integer>();
+        final int tasks = 40;
+        CountDownLatch done = new CountDownLatch(tasks);
+
+        List<Runnable> ofA = new ArrayList<Runnable>();
+        List<Runnable> ofB = new ArrayList<Runnable>();
+        for (int i = 0; i < tasks; i++) {
+            Step step = new Step(i, ran, done);
+            // Runs of one group or the other, of varying lengths, and some ungrouped tasks
+            if (i % 7 == 6) {
+                executor.execute(0, step);
+            } else if ((i / 3) % 2 == 0) {
+                ofA.add(step);
+                executor.execute(0, step, a);
+            } else {
+                ofB.add(step);
+                executor.execute(0, step, b);
+            }
+        }
+
+        assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        for (int i = 0; i < tasks; i++) {
+            assertEquals(Integer.valueOf(i), ran.get(i));
+        }
+        assertOnlyRan(a, ofA);
+        assertOnlyRan(b, ofB);
+    }
+
+    @Test
+    public void capsGroupSize() throws InterruptedException {
+        final int maxGroupSize = 4;
+        final int tasks = 10;
+        StripedExecutor executor = new StripedExecutor(1, maxGroupSize, 1000, "test");
+        RecordingGroup group = new RecordingGroup();
+        List<Integer> ran = new ArrayList<Integer>();
+        CountDownLatch done = new CountDownLatch(tasks);
+
+        // Hold the lane so every task is queued before the first group is gathered
+        final CountDownLatch release = new CountDownLatch(1);
+        executor.execute(0, new Runnable() {
+            public void run() {
+                await(release);
+            }
+        });
+        for (int i = 0; i < tasks; i++) {
+            executor.execute(0, new Step(i, ran, done), group);
+        }
+        release.countDown();
+
+        assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(3, group.runs.size());
+        assertEquals(4, group.runs.get(0).size());
+        assertEquals(4, group.runs.get(1).size());
+        assertEquals(2, group.runs.get(2).size());
+    }
+
+    @Test
+    public void runsGatheredGroupWhenInterrupted() throws InterruptedException {
+        // Would wait for more tasks far longer than the test runs
+        StripedExecutor executor = new StripedExecutor(1, 16, TimeUnit.MINUTES.toMillis(10),
+                "test");
+        final AtomicReference<Thread> lane = new AtomicReference<Thread>();
+        final CountDownLatch started = new CountDownLatch(1);
+        executor.execute(0, new Runnable() {
+            public void run() {
+                lane.set(Thread.currentThread());
+                started.countDown();
+            }
+        });
+        assertTrue(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        RecordingGroup group = new RecordingGroup();
+        List<Integer> ran = new ArrayList<Integer>();
+        CountDownLatch done = new CountDownLatch(1);
+        executor.execute(0, new Step(0, ran, done), group);
+
+        // Wait for the lane to be waiting for more of the group, then interrupt it
+        Thread thread = lane.get();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (thread.getState() != Thread.State.TIMED_WAITING && System.nanoTime() < deadline) {
+            Thread.yield();
+        }
+        thread.interrupt();
+
+        assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(1, group.runs.size());
+
+        // The lane stopped, with the thread still marked as interrupted
+        thread.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+        assertFalse(thread.isAlive());
+    }
+
+    private static void assertOnlyRan(RecordingGroup group, List<Runnable> expected) {
+        List<Runnable> ran = new ArrayList<Runnable>();
+        for (List<Runnable> run : group.runs) {
+            ran.addAll(run);
+        }
+        assertEquals(expected.size(), ran.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSame(expected.get(i), ran.get(i));
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
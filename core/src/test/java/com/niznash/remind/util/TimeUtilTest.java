@@ -0,0 +1,208 @@
+package com.niznash.remind.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Calendar;
+import java.util.Random;
+import java.util.TimeZone;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link TimeUtil#nextOccurrence(long, int, long)}, in a time zone with daylight saving
+ * time. In 2024, New York moved its clocks forward on Sunday, March 10 at 2:00, and back on
+ * Sunday, November 3 at 2:00.
+ *
+ * @author niznash@gmail.com (Alejandro Nijamkin)
+ */
+public class TimeUtilTest {
+
+    private static final long HOUR = 60 * 60 * 1000;
+    private static final long DAY = 24 * HOUR;
+
+    private static final ZoneId NEW_YORK = ZoneId.of("America/New_York");
+
+    private TimeZone mDefaultTimeZone;
+
+    @Before
+    public void setUp() {
+        mDefaultTimeZone = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone(NEW_YORK));
+        TimeUtil.invalidate();
+    }
+
+    @After
+    public void tearDown() {
+        TimeZone.setDefault(mDefaultTimeZone);
+        TimeUtil.invalidate();
+    }
+
+    @Test
+    public void keepsLocalTimeOfDayAcrossDaylightSavingTime() {
+        final int daily = Recurrence.everyDays(1);
+
+        // 9:00 EST, then 9:00 EDT a day of 23 hours later
+        final long march9 = utc(2024, Calendar.MARCH, 9, 14, 0);
+        assertEquals(utc(2024, Calendar.MARCH, 10, 13, 0),
+                TimeUtil.nextOccurrence(march9, daily, march9));
+
+        // 9:00 EDT, then 9:00 EST a day of 25 hours later
+        final long november2 = utc(2024, Calendar.NOVEMBER, 2, 13, 0);
+        assertEquals(utc(2024, Calendar.NOVEMBER, 3, 14, 0),
+                TimeUtil.nextOccurrence(november2, daily, november2));
+
+        // Months later, still at 9:00 local
+        assertEquals(utc(2024, Calendar.DECEMBER, 1, 14, 0),
+                TimeUtil.nextOccurrence(november2, daily, utc(2024, Calendar.NOVEMBER, 30, 15, 0)));
+    }
+
+    @Test
+    public void movesSkippedTimeOfDayForwardByTheGap() {
+        final int daily = Recurrence.everyDays(1);
+
+        // 2:30 EST; 2:30 does not exist on March 10, so 3:30 EDT, then back to 2:30 EDT
+        final long start = utc(2024, Calendar.MARCH, 9, 7, 30);
+        final long skipped = TimeUtil.nextOccurrence(start, daily, start);
+        assertEquals(utc(2024, Calendar.MARCH, 10, 7, 30), skipped);
+        assertEquals(utc(2024, Calendar.MARCH, 11, 6, 30),
+                TimeUtil.nextOccurrence(start, daily, skipped));
+    }
+
+    @Test
+    public void takesRepeatedTimeOfDayTheSecondTime() {
+        // 1:30 EDT; 1:30 comes twice on November 3, first EDT then EST
+        final long start = utc(2024, Calendar.NOVEMBER, 2, 5, 30);
+        assertEquals(utc(2024, Calendar.NOVEMBER, 3, 6, 30),
+                TimeUtil.nextOccurrence(start, Recurrence.everyDays(1), start));
+    }
+
+    @Test
+    public void countsHourlyRulesInElapsedTime() {
+        final int hourly = Recurrence.everyHours(1);
+
+        // 1:00 EST, then 3:00 EDT an hour later
+        final long start = utc(2024, Calendar.MARCH, 10, 6, 0);
+        assertEquals(start + HOUR, TimeUtil.nextOccurrence(start, hourly, start));
+
+        // 1:00 EDT, then 1:00 EST an hour later
+        final long fallBack = utc(2024, Calendar.NOVEMBER, 3, 5, 0);
+        assertEquals(fallBack + HOUR, TimeUtil.nextOccurrence(fallBack, hourly, fallBack));
+
+        // Every 5 hours, from a whole day before the change
+        final int everyFive = Recurrence.everyHours(5);
+        final long before = start - DAY;
+        assertEquals(before + 6 * 5 * HOUR,
+                TimeUtil.nextOccurrence(before, everyFive, before + 5 * 5 * HOUR));
+    }
+
+    @Test
+    public void crossesWeekBoundaries() {
+        // Saturday, March 9, 9:00 EST
+        final long saturday = utc(2024, Calendar.MARCH, 9, 14, 0);
+        final int rule = Recurrence.onDaysOfWeek(Calendar.MONDAY, Calendar.SATURDAY);
+
+        // Monday, after the change, then the Saturday after
+        final long monday = TimeUtil.nextOccurrence(saturday, rule, saturday);
+        assertEquals(utc(2024, Calendar.MARCH, 11, 13, 0), monday);
+        assertEquals(utc(2024, Calendar.MARCH, 16, 13, 0),
+                TimeUtil.nextOccurrence(saturday, rule, monday));
+
+        // Sundays only, from a Saturday
+        assertEquals(utc(2024, Calendar.MARCH, 10, 13, 0),
+                TimeUtil.nextOccurrence(saturday, Recurrence.onDaysOfWeek(Calendar.SUNDAY),
+                        saturday));
+
+        // Only the day it started on: a week later
+        assertEquals(utc(2024, Calendar.MARCH, 16, 13, 0),
+                TimeUtil.nextOccurrence(saturday, Recurrence.onDaysOfWeek(Calendar.SATURDAY),
+                        saturday));
+
+        // Looking before it started, on a day the rule skips: the first day it is on
+        assertEquals(utc(2024, Calendar.MARCH, 11, 13, 0),
+                TimeUtil.nextOccurrence(saturday, Recurrence.onDaysOfWeek(Calendar.MONDAY),
+                        saturday - 3 * DAY));
+    }
+
+    @Test
+    public void startsAtTheFirstOccurrence() {
+        final long start = utc(2024, Calendar.MARCH, 9, 14, 0);
+        assertEquals(start, TimeUtil.nextOccurrence(start, Recurrence.NONE, start - 1));
+        assertEquals(Long.MAX_VALUE, TimeUtil.nextOccurrence(start, Recurrence.NONE, start));
+        assertEquals(start, TimeUtil.nextOccurrence(start, Recurrence.everyDays(3), start - DAY));
+        assertEquals(start, TimeUtil.nextOccurrence(start, Recurrence.everyHours(3), start - 1));
+    }
+
+    @Test
+    public void matchesDayByDayReference() {
+        Random random = new Random(5);
+        final long from = utc(2024, Calendar.JANUARY, 1, 0, 0);
+        for (int i = 0; i < 5000; i++) {
+            // Minutes only, so times land in the gap and the overlap of the changes too
+            final long start = from + random.nextInt(366 * 24 * 60) * 60 * 1000L;
+            final long after = start + (long) ((random.nextDouble() * 80 - 10) * DAY);
+            final int rule = randomRule(random);
+
+            assertEquals("start " + start + ", rule " + rule + ", after " + after,
+                    reference(start, rule, after), TimeUtil.nextOccurrence(start, rule, after));
+        }
+    }
+
+    private static int randomRule(Random random) {
+        switch (random.nextInt(3)) {
+            case 0:
+                return Recurrence.everyHours(1 + random.nextInt(48));
+            case 1:
+                return Recurrence.everyDays(1 + random.nextInt(10));
+            default: {
+                int[] days = new int[1 + random.nextInt(3)];
+                for (int i = 0; i < days.length; i++) {
+                    days[i] = Calendar.SUNDAY + random.nextInt(7);
+                }
+                return Recurrence.onDaysOfWeek(days);
+            }
+        }
+    }
+
+    /**
+     * Finds the next occurrence by walking every hour or day from the start, with the local dates
+     * and times of {@code java.time} rather than a {@link Calendar}.
+     */
+    private static long reference(long start, int rule, long after) {
+        if (Recurrence.getKind(rule) == Recurrence.KIND_HOURLY) {
+            final long period = Recurrence.getInterval(rule) * HOUR;
+            long occurrence = start;
+            while (occurrence <= after) {
+                occurrence += period;
+            }
+            return occurrence;
+        }
+
+        final ZonedDateTime first = Instant.ofEpochMilli(start).atZone(NEW_YORK);
+        for (int days = 0; ; days++) {
+            // Moves a time in a gap forward by the length of the gap, takes the second of two
+            final ZonedDateTime local = ZonedDateTime.of(first.toLocalDateTime().plusDays(days),
+                    NEW_YORK).withLaterOffsetAtOverlap();
+            final long occurrence = local.toInstant().toEpochMilli();
+            // Monday is 1 in java.time, 2 in Calendar; Sunday is 7 and 1
+            final int dayOfWeek = local.getDayOfWeek().getValue() % 7 + Calendar.SUNDAY;
+            final boolean on = Recurrence.getKind(rule) == Recurrence.KIND_DAILY
+                    ? days % Recurrence.getInterval(rule) == 0
+                    : Recurrence.isOnDayOfWeek(rule, dayOfWeek);
+            if (on && occurrence > after) {
+                return occurrence;
+            }
+        }
+    }
+
+    private static long utc(int year, int month, int day, int hour, int minute) {
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.clear();
+        calendar.set(year, month, day, hour, minute);
+        return calendar.getTimeInMillis();
+    }
+}
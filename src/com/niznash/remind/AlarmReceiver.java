@@ -0,0 +1,53 @@
+package com.niznash.remind;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.os.PowerManager;
+
+import com.niznash.remind.schedule.ReminderScheduler;
+
+/**
+ * Receives the alarm set by {@link ReminderScheduler} and has {@link RemindService} fire the
+ * reminders that came due. Holds a wake lock until the service is done, so the device can't go
+ * back to sleep in between. The lock is not reference counted, and times out, so alarms that come
+ * in while one is handled, or a service that never gets to release it, can't keep the device
+ * awake.
+ *
+ * @author niznash@gmail.com (Alejandro Nijamkin)
+ */
+public class AlarmReceiver extends BroadcastReceiver {
+
+    // Longest the wake lock is held, should the service never release it
+    private static final long WAKE_LOCK_TIMEOUT_MILLIS = 60 * 1000;
+
+    private static PowerManager.WakeLock sWakeLock;
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        synchronized (AlarmReceiver.class) {
+            if (sWakeLock == null) {
+                PowerManager powerManager =
+                    (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+                sWakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK,
+                        "Remind:AlarmReceiver");
+                sWakeLock.setReferenceCounted(false);
+            }
+            sWakeLock.acquire(WAKE_LOCK_TIMEOUT_MILLIS);
+        }
+
+        RemindService.fireDueReminders(context);
+    }
+
+    /**
+     * Releases the wake lock taken when the alarm was received, when done handling it. Does
+     * nothing if it was released already, or timed out.
+     */
+    static void releaseWakeLock() {
+        synchronized (AlarmReceiver.class) {
+            if (sWakeLock != null) {
+                sWakeLock.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.niznash.remind;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+/**
+ * Alarms don't survive a reboot: has {@link RemindService} set the next one again once the device
+ * is up.
+ *
+ * @author niznash@gmail.com (Alejandro Nijamkin)
+ */
+public class BootReceiver extends BroadcastReceiver {
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        RemindService.rescheduleReminders(context);
+    }
+}
@@ -1,32 +1,86 @@
 package com.niznash.remind;
 
-import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
-import android.app.IntentService;
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Handler;
+import android.os.IBinder;
 import android.os.Looper;
+import android.support.v4.app.NotificationCompat;
 
 import com.niznash.remind.content.Intents;
 import com.niznash.remind.content.RemindData;
 import com.niznash.remind.content.RemindServiceListener;
+import com.niznash.remind.content.RemindStats;
+import com.niznash.remind.content.Reminder;
+import com.niznash.remind.content.ReminderDelta;
+import com.niznash.remind.schedule.ReminderScheduler;
+import com.niznash.remind.util.Recurrence;
+import com.niznash.remind.util.StripedExecutor;
+import com.niznash.remind.util.TimeUtil;
 
 /**
  * Service that performs long-running operations for the application.
  *
+ * <p>Operations run on a small pool of worker threads, striped by reminder ID: the operations on
+ * one reminder run one at a time, in the order they were started, while operations on different
+ * reminders run concurrently. The service stops itself once every operation started finished.
+ *
+ * <p>An update to a reminder that already has one waiting is merged into the waiting one, which
+ * then writes the latest values, once. A delete of a reminder cancels the update waiting for it.
+ *
+ * <p>Creates, updates and deletes queued one behind the other on a worker are committed together,
+ * in a single transaction, and listeners are notified once, after the commit. A delete of several
+ * reminders runs alone, as a single statement.
+ *
  * @author niznash@gmail.com (Alejandro Nijamkin)
  */
-public class RemindService extends IntentService {
+public class RemindService extends Service {
 
     // Reminder operation IDs
     private static final int OP_CREATE_REMINDER = 0;
     private static final int OP_UPDATE_REMINDER = 1;
-    private static final int OP_DELETE_REMINDER = 2;
+    private static final int OP_DELETE_REMINDERS = 2;
+    private static final int OP_FIRE_DUE_REMINDERS = 3;
+    private static final int OP_RESCHEDULE_REMINDERS = 4;
+
+    // Number of worker threads. Writes still take turns on the database, but reads, notifications
+    // and scheduling of one operation overlap the write of another
+    private static final int WORKER_COUNT = 4;
+
+    // Limits of a group of writes committed together: a worker waits up to the delay after the
+    // first write of a group for more to come
+    private static final int MAX_WRITE_GROUP_SIZE = 64;
+    private static final long MAX_WRITE_GROUP_DELAY_MILLIS = 2;
+
+    // Key the schedule-wide operations are striped on, so they never overlap each other
+    private static final long SCHEDULE_KEY = Intents.NO_VALUE;
 
-    // Registered listeners to notify of the completion of operations
-    private static final ArrayList<RemindServiceListener> sListeners =
-        new ArrayList<RemindServiceListener>();
+    // Runs the operations, shared by every instance of the service so the order of the operations
+    // on a reminder holds even if the service was stopped and started again in between
+    private static final StripedExecutor sExecutor =
+        new StripedExecutor(WORKER_COUNT, MAX_WRITE_GROUP_SIZE, MAX_WRITE_GROUP_DELAY_MILLIS,
+                "RemindService");
+
+    // Updates that have not started yet, by reminder ID
+    private static final HashMap<Long, PendingUpdate> sPendingUpdates =
+        new HashMap<Long, PendingUpdate>();
+
+    /*
+     * Registered listeners to notify of the completion of operations. Copied on write, so they can
+     * be registered and unregistered from any thread, even from a listener, without ever waiting
+     * for a dispatch to finish.
+     */
+    private static final CopyOnWriteArrayList<RemindServiceListener> sListeners =
+        new CopyOnWriteArrayList<RemindServiceListener>();
 
     /*
      * Handler on the main/UI thread, used to make sure we notify our listeners on the UI thread
@@ -35,14 +89,12 @@ public class RemindService extends IntentService {
     private static final Handler sHandler = new Handler(Looper.getMainLooper());
 
     /**
-     * Registers a listener with the service.
+     * Registers a listener with the service. Registering a listener twice has no effect.
      *
      * @param listener The listener to register
      */
     public static void registerListener(RemindServiceListener listener) {
-        synchronized (sListeners) {
-            sListeners.add(listener);
-        }
+        sListeners.addIfAbsent(listener);
     }
 
     /**
@@ -51,9 +103,14 @@ public class RemindService extends IntentService {
      * @param listener The listener to unregister
      */
     public static void unregisterListener(RemindServiceListener listener) {
-        synchronized (sListeners) {
-            sListeners.remove(listener);
-        }
+        sListeners.remove(listener);
+    }
+
+    /**
+     * @return A snapshot of the queue depth, latency and group commit counters of the operations
+     */
+    public static StripedExecutor.Stats getStats() {
+        return sExecutor.getStats();
     }
 
     /**
@@ -61,12 +118,14 @@ public class RemindService extends IntentService {
      *
      * @param context The context
      * @param title The title of the reminder
-     * @param time The time to schedule the reminder for
+     * @param time The time to schedule the reminder for, its first occurrence if it recurs
+     * @param recurrence The {@link Recurrence} rule of the reminder
      */
-    public static void createReminder(Context context, String title, long time) {
+    public static void createReminder(Context context, String title, long time, int recurrence) {
         Intent intent = newIntent(context, OP_CREATE_REMINDER);
         intent.putExtra(Intents.EXTRA_TITLE, title);
         intent.putExtra(Intents.EXTRA_TIME, time);
+        intent.putExtra(Intents.EXTRA_RECURRENCE, recurrence);
         context.startService(intent);
     }
 
@@ -77,27 +136,47 @@ public class RemindService extends IntentService {
      * @param id The ID of the reminder to modify
      * @param title The new title for the reminder
      * @param time The new time for the reminder
+     * @param recurrence The new {@link Recurrence} rule for the reminder
      */
-    public static void updateReminder(Context context, long id, String title, long time) {
+    public static void updateReminder(Context context, long id, String title, long time,
+            int recurrence) {
         Intent intent = newIntent(context, OP_UPDATE_REMINDER);
         intent.putExtra(Intents.EXTRA_ID, id);
         intent.putExtra(Intents.EXTRA_TITLE, title);
         intent.putExtra(Intents.EXTRA_TIME, time);
+        intent.putExtra(Intents.EXTRA_RECURRENCE, recurrence);
         context.startService(intent);
     }
 
     /**
-     * Deletes an existing set of reminders.
+     * Deletes an existing set of reminders, all in one operation.
      *
      * @param context The context
      * @param ids Array of IDs of reminders to delete
      */
-    public static void deleteReminders(Context context, Long... ids) {
-        for (Long id : ids) {
-            Intent intent = newIntent(context, OP_DELETE_REMINDER);
-            intent.putExtra(Intents.EXTRA_ID, id.longValue());
-            context.startService(intent);
-        }
+    public static void deleteReminders(Context context, long... ids) {
+        Intent intent = newIntent(context, OP_DELETE_REMINDERS);
+        intent.putExtra(Intents.EXTRA_IDS, ids);
+        context.startService(intent);
+    }
+
+    /**
+     * Fires the reminders that are due: posts a notification for each, and schedules the next.
+     *
+     * @param context The context
+     */
+    static void fireDueReminders(Context context) {
+        context.startService(newIntent(context, OP_FIRE_DUE_REMINDERS));
+    }
+
+    /**
+     * Rebuilds the schedule of pending reminders from scratch and sets the alarm for the next one,
+     * in the background.
+     *
+     * @param context The context
+     */
+    static void rescheduleReminders(Context context) {
+        context.startService(newIntent(context, OP_RESCHEDULE_REMINDERS));
     }
 
     /**
@@ -114,84 +193,361 @@ public class RemindService extends IntentService {
     }
 
     /**
-     * Constructor.
+     * An update waiting for its turn, with the {@link Intent} of the latest update to the same
+     * reminder started since.
      */
-    public RemindService() {
-	    super("RemindService");
-    }
+    private static class PendingUpdate {
+        private final long mId;
 
-    @Override
-    protected void onHandleIntent(final Intent intent) {
-        // Process the intent
-        processIntent(intent);
+        // Guarded by sPendingUpdates
+        private Intent mIntent;
+        private boolean mCancelled;
 
-        // Notify listeners on the UI thread
-        sHandler.post(new Runnable() {
-            public void run() {
-                onIntentProcessed(intent);
+        public PendingUpdate(long id, Intent intent) {
+            mId = id;
+            mIntent = intent;
+        }
+
+        /**
+         * Stops merging updates into this one, which is about to run.
+         *
+         * @return The {@code Intent} of the latest update, or {@code null} if it was cancelled
+         */
+        public Intent take() {
+            synchronized (sPendingUpdates) {
+                if (sPendingUpdates.get(mId) == this) {
+                    sPendingUpdates.remove(mId);
+                }
+                return mCancelled ? null : mIntent;
             }
-        });
+        }
     }
 
     /**
-     * Notifies to listeners that an {@link Intent} was processed. This means that an operation was
-     * finished. This method must be called on the UI thread.
-     *
-     * @param intent The {@link Intent} that was processed, can have additional extras added to it
-     *     by {@link #processIntent(Intent)} to be used to extract result data in this method
+     * A create, update or delete, run alone or committed together with the writes queued behind
+     * it on the same worker.
      */
-    private void onIntentProcessed(Intent intent) {
+    private class Write implements Runnable {
+        private final Intent mIntent;
+        private final PendingUpdate mUpdate;
+        private final long mStartNanos = System.nanoTime();
+
+        /**
+         * Constructor.
+         *
+         * @param intent The {@code Intent} of the write, {@code null} for an update
+         * @param update The update, {@code null} for a create or a delete
+         */
+        public Write(Intent intent, PendingUpdate update) {
+            mIntent = intent;
+            mUpdate = update;
+        }
+
+        /**
+         * @return The {@code Intent} of the write, or {@code null} if it was cancelled
+         */
+        public Intent take() {
+            return mUpdate != null ? mUpdate.take() : mIntent;
+        }
+
+        public void run() {
+            applyWrites(Collections.<Runnable> singletonList(this));
+        }
+    }
+
+    // Commits writes together
+    private final StripedExecutor.Group mWriteGroup = new StripedExecutor.Group() {
+        public void run(List<Runnable> tasks) {
+            applyWrites(tasks);
+        }
+    };
+
+    // Operations started and not finished yet, and the ID of the last start, touched on the UI
+    // thread only
+    private int mPendingCount;
+    private int mLastStartId;
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+
+    @Override
+    public int onStartCommand(final Intent intent, int flags, int startId) {
+        mLastStartId = startId;
+
         switch (intent.getIntExtra(Intents.EXTRA_OP, Intents.NO_VALUE)) {
-            case OP_CREATE_REMINDER: {
+            case OP_CREATE_REMINDER:
+                // A new reminder has no ID to be ordered with yet
+                sExecutor.execute(new Write(intent, null), mWriteGroup);
+                break;
+
+            case OP_UPDATE_REMINDER: {
                 final long id = intent.getLongExtra(Intents.EXTRA_ID, Intents.NO_VALUE);
-                synchronized (sListeners) {
-                    for (RemindServiceListener listener : sListeners) {
-                        listener.onReminderCreated(id);
+                final PendingUpdate update;
+                synchronized (sPendingUpdates) {
+                    PendingUpdate pending = sPendingUpdates.get(id);
+                    if (pending != null) {
+                        // Merged, the waiting update writes these values instead of its own
+                        pending.mIntent = intent;
+                        return START_NOT_STICKY;
                     }
+                    update = new PendingUpdate(id, intent);
+                    sPendingUpdates.put(id, update);
                 }
+
+                sExecutor.execute(id, new Write(null, update), mWriteGroup);
                 break;
             }
 
-            case OP_UPDATE_REMINDER: {
-                final long id = intent.getLongExtra(Intents.EXTRA_ID, Intents.NO_VALUE);
-                synchronized (sListeners) {
-                    for (RemindServiceListener listener : sListeners) {
-                        listener.onReminderUpdated(id);
-                    }
+            case OP_DELETE_REMINDERS: {
+                final long[] ids = intent.getLongArrayExtra(Intents.EXTRA_IDS);
+                if (ids == null || ids.length == 0) {
+                    return startNothing();
+                }
+                cancelPendingUpdates(ids);
+                if (ids.length == 1) {
+                    sExecutor.execute(ids[0], new Write(intent, null), mWriteGroup);
+                } else {
+                    // Runs alone, holding the workers of all the reminders, as a single statement
+                    final long start = System.nanoTime();
+                    sExecutor.execute(ids, new Runnable() {
+                        public void run() {
+                            deleteReminders(ids, start);
+                        }
+                    });
                 }
                 break;
             }
 
-            case OP_DELETE_REMINDER: {
-                final long id = intent.getLongExtra(Intents.EXTRA_ID, Intents.NO_VALUE);
-                synchronized (sListeners) {
-                    for (RemindServiceListener listener : sListeners) {
-                        listener.onReminderDeleted(id);
+            case OP_FIRE_DUE_REMINDERS:
+            case OP_RESCHEDULE_REMINDERS: {
+                final long start = System.nanoTime();
+                sExecutor.execute(SCHEDULE_KEY, new Runnable() {
+                    public void run() {
+                        handleIntent(intent, start);
                     }
-                }
+                });
                 break;
             }
 
             default:
                 throw new IllegalArgumentException("No OP code found!");
         }
+        mPendingCount++;
+        return START_NOT_STICKY;
     }
 
     /**
-     * Processes an {@link Intent}. Does the heavy-lifting required for the given operation.
+     * Cancels the updates waiting for the given reminders: the delete queued behind them would
+     * make their write moot.
      *
-     * <p>This blocks all newer {@code Intent}s from being processed so make sure it does not run
-     * too long for any single {@code Intent}.
+     * @param ids The IDs of the reminders about to be deleted
+     */
+    private static void cancelPendingUpdates(long[] ids) {
+        synchronized (sPendingUpdates) {
+            if (sPendingUpdates.isEmpty()) {
+                return;
+            }
+            for (long id : ids) {
+                PendingUpdate pending = sPendingUpdates.remove(id);
+                if (pending != null) {
+                    pending.mCancelled = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops the service for a start that queued nothing, unless operations are pending.
+     *
+     * @return The value for {@link #onStartCommand(Intent, int, int)} to return
+     */
+    private int startNothing() {
+        if (mPendingCount == 0) {
+            stopSelf(mLastStartId);
+        }
+        return START_NOT_STICKY;
+    }
+
+    /**
+     * Processes an {@link Intent} for a schedule-wide operation on a worker thread, then stops the
+     * service if it was the last operation pending.
      *
      * @param intent The {@code Intent} to process
+     * @param startNanos When the operation was started, from {@link System#nanoTime()}
      */
-    private void processIntent(Intent intent) {
+    private void handleIntent(Intent intent, long startNanos) {
+        try {
+            processIntent(intent);
+        } finally {
+            if (intent.getIntExtra(Intents.EXTRA_OP, Intents.NO_VALUE) == OP_FIRE_DUE_REMINDERS) {
+                RemindStats.SERVICE_FIRE.recordSince(startNanos);
+            } else {
+                RemindStats.SERVICE_RESCHEDULE.recordSince(startNanos);
+            }
+            onOperationsDone(null, 1);
+        }
+    }
+
+    /**
+     * Commits a set of {@link Write}s in a single transaction, on a worker thread, then notifies
+     * listeners of the change, if any, and stops the service if they were the last operations
+     * pending.
+     *
+     * <p>The writes come from unrelated callers, and one that fails would roll back the others:
+     * then each is committed again on its own, so only the bad one fails, as it would alone.
+     *
+     * @param writes The writes, in the order they were started
+     */
+    private void applyWrites(List<Runnable> writes) {
+        try {
+            Intent[] intents = new Intent[writes.size()];
+            int count = 0;
+            ReminderDelta batch = new ReminderDelta(writes.size());
+            for (Runnable write : writes) {
+                Intent intent = ((Write) write).take();
+                if (intent != null) {
+                    addWrite(intent, batch);
+                    intents[count++] = intent;
+                }
+            }
+
+            if (count == 1) {
+                onWritesApplied(RemindData.applyWrites(this, batch));
+            } else if (count > 1) {
+                ReminderDelta changes;
+                try {
+                    changes = RemindData.applyWrites(this, batch);
+                } catch (RuntimeException e) {
+                    // Rolled back, nothing was written
+                    applyEachWrite(intents, count);
+                    return;
+                }
+                onWritesApplied(changes);
+            }
+        } finally {
+            for (Runnable write : writes) {
+                RemindStats.SERVICE_WRITE.recordSince(((Write) write).mStartNanos);
+            }
+            onOperationsDone(null, writes.size());
+        }
+    }
+
+    /**
+     * Deletes a set of reminders with a single {@code DELETE ... WHERE _id IN (...)}, on a worker
+     * thread, then notifies listeners of the change, if any, and stops the service if it was the
+     * last operation pending.
+     *
+     * @param ids The IDs of the reminders
+     * @param startNanos When the operation was started, from {@link System#nanoTime()}
+     */
+    private void deleteReminders(long[] ids, long startNanos) {
+        try {
+            if (RemindData.deleteReminders(this, ids) > 0) {
+                // Only the count is known: IDs already gone are reported too, and are no-ops
+                ReminderDelta changes = new ReminderDelta(ids.length);
+                changes.addDeleted(ids);
+                changes.setGeneration(RemindData.getLastWriteGeneration());
+                onWritesApplied(changes);
+            }
+        } finally {
+            RemindStats.SERVICE_WRITE.recordSince(startNanos);
+            onOperationsDone(null, 1);
+        }
+    }
+
+    /**
+     * Commits writes one by one, after committing them together failed. Every write that can be
+     * applied is, and listeners are notified of each; then the first failure, if any, is thrown.
+     *
+     * @param intents The {@code Intent}s of the writes, in order
+     * @param count The number of writes
+     */
+    private void applyEachWrite(Intent[] intents, int count) {
+        RuntimeException failure = null;
+        for (int i = 0; i < count; i++) {
+            ReminderDelta write = new ReminderDelta(1);
+            addWrite(intents[i], write);
+            ReminderDelta changes;
+            try {
+                changes = RemindData.applyWrites(this, write);
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+                continue;
+            }
+            onWritesApplied(changes);
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Notifies listeners of committed writes. {@link RemindData} already brought the schedule up
+     * to date with them.
+     *
+     * @param changes The change the writes made, as returned by
+     *     {@link RemindData#applyWrites(Context, ReminderDelta)}
+     */
+    private void onWritesApplied(ReminderDelta changes) {
+        if (changes.size() > 0) {
+            onOperationsDone(changes, 0);
+        }
+    }
+
+    /**
+     * Records that operations finished, on the UI thread: notifies listeners of their change, and
+     * stops the service if they were the last ones pending.
+     *
+     * @param delta The change made by the operations, {@code null} or empty if none
+     * @param count The number of operations
+     */
+    private void onOperationsDone(final ReminderDelta delta, final int count) {
+        sHandler.post(new Runnable() {
+            public void run() {
+                if (delta != null && delta.size() > 0) {
+                    onIntentProcessed(delta);
+                }
+                mPendingCount -= count;
+                if (mPendingCount == 0) {
+                    stopSelf(mLastStartId);
+                }
+            }
+        });
+    }
+
+    /**
+     * Notifies to listeners that operations finished and changed the reminders. This method must
+     * be called on the UI thread. Listeners registered during the dispatch are notified from the
+     * next one on.
+     *
+     * @param delta The change made by the operations, as returned by
+     *     {@link RemindData#applyWrites(Context, ReminderDelta)}
+     */
+    private void onIntentProcessed(ReminderDelta delta) {
+        for (RemindServiceListener listener : sListeners) {
+            listener.onRemindersChanged(delta);
+        }
+    }
+
+    /**
+     * Adds the write a create, update or delete {@link Intent} makes to a batch.
+     *
+     * @param intent The {@code Intent}
+     * @param batch The batch
+     */
+    private static void addWrite(Intent intent, ReminderDelta batch) {
         switch (intent.getIntExtra(Intents.EXTRA_OP, Intents.NO_VALUE)) {
             case OP_CREATE_REMINDER: {
                 final String title = intent.getStringExtra(Intents.EXTRA_TITLE);
                 final long time = intent.getLongExtra(Intents.EXTRA_TIME, Intents.NO_VALUE);
-                long id = RemindData.createReminder(this, title, time);
-                intent.putExtra(Intents.EXTRA_ID, id);
+                final int recurrence =
+                    intent.getIntExtra(Intents.EXTRA_RECURRENCE, Recurrence.NONE);
+                batch.addInserted(Intents.NO_VALUE, title, time, recurrence);
                 break;
             }
 
@@ -199,18 +555,81 @@ public class RemindService extends IntentService {
                 final long id = intent.getLongExtra(Intents.EXTRA_ID, Intents.NO_VALUE);
                 final String title = intent.getStringExtra(Intents.EXTRA_TITLE);
                 final long time = intent.getLongExtra(Intents.EXTRA_TIME, Intents.NO_VALUE);
-                RemindData.updateReminder(this, id, title, time);
+                final int recurrence =
+                    intent.getIntExtra(Intents.EXTRA_RECURRENCE, Recurrence.NONE);
+                batch.addUpdated(id, title, time, recurrence);
                 break;
             }
 
-            case OP_DELETE_REMINDER: {
-                final long id = intent.getLongExtra(Intents.EXTRA_ID, Intents.NO_VALUE);
-                RemindData.deleteReminder(this, id);
+            case OP_DELETE_REMINDERS:
+                batch.addDeleted(intent.getLongArrayExtra(Intents.EXTRA_IDS));
+                break;
+
+            default:
+                throw new IllegalArgumentException("Not a write OP code!");
+        }
+    }
+
+    /**
+     * Processes an {@link Intent} for a schedule-wide operation. Does the heavy-lifting required
+     * for the given operation.
+     *
+     * <p>This blocks newer {@code Intent}s striped on the same worker from being processed so make
+     * sure it does not run too long for any single {@code Intent}.
+     *
+     * @param intent The {@code Intent} to process
+     */
+    private void processIntent(Intent intent) {
+        switch (intent.getIntExtra(Intents.EXTRA_OP, Intents.NO_VALUE)) {
+            case OP_FIRE_DUE_REMINDERS: {
+                try {
+                    notifyReminders(ReminderScheduler.get(this).pollDue(
+                            System.currentTimeMillis()));
+                } finally {
+                    AlarmReceiver.releaseWakeLock();
+                }
                 break;
             }
 
+            case OP_RESCHEDULE_REMINDERS:
+                ReminderScheduler.get(this).rehydrate();
+                break;
+
             default:
                 throw new IllegalArgumentException("No OP code found!");
         }
     }
+
+    /**
+     * Posts a notification for each of the given reminders, replacing any previous notification
+     * for the same reminder.
+     *
+     * @param due The reminders, with the time of the occurrence that came due
+     */
+    private void notifyReminders(ReminderScheduler.Due due) {
+        NotificationManager notificationManager =
+            (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+        Reminder reminder = new Reminder();
+        for (int i = 0; i < due.ids.length; i++) {
+            final long id = due.ids[i];
+            final long time = due.times[i];
+            if (!RemindData.getReminder(this, id, reminder)) {
+                // Deleted since it was scheduled
+                continue;
+            }
+
+            PendingIntent contentIntent = PendingIntent.getActivity(this, (int) id,
+                    Intents.newEditReminderIntent(this, id), PendingIntent.FLAG_UPDATE_CURRENT);
+            Notification notification = new NotificationCompat.Builder(this)
+                    .setSmallIcon(R.drawable.ic_launcher)
+                    .setContentTitle(reminder.title)
+                    .setContentText(TimeUtil.toText(time))
+                    .setWhen(time)
+                    .setContentIntent(contentIntent)
+                    .setDefaults(Notification.DEFAULT_ALL)
+                    .setAutoCancel(true)
+                    .getNotification();
+            notificationManager.notify((int) id, notification);
+        }
+    }
 }
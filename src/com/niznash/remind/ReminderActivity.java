@@ -1,5 +1,7 @@
 package com.niznash.remind;
 
+import java.util.Calendar;
+
 import android.app.ActionBar;
 import android.app.TimePickerDialog;
 import android.content.Context;
@@ -17,13 +19,17 @@ import android.view.MenuItem;
 import android.view.View;
 import android.view.inputmethod.InputMethodManager;
 import android.widget.EditText;
+import android.widget.Spinner;
 import android.widget.TextView;
 import android.widget.TimePicker;
 import android.widget.Toast;
 
 import com.niznash.remind.ConfirmDialogFragment.OnConfirmDialogResultListener;
 import com.niznash.remind.content.Intents;
+import com.niznash.remind.content.Reminder;
 import com.niznash.remind.content.ReminderLoader;
+import com.niznash.remind.content.ReminderRowMapper;
+import com.niznash.remind.util.Recurrence;
 import com.niznash.remind.util.TimeUtil;
 
 /**
@@ -36,14 +42,29 @@ public class ReminderActivity extends FragmentActivity implements LoaderCallback
 
     private static final int DIALOG_ID_CONFIRM_DELETE = 0;
 
+    // Positions in the repeat spinner, as defined by the "repeat_options" array
+    private static final int REPEAT_NONE = 0;
+    private static final int REPEAT_HOURLY = 1;
+    private static final int REPEAT_DAILY = 2;
+    private static final int REPEAT_WEEKLY = 3;
+    private static final int REPEAT_WEEKDAYS = 4;
+
+    // Saved state: whether the reminder was loaded and shown already
+    private static final String STATE_LOADED = "loaded";
+
     // Some current reminder data
     private long mReminderId;
     private long mTime;
+    private int mRecurrence;
+
+    // Whether the reminder was shown already; later loads would overwrite the edits in progress
+    private boolean mLoaded;
 
     
     // Views
     private EditText mTitleEditText;
     private TextView mTimeTextView;
+    private Spinner mRepeatSpinner;
     private TextView mPositiveButton;
 
     @Override
@@ -54,6 +75,7 @@ public class ReminderActivity extends FragmentActivity implements LoaderCallback
         // Get handles to the relevant views
         mTitleEditText = (EditText) findViewById(R.id.edit_title);
         mTimeTextView = (TextView) findViewById(R.id.time);
+        mRepeatSpinner = (Spinner) findViewById(R.id.repeat);
         mPositiveButton = (TextView) findViewById(android.R.id.button1);
 
         // Add a listener to text editing of the title so we can enable/disable the positive button
@@ -76,6 +98,8 @@ public class ReminderActivity extends FragmentActivity implements LoaderCallback
             mReminderId = savedInstanceState.getLong(Intents.EXTRA_ID);
             String title = savedInstanceState.getString(Intents.EXTRA_TITLE);
             mTime = savedInstanceState.getLong(Intents.EXTRA_TIME);
+            mRecurrence = savedInstanceState.getInt(Intents.EXTRA_RECURRENCE);
+            mLoaded = savedInstanceState.getBoolean(STATE_LOADED);
             mTitleEditText.setText(title);
             mTimeTextView.setText(TimeUtil.toText(mTime));
         } else {
@@ -86,6 +110,7 @@ public class ReminderActivity extends FragmentActivity implements LoaderCallback
              */
             mReminderId = getIntent().getLongExtra(Intents.EXTRA_ID, Intents.NO_VALUE);
             mTime = System.currentTimeMillis() + 1000 * 60 * 60;
+            mRecurrence = Recurrence.NONE;
             mTitleEditText.setText(null);
             mTimeTextView.setText(TimeUtil.toText(mTime));
         }
@@ -140,6 +165,8 @@ public class ReminderActivity extends FragmentActivity implements LoaderCallback
         // Save reminder data
         outState.putLong(Intents.EXTRA_ID, mReminderId);
         outState.putLong(Intents.EXTRA_TIME, mTime);
+        outState.putInt(Intents.EXTRA_RECURRENCE, mRecurrence);
+        outState.putBoolean(STATE_LOADED, mLoaded);
     }
 
     @Override
@@ -202,14 +229,23 @@ public class ReminderActivity extends FragmentActivity implements LoaderCallback
         // Get the current title from the UI
         final String title = mTitleEditText.getText().toString();
 
+        /*
+         * Only replace the rule if another repeat option was picked, so rules the spinner can't
+         * show exactly (say, every 2 days) survive an edit of the title or time
+         */
+        final int position = mRepeatSpinner.getSelectedItemPosition();
+        if (position != toRepeatPosition(mRecurrence)) {
+            mRecurrence = toRecurrence(position);
+        }
+
         // Check if we need to update an existing reminder or create a brand-new one
         if (mReminderId != Intents.NO_VALUE) {
             // update the reminder
-            RemindService.updateReminder(this, mReminderId, title, mTime);
+            RemindService.updateReminder(this, mReminderId, title, mTime, mRecurrence);
             Toast.makeText(this, R.string.message_reminder_updated, Toast.LENGTH_SHORT).show();
         } else {
             // create a new reminder
-            RemindService.createReminder(this, title, mTime);
+            RemindService.createReminder(this, title, mTime, mRecurrence);
             Toast.makeText(this, R.string.message_reminder_created, Toast.LENGTH_SHORT).show();
         }
 
@@ -222,22 +258,25 @@ public class ReminderActivity extends FragmentActivity implements LoaderCallback
     }
 
     public void onLoadFinished(Loader<Cursor> loader, Cursor cursor) {
+        if (mLoaded) {
+            // The reminder is delivered again on every resume, and the user may be editing it
+            return;
+        }
+
         if (cursor != null && cursor.getCount() > 0) {
             // We loaded some new data in this cursor
 
             // Move to the first (and hopefully, the only) row in the Cursor
             cursor.moveToFirst();
 
-            /*
-             * Get the title and time from the cursor and update the UI accordingly.
-             *
-             * We can have magic numbers here (e.g. 1, 2) because we're making the grand assumption
-             * that everything is using the ReminderColumns.PROJECTION projection for DB queries
-             */
-            String title = cursor.getString(1);
-            mTime = cursor.getLong(2);
-            mTitleEditText.setText(title);
+            // Get the title, time and recurrence from the cursor and update the UI accordingly
+            Reminder reminder = new ReminderRowMapper(cursor).fill(new Reminder());
+            mTime = reminder.time;
+            mRecurrence = reminder.recurrence;
+            mTitleEditText.setText(reminder.title);
             mTimeTextView.setText(TimeUtil.toText(mTime));
+            mRepeatSpinner.setSelection(toRepeatPosition(mRecurrence));
+            mLoaded = true;
         } else {
             // TODO(niznash): display error message
         }
@@ -258,12 +297,55 @@ public class ReminderActivity extends FragmentActivity implements LoaderCallback
     public void onConfirmDialogNegative(int dialogId) {
     }
 
+    /**
+     * Finds the repeat option closest to a rule.
+     *
+     * @param recurrence A {@link Recurrence} rule
+     * @return A position in the repeat spinner
+     */
+    private static int toRepeatPosition(int recurrence) {
+        switch (Recurrence.getKind(recurrence)) {
+            case Recurrence.KIND_HOURLY:
+                return REPEAT_HOURLY;
+            case Recurrence.KIND_DAILY:
+                return REPEAT_DAILY;
+            case Recurrence.KIND_WEEKLY:
+                return recurrence == Recurrence.onDaysOfWeek(Calendar.MONDAY, Calendar.TUESDAY,
+                        Calendar.WEDNESDAY, Calendar.THURSDAY, Calendar.FRIDAY)
+                        ? REPEAT_WEEKDAYS : REPEAT_WEEKLY;
+            default:
+                return REPEAT_NONE;
+        }
+    }
+
+    /**
+     * Builds the rule for a repeat option, given the current time of the reminder.
+     *
+     * @param position A position in the repeat spinner
+     * @return A {@link Recurrence} rule
+     */
+    private int toRecurrence(int position) {
+        switch (position) {
+            case REPEAT_HOURLY:
+                return Recurrence.everyHours(1);
+            case REPEAT_DAILY:
+                return Recurrence.everyDays(1);
+            case REPEAT_WEEKLY:
+                return Recurrence.onDaysOfWeek(TimeUtil.getDayOfWeek(mTime));
+            case REPEAT_WEEKDAYS:
+                return Recurrence.onDaysOfWeek(Calendar.MONDAY, Calendar.TUESDAY,
+                        Calendar.WEDNESDAY, Calendar.THURSDAY, Calendar.FRIDAY);
+            default:
+                return Recurrence.NONE;
+        }
+    }
+
     /**
      * Asks the {@link RemindService} to delete the current reminder, shows a Toast, and finishes
      * the Activity
      */
     private void deleteReminder() {
-        RemindService.deleteReminders(this, new Long[] { Long.valueOf(mReminderId) });
+        RemindService.deleteReminders(this, mReminderId);
         Toast.makeText(this, R.string.message_reminder_deleted, Toast.LENGTH_SHORT).show();
         finish();
     }
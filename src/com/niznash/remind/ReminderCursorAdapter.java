@@ -9,11 +9,20 @@ import android.view.ViewGroup;
 import android.widget.TextView;
 
 import com.niznash.remind.content.RemindProvider.ReminderColumns;
+import com.niznash.remind.content.Reminder;
+import com.niznash.remind.content.ReminderPagedCursor;
+import com.niznash.remind.content.ReminderDelta;
+import com.niznash.remind.content.ReminderRowMapper;
+import com.niznash.remind.util.Recurrence;
 import com.niznash.remind.util.TimeUtil;
 
 /**
- * Adapter between a reminder {@link Cursor} and the UI. Assumes the use of
- * {@link ReminderColumns#PROJECTION}.
+ * Adapter between a reminder {@link Cursor} and the UI. The cursor must have the columns of
+ * {@link ReminderColumns#PROJECTION}, in any order.
+ *
+ * <p>A recurring reminder shows its next occurrence, but stays where the cursor has it: the list is
+ * paged in {@link ReminderColumns#DEFAULT_SORT_ORDER}, by the time of the first occurrence, which
+ * the next one can be anywhere after.
  *
  * @author niznash@gmail.com (Alejandro Nijamkin)
  */
@@ -32,6 +41,12 @@ public class ReminderCursorAdapter extends CursorAdapter {
         }
     }
 
+    // Reads rows of the current cursor, made again when the cursor changes
+    private ReminderRowMapper mMapper;
+
+    // Holds the row being bound, reused for every row
+    private final Reminder mReminder = new Reminder();
+
     /**
      * Constructor.
      *
@@ -44,8 +59,71 @@ public class ReminderCursorAdapter extends CursorAdapter {
     @Override
     public void bindView(View view, Context context, Cursor cursor) {
         final Holder holder = (Holder) view.getTag();
-        holder.title.setText(cursor.getString(1));
-        holder.time.setText(TimeUtil.toText(cursor.getLong(2)));
+        mMapper = ReminderRowMapper.forCursor(mMapper, cursor);
+        if (!mMapper.isLoaded()) {
+            // The row is still being fetched, leave it blank until it arrives
+            holder.title.setText(null);
+            holder.time.setText(null);
+            return;
+        }
+
+        final Reminder reminder = mMapper.fill(mReminder);
+        holder.title.setText(reminder.title);
+
+        // A recurring reminder shows its next occurrence, computed as it is shown
+        holder.time.setText(TimeUtil.toText(Recurrence.isRecurring(reminder.recurrence)
+                ? TimeUtil.nextOccurrence(reminder.time, reminder.recurrence,
+                        System.currentTimeMillis() - 1)
+                : reminder.time));
+    }
+
+    /**
+     * Patches the current reminders with a change, without a new query. Only possible when the
+     * current cursor is a {@link ReminderPagedCursor}.
+     *
+     * @param delta The change
+     * @return One of the results of {@link ReminderPagedCursor#apply(ReminderDelta)}
+     */
+    public int applyDelta(ReminderDelta delta) {
+        Cursor cursor = getCursor();
+        if (!(cursor instanceof ReminderPagedCursor)) {
+            return ReminderPagedCursor.NOT_APPLIED;
+        }
+
+        return ((ReminderPagedCursor) cursor).apply(delta);
+    }
+
+    /**
+     * @return The positions of the rows changed in place by the last call to
+     *     {@link #applyDelta(ReminderDelta)}
+     */
+    public int[] getPatchedPositions() {
+        ReminderPagedCursor cursor = (ReminderPagedCursor) getCursor();
+        int[] positions = new int[cursor.getPatchedCount()];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = cursor.getPatchedPosition(i);
+        }
+        return positions;
+    }
+
+    /**
+     * Finds the position of a reminder.
+     *
+     * @param id The ID of the reminder
+     * @return Its position, or {@code -1} if not found among the rows in memory
+     */
+    public int getPosition(long id) {
+        Cursor cursor = getCursor();
+        if (cursor instanceof ReminderPagedCursor) {
+            return ((ReminderPagedCursor) cursor).indexOf(id);
+        }
+
+        for (int i = 0; i < getCount(); i++) {
+            if (getItemId(i) == id) {
+                return i;
+            }
+        }
+        return -1;
     }
 
     @Override
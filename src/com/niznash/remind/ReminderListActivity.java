@@ -8,10 +8,12 @@ import android.os.Bundle;
 import android.support.v4.app.FragmentActivity;
 import android.support.v4.app.FragmentManager;
 import android.support.v4.app.ListFragment;
-import android.support.v4.app.LoaderManager;
 import android.support.v4.app.LoaderManager.LoaderCallbacks;
 import android.support.v4.content.Loader;
+import android.support.v4.view.MenuItemCompat;
 import android.support.v4.widget.CursorAdapter;
+import android.support.v4.widget.SearchViewCompat;
+import android.support.v4.widget.SearchViewCompat.OnQueryTextListenerCompat;
 import android.view.ActionMode;
 import android.view.ContextMenu;
 import android.view.ContextMenu.ContextMenuInfo;
@@ -28,6 +30,8 @@ import android.widget.Toast;
 import com.niznash.remind.ConfirmDialogFragment.OnConfirmDialogResultListener;
 import com.niznash.remind.content.Intents;
 import com.niznash.remind.content.RemindServiceListener;
+import com.niznash.remind.content.ReminderPagedCursor;
+import com.niznash.remind.content.ReminderDelta;
 import com.niznash.remind.content.ReminderLoader;
 
 /**
@@ -41,24 +45,14 @@ public class ReminderListActivity extends FragmentActivity implements LoaderCall
     private static final int DIALOG_ID_CONFIRM_DELETE = 0;
 
     /*
-     * Service listener that reloads the list of reminders every time a reminder is created,
-     * updated, or deleted.
+     * Service listener that patches the list of reminders in place every time the service creates,
+     * updates or deletes reminders, instead of waiting for the loader to query them all again.
      */
     private RemindServiceListener mRemindServiceListener = new RemindServiceListener() {
 
         @Override
-        public void onReminderCreated(long id) {
-            reload();
-        }
-
-        @Override
-        public void onReminderUpdated(long id) {
-            reload();
-        }
-
-        @Override
-        public void onReminderDeleted(long id) {
-            reload();
+        public void onRemindersChanged(ReminderDelta delta) {
+            applyDelta(delta);
         }
     };
 
@@ -69,7 +63,7 @@ public class ReminderListActivity extends FragmentActivity implements LoaderCall
 
     /**
      * Collection of reminder IDs that are currently selected, used to pass multiple items to the
-     * {@link RemindService#deleteReminders(android.content.Context, Long...)} method
+     * {@link RemindService#deleteReminders(android.content.Context, long...)} method
      */
     private final HashSet<Long> mSelectedIds = new HashSet<Long>();
 
@@ -87,8 +81,11 @@ public class ReminderListActivity extends FragmentActivity implements LoaderCall
                 .commit();
         }
 
-        // Load the data for the first time
-        reload();
+        /*
+         * Load the data. The loader reloads by itself, once per burst, whenever the reminder data
+         * changes, so there is no need to restart it
+         */
+        getSupportLoaderManager().initLoader(0, null, this);
     }
 
     @Override
@@ -96,7 +93,9 @@ public class ReminderListActivity extends FragmentActivity implements LoaderCall
         super.onResume();
 
         // Setup the ListFragment
-        mListFragment.setListAdapter(new ReminderCursorAdapter(this));
+        if (mListFragment.getListAdapter() == null) {
+            mListFragment.setListAdapter(new ReminderCursorAdapter(this));
+        }
         mListFragment.setEmptyText(getString(R.string.no_reminders));
 
         // Add an item-click listener to the ListView so we can open a reminder once clicked
@@ -125,7 +124,7 @@ public class ReminderListActivity extends FragmentActivity implements LoaderCall
                          * finish the CAB mode
                          */
                         RemindService.deleteReminders(ReminderListActivity.this,
-                                mSelectedIds.toArray(new Long[0]));
+                                getSelectedIds());
                         Toast.makeText(ReminderListActivity.this, R.string.message_reminder_deleted,
                                 Toast.LENGTH_SHORT).show();
                         mMode.finish();
@@ -194,9 +193,6 @@ public class ReminderListActivity extends FragmentActivity implements LoaderCall
          * when service operations finish
          */
         RemindService.registerListener(mRemindServiceListener);
-
-        // Reload the data
-        reload();
     }
 
     @Override
@@ -228,8 +224,7 @@ public class ReminderListActivity extends FragmentActivity implements LoaderCall
                     new OnConfirmDialogResultListener() {
                 public void onConfirmDialogPositive(int dialogId) {
                     // Confirmed, delete the reminder, show a toast, clear the selection
-                    RemindService.deleteReminders(ReminderListActivity.this,
-                            mSelectedIds.toArray(new Long[0]));
+                    RemindService.deleteReminders(ReminderListActivity.this, getSelectedIds());
                     Toast.makeText(ReminderListActivity.this, R.string.message_reminder_deleted,
                             Toast.LENGTH_SHORT).show();
                     mSelectedIds.clear();
@@ -249,6 +244,26 @@ public class ReminderListActivity extends FragmentActivity implements LoaderCall
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         new MenuInflater(this).inflate(R.menu.reminder_list, menu);
+
+        /*
+         * Search as the user types, on HC and up where there is a SearchView to put in the
+         * ActionBar. Every keystroke reloads the list with the new query: the loader drops results
+         * a newer keystroke made stale, and refines the last results when it can
+         */
+        MenuItem searchItem = menu.findItem(R.id.menu_item_search);
+        View searchView = SearchViewCompat.newSearchView(this);
+        if (searchView != null) {
+            SearchViewCompat.setOnQueryTextListener(searchView, new OnQueryTextListenerCompat() {
+                @Override
+                public boolean onQueryTextChange(String newText) {
+                    setSearchQuery(newText);
+                    return true;
+                }
+            });
+            MenuItemCompat.setActionView(searchItem, searchView);
+        } else {
+            searchItem.setVisible(false);
+        }
         return true;
     }
 
@@ -283,13 +298,72 @@ public class ReminderListActivity extends FragmentActivity implements LoaderCall
     }
 
     /**
-     * If no loader was created, creates one.
+     * Shows the reminders whose title matches a search query, or all of them.
      *
-     * <p>(Re)starts the current loader.
+     * @param query The search text, as typed; empty to show all reminders
      */
-    private void reload() {
-        final LoaderManager lm = getSupportLoaderManager();
-        lm.restartLoader(0, null, this);
+    private void setSearchQuery(String query) {
+        Loader<Cursor> loader = getSupportLoaderManager().getLoader(0);
+        if (loader != null) {
+            ((ReminderLoader) loader).setQuery(query);
+        }
+    }
+
+    /**
+     * Patches the list with a change made by the service. Rows changed in place are re-bound one by
+     * one; if rows moved, the whole list is refreshed but stays scrolled to the same reminder. If the
+     * change cannot be applied, the loader will reload the list as usual.
+     *
+     * @param delta The change
+     */
+    private void applyDelta(ReminderDelta delta) {
+        ReminderCursorAdapter adapter = (ReminderCursorAdapter) mListFragment.getListAdapter();
+        if (adapter == null) {
+            return;
+        }
+
+        // Remember which reminder is at the top, and where, so we can keep it there
+        ListView listView = mListFragment.getListView();
+        final int first = listView.getFirstVisiblePosition();
+        final View firstView = listView.getChildAt(0);
+        final long firstId = firstView != null ? adapter.getItemId(first) : Intents.NO_VALUE;
+        final int firstTop = firstView != null ? firstView.getTop() : 0;
+
+        switch (adapter.applyDelta(delta)) {
+            case ReminderPagedCursor.APPLIED_IN_PLACE:
+                // Nothing moved, only re-bind the visible rows that changed
+                for (int position : adapter.getPatchedPositions()) {
+                    View view = listView.getChildAt(position - first);
+                    if (view != null) {
+                        adapter.getView(position, view, listView);
+                    }
+                }
+                break;
+
+            case ReminderPagedCursor.APPLIED_STRUCTURAL:
+                // The list was refreshed, scroll back to the reminder that was at the top
+                if (firstId != Intents.NO_VALUE) {
+                    final int position = adapter.getPosition(firstId);
+                    if (position >= 0) {
+                        listView.setSelectionFromTop(position, firstTop);
+                    }
+                }
+                break;
+        }
+    }
+
+    /**
+     * Copies the currently selected reminder IDs into a primitive array.
+     *
+     * @return The IDs
+     */
+    private long[] getSelectedIds() {
+        long[] ids = new long[mSelectedIds.size()];
+        int i = 0;
+        for (Long id : mSelectedIds) {
+            ids[i++] = id.longValue();
+        }
+        return ids;
     }
 
     /**
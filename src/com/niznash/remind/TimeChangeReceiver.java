@@ -0,0 +1,31 @@
+package com.niznash.remind;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+import com.niznash.remind.util.TimeUtil;
+
+/**
+ * Drops the cached time formatting state when the time zone or the locale changes, so times are
+ * never displayed for the old ones.
+ *
+ * <p>When the time zone or the clock changes, also has {@link RemindService} rebuild the schedule:
+ * the next occurrences of daily and weekly reminders are computed in local time but held as
+ * absolute times, which a new time zone moves, and the alarm may now be set for the wrong one.
+ *
+ * @author niznash@gmail.com (Alejandro Nijamkin)
+ */
+public class TimeChangeReceiver extends BroadcastReceiver {
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        TimeUtil.invalidate();
+
+        final String action = intent.getAction();
+        if (Intent.ACTION_TIMEZONE_CHANGED.equals(action)
+                || Intent.ACTION_TIME_CHANGED.equals(action)) {
+            RemindService.rescheduleReminders(context);
+        }
+    }
+}
@@ -22,6 +22,8 @@ public class Intents {
     public static final String EXTRA_TITLE = "title";
     public static final String EXTRA_TIME = "time";
     public static final String EXTRA_ID = "id";
+    public static final String EXTRA_IDS = "ids";
+    public static final String EXTRA_RECURRENCE = "recurrence";
 
     /**
      * Builds an {@link Intent} that, when fired, starts {@link ReminderActivity} in the "create
@@ -0,0 +1,300 @@
+package com.niznash.remind.content;
+
+import java.util.HashMap;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.niznash.remind.util.Recurrence;
+
+/**
+ * {@link ReminderStore} that keeps all reminders in memory, in a set sorted by key plus indexes
+ * by ID and of the recurring reminders. Nothing is persisted; meant for tests, benchmarks and hot
+ * read paths.
+ *
+ * <p>Does not depend on Android.
+ *
+ * @author niznash@gmail.com (Alejandro Nijamkin)
+ */
+public class MemoryReminderStore implements ReminderStore {
+
+    // Same as Intents.NO_VALUE
+    private static final long NO_WRITE = -1;
+
+    /**
+     * A stored reminder. Ordered by key.
+     */
+    private static class Row implements Comparable<Row> {
+        public long id;
+        public String title;
+        public long time;
+        public int recurrence;
+
+        public Row(long id, String title, long time, int recurrence) {
+            this.id = id;
+            this.title = title;
+            this.time = time;
+            this.recurrence = recurrence;
+        }
+
+        public int compareTo(Row other) {
+            if (time != other.time) {
+                return time < other.time ? -1 : 1;
+            }
+            return id < other.id ? -1 : (id == other.id ? 0 : 1);
+        }
+    }
+
+    private final TreeSet<Row> mByKey = new TreeSet<Row>();
+    private final HashMap<Long, Row> mById = new HashMap<Long, Row>();
+    private final HashMap<Long, Row> mRecurring = new HashMap<Long, Row>();
+    private long mNextId = 1;
+
+    // Bounds of the range being queried, only used while locked
+    private final Row mFrom = new Row(0, null, 0, Recurrence.NONE);
+    private final Row mThrough = new Row(0, null, 0, Recurrence.NONE);
+
+    private final AtomicLong mGeneration = new AtomicLong();
+
+    // Generation produced by the last write made on each thread
+    private final ThreadLocal<Long> mLastWriteGeneration = new ThreadLocal<Long>();
+
+    public synchronized long create(String title, long time, int recurrence) {
+        long id = insert(title, time, recurrence);
+        onDataChanged();
+        return id;
+    }
+
+    public synchronized int create(String[] titles, long[] times) {
+        if (titles.length != times.length) {
+            throw new IllegalArgumentException("Need exactly one time per title!");
+        }
+        if (titles.length == 0) {
+            return 0;
+        }
+
+        for (int i = 0; i < titles.length; i++) {
+            insert(titles[i], times[i], Recurrence.NONE);
+        }
+        onDataChanged();
+        return titles.length;
+    }
+
+    public synchronized boolean get(long id, Reminder out) {
+        Row row = mById.get(Long.valueOf(id));
+        if (row == null) {
+            return false;
+        }
+
+        out.set(row.id, row.title, row.time, row.recurrence);
+        return true;
+    }
+
+    public synchronized boolean update(long id, String title, long time, int recurrence) {
+        if (!modify(id, title, time, recurrence)) {
+            return false;
+        }
+        onDataChanged();
+        return true;
+    }
+
+    public synchronized boolean delete(long id) {
+        if (!remove(id)) {
+            return false;
+        }
+        onDataChanged();
+        return true;
+    }
+
+    public synchronized int delete(long[] ids) {
+        int count = 0;
+        for (long id : ids) {
+            if (remove(id)) {
+                count++;
+            }
+        }
+        if (count > 0) {
+            onDataChanged();
+        }
+        return count;
+    }
+
+    public synchronized ReminderDelta apply(ReminderDelta writes) {
+        final int size = writes.size();
+        ReminderDelta changes = new ReminderDelta(size);
+        for (int i = 0; i < size; i++) {
+            final long id = writes.getId(i);
+            final String title = writes.getTitle(i);
+            final long time = writes.getTime(i);
+            final int recurrence = writes.getRecurrence(i);
+            switch (writes.getKind(i)) {
+                case ReminderDelta.INSERTED:
+                    changes.addInserted(insert(title, time, recurrence), title, time, recurrence);
+                    break;
+                case ReminderDelta.UPDATED:
+                    if (modify(id, title, time, recurrence)) {
+                        changes.addUpdated(id, title, time, recurrence);
+                    }
+                    break;
+                default:
+                    if (remove(id)) {
+                        changes.addDeleted(id);
+                    }
+                    break;
+            }
+        }
+        if (changes.size() > 0) {
+            onDataChanged();
+        }
+        return changes;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The visitor is called with the store locked, so it must not call back into it.
+     */
+    public synchronized int query(long afterTime, long afterId, long throughTime, long throughId,
+            int limit, Visitor visitor) {
+        // Only the bounds of SortedSet, inclusive from and exclusive to, are on every API level
+        SortedSet<Row> range = mByKey;
+        if (afterTime != Long.MIN_VALUE) {
+            if (!setToNextKey(mFrom, afterTime, afterId)) {
+                return 0;
+            }
+            range = range.tailSet(mFrom);
+        }
+        if (throughTime != Long.MAX_VALUE && setToNextKey(mThrough, throughTime, throughId)) {
+            if (afterTime != Long.MIN_VALUE && mThrough.compareTo(mFrom) <= 0) {
+                // Empty range, which subsets reject
+                return 0;
+            }
+            range = range.headSet(mThrough);
+        }
+
+        int count = 0;
+        for (Row row : range) {
+            if (count == limit) {
+                break;
+            }
+            visitor.visit(row.id, row.title, row.time, row.recurrence);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Sets a key to the one right after another.
+     *
+     * @return Whether there is a key after it
+     */
+    private static boolean setToNextKey(Row key, long time, long id) {
+        if (id != Long.MAX_VALUE) {
+            key.time = time;
+            key.id = id + 1;
+        } else if (time != Long.MAX_VALUE) {
+            key.time = time + 1;
+            key.id = Long.MIN_VALUE;
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The visitor is called with the store locked, so it must not call back into it.
+     */
+    public synchronized int queryRecurring(Visitor visitor) {
+        for (Row row : mRecurring.values()) {
+            visitor.visit(row.id, row.title, row.time, row.recurrence);
+        }
+        return mRecurring.size();
+    }
+
+    public long getGeneration() {
+        return mGeneration.get();
+    }
+
+    public long getLastWriteGeneration() {
+        Long generation = mLastWriteGeneration.get();
+        return generation != null ? generation.longValue() : NO_WRITE;
+    }
+
+    /**
+     * @return The number of reminders in the store
+     */
+    public synchronized int size() {
+        return mById.size();
+    }
+
+    /**
+     * Inserts a reminder. Must be called with the store locked.
+     *
+     * @return The ID of the new reminder
+     */
+    private long insert(String title, long time, int recurrence) {
+        Row row = new Row(mNextId++, title, time, recurrence);
+        mById.put(Long.valueOf(row.id), row);
+        mByKey.add(row);
+        indexRecurrence(row);
+        return row.id;
+    }
+
+    /**
+     * Updates a reminder, if it exists. Must be called with the store locked.
+     *
+     * @return Whether it existed
+     */
+    private boolean modify(long id, String title, long time, int recurrence) {
+        Row row = mById.get(Long.valueOf(id));
+        if (row == null) {
+            return false;
+        }
+
+        // The key may change, so the row has to be taken out of the sorted set first
+        mByKey.remove(row);
+        row.title = title;
+        row.time = time;
+        row.recurrence = recurrence;
+        mByKey.add(row);
+        indexRecurrence(row);
+        return true;
+    }
+
+    /**
+     * Deletes a reminder, if it exists. Must be called with the store locked.
+     *
+     * @return Whether it existed
+     */
+    private boolean remove(long id) {
+        Row row = mById.remove(Long.valueOf(id));
+        if (row == null) {
+            return false;
+        }
+        mByKey.remove(row);
+        mRecurring.remove(Long.valueOf(id));
+        return true;
+    }
+
+    /**
+     * Keeps the index of recurring reminders up to date with a row. Must be called with the store
+     * locked.
+     */
+    private void indexRecurrence(Row row) {
+        if (Recurrence.isRecurring(row.recurrence)) {
+            mRecurring.put(Long.valueOf(row.id), row);
+        } else {
+            mRecurring.remove(Long.valueOf(row.id));
+        }
+    }
+
+    /**
+     * Moves the generation forward, after a write that changed something. Must be called with the
+     * store locked, so generations follow the order writes are applied in.
+     */
+    private void onDataChanged() {
+        mLastWriteGeneration.set(Long.valueOf(mGeneration.incrementAndGet()));
+    }
+}
@@ -1,20 +1,152 @@
 package com.niznash.remind.content;
 
+import android.content.ComponentCallbacks2;
 import android.content.ContentUris;
-import android.content.ContentValues;
 import android.content.Context;
+import android.database.ContentObserver;
 import android.database.Cursor;
+import android.database.MatrixCursor;
 import android.os.Looper;
 
 import com.niznash.remind.content.RemindProvider.ReminderColumns;
+import com.niznash.remind.schedule.ReminderScheduler;
+import com.niznash.remind.util.Recurrence;
 
 /**
- * Helps access reminder data.
+ * Helps access reminder data, through a {@link ReminderStore} fronted by a write-through cache.
+ * Every write made through this class hands the change it made over to the
+ * {@link ReminderScheduler}.
  *
  * @author niznash@gmail.com (Alejandro Nijamkin)
  */
 public class RemindData {
 
+    /**
+     * Number of reminders kept in the cache
+     */
+    public static final int CACHE_CAPACITY = 512;
+
+    /**
+     * Hands the one-shot reminders of pages in key order to {@link UpcomingReminders}, and keeps
+     * the key the next page starts after.
+     */
+    private static class OneShotPager implements ReminderStore.Visitor {
+        private final UpcomingReminders mUpcoming;
+
+        public long lastTime;
+        public long lastId;
+        public int oneShots;
+
+        public OneShotPager(UpcomingReminders upcoming, long after) {
+            mUpcoming = upcoming;
+            if (after == Long.MIN_VALUE) {
+                lastTime = Long.MIN_VALUE;
+            } else {
+                // Every key at time "after" sorts after this one
+                lastTime = after - 1;
+                lastId = Long.MAX_VALUE;
+            }
+        }
+
+        public void visit(long id, String title, long time, int recurrence) {
+            lastTime = time;
+            lastId = id;
+            if (!Recurrence.isRecurring(recurrence)) {
+                mUpcoming.visit(id, title, time, recurrence);
+                oneShots++;
+            }
+        }
+    }
+
+    // Where reminders are stored, created on first use
+    private static volatile ReminderStore sStore;
+
+    // Write-through cache of single reminders, created on first use
+    private static volatile ReminderCache sCache;
+
+    /**
+     * Gets the store all reminder data goes through, creating a {@link SqliteReminderStore} if
+     * none was set.
+     *
+     * @param context The context
+     * @return The store
+     */
+    public static synchronized ReminderStore getStore(Context context) {
+        if (sStore == null) {
+            sStore = new SqliteReminderStore(context);
+        }
+        return sStore;
+    }
+
+    /**
+     * Swaps the store all reminder data goes through. Only {@link SqliteReminderStore} notifies
+     * observers of the reminder data, so with any other store, lists don't reload by themselves.
+     *
+     * @param store The store
+     */
+    public static synchronized void setStore(ReminderStore store) {
+        sStore = store;
+
+        // Generations of different stores can't be compared, start over
+        if (sCache != null) {
+            sCache = new ReminderCache(CACHE_CAPACITY, store.getGeneration());
+        }
+    }
+
+    /**
+     * Gets the write-through cache of single reminders, creating it if needed. The cache is kept
+     * up to date by the writes made through this class, and cleared on any other change to the
+     * reminder data.
+     *
+     * @param context The context
+     * @return The cache, whose hit and miss counters can be used to size it
+     */
+    public static synchronized ReminderCache getCache(Context context) {
+        if (sCache == null) {
+            sCache = new ReminderCache(CACHE_CAPACITY, getGeneration());
+
+            // Called on a binder thread, the cache is thread-safe
+            registerObserver(context, new ContentObserver(null) {
+                @Override
+                public void onChange(boolean selfChange) {
+                    sCache.onChange(getGeneration());
+                }
+            });
+        }
+
+        return sCache;
+    }
+
+    /**
+     * Registers an observer of the reminder data, told of every change committed to it, made
+     * through this class or not. Only {@link SqliteReminderStore} notifies observers.
+     *
+     * @param context The context
+     * @param observer The observer
+     */
+    public static void registerObserver(Context context, ContentObserver observer) {
+        context.getApplicationContext().getContentResolver().registerContentObserver(
+                RemindProvider.getContentUri(RemindProvider.REMINDER_TABLE), true, observer);
+    }
+
+    /**
+     * Releases memory held by the cache, as appropriate for the given trim level.
+     *
+     * @param level One of the {@code TRIM_MEMORY_*} levels of {@link ComponentCallbacks2}
+     */
+    static synchronized void onTrimMemory(int level) {
+        if (sCache == null) {
+            return;
+        }
+
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            // We're next in line to be killed, keep nothing
+            sCache.trimToSize(0);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            sCache.trimToSize(sCache.size() / 2);
+        }
+    }
+
     /**
      * If called on the UI/main thread, throws a runtime exception
      */
@@ -25,27 +157,72 @@ public class RemindData {
     }
 
     /**
-     * Creates a reminder in the database.
+     * Creates a reminder.
      *
      * <p>Never call on the UI thread.
      *
      * @param context The context
      * @param title The title of the reminder to create
-     * @param time The time to schedule the new reminder for
+     * @param time The time to schedule the new reminder for, its first occurrence if it recurs
+     * @param recurrence The {@link Recurrence} rule of the new reminder
      * @return  The ID of the newly created reminder
      */
-    public static long createReminder(Context context, String title, long time) {
+    public static long createReminder(Context context, String title, long time, int recurrence) {
+        failOnMainThread();
+
+        ReminderStore store = getStore(context);
+        ReminderScheduler scheduler = ReminderScheduler.get(context);
+        ReminderDelta changes = null;
+        scheduler.onWriteStarted();
+        try {
+            long id = store.create(title, time, recurrence);
+
+            ReminderCache cache = getCache(context);
+            cache.put(id, title, time, recurrence);
+            cache.onWrite(store.getLastWriteGeneration());
+
+            changes = new ReminderDelta(1);
+            changes.addInserted(id, title, time, recurrence);
+            changes.setGeneration(store.getLastWriteGeneration());
+            return id;
+        } finally {
+            scheduler.onWriteFinished(changes);
+        }
+    }
+
+    /**
+     * Creates a set of one-shot reminders, all or none.
+     *
+     * <p>Never call on the UI thread.
+     *
+     * @param context The context
+     * @param titles The titles of the reminders to create
+     * @param times The times to schedule the new reminders for, one per title
+     * @return The number of reminders created
+     */
+    public static int createReminders(Context context, String[] titles, long[] times) {
         failOnMainThread();
 
-        ContentValues values = new ContentValues();
-        values.put(ReminderColumns.TITLE, title);
-        values.put(ReminderColumns.TIME, time);
-        return ContentUris.parseId(context.getContentResolver().insert(
-                RemindProvider.getContentUri(RemindProvider.REMINDER_TABLE), values));
+        ReminderStore store = getStore(context);
+        ReminderScheduler scheduler = ReminderScheduler.get(context);
+        scheduler.onWriteStarted();
+        try {
+            int count = store.create(titles, times);
+
+            // New reminders can't make anything in the cache stale
+            if (count > 0) {
+                getCache(context).onWrite(store.getLastWriteGeneration());
+            }
+            return count;
+        } finally {
+            // Their IDs are not known: the scheduler reloads
+            scheduler.onWriteFinished(null);
+        }
     }
 
     /**
-     * Gets all reminders from the database.
+     * Gets all reminders from the database. Arbitrary SQL can't be run by every
+     * {@link ReminderStore}, so this always queries {@link RemindProvider}, whatever the store.
      *
      * <p>Never call on the UI thread.
      *
@@ -53,19 +230,173 @@ public class RemindData {
      * @param projection The column names to retrieve
      * @param selection The SQL "WHERE" argument, without the "WHERE"
      * @param selectionArgs The arguments for the given selection
+     * @param sortOrder The SQL "ORDER BY" argument, without the "ORDER BY", or {@code null} for
+     *     {@link ReminderColumns#DEFAULT_SORT_ORDER}
      * @return A {@link Cursor} with the queried rows loaded, if any
      */
     public static Cursor queryReminders(Context context, String[] projection, String selection,
-            String[] selectionArgs) {
+            String[] selectionArgs, String sortOrder) {
         failOnMainThread();
 
         return context.getContentResolver().query(
                 RemindProvider.getContentUri(RemindProvider.REMINDER_TABLE), projection, selection,
-                selectionArgs, null);
+                selectionArgs, sortOrder);
+    }
+
+    /**
+     * Queries a page of reminders: the ones that sort after one key and up to (and including)
+     * another in {@link ReminderColumns#DEFAULT_SORT_ORDER}, where a key is a {@code (time, _id)}
+     * pair.
+     *
+     * <p>Never call on the UI thread.
+     *
+     * @param context The context
+     * @param afterTime The time of the key to start after, {@link Long#MIN_VALUE} to start at the
+     *     first reminder
+     * @param afterId The ID of the key to start after
+     * @param throughTime The time of the last key to include, {@link Long#MAX_VALUE} for no upper
+     *     bound
+     * @param throughId The ID of the last key to include
+     * @param limit The maximum number of reminders to return, or {@link Intents#NO_VALUE} for all
+     * @return A {@link Cursor} with {@link ReminderColumns#PROJECTION} and the queried rows
+     *     loaded, if any
+     */
+    public static Cursor queryReminderPage(Context context, long afterTime, long afterId,
+            long throughTime, long throughId, int limit) {
+        failOnMainThread();
+
+        ReminderStore store = getStore(context);
+        if (store instanceof SqliteReminderStore) {
+            // Hand over the provider's cursor rather than copying it
+            return ((SqliteReminderStore) store).query(afterTime, afterId, throughTime, throughId,
+                    limit);
+        }
+
+        final MatrixCursor cursor = new MatrixCursor(ReminderColumns.PROJECTION,
+                limit != Intents.NO_VALUE ? limit : 16);
+        store.query(afterTime, afterId, throughTime, throughId, limit,
+                new ReminderStore.Visitor() {
+                    public void visit(long id, String title, long time, int recurrence) {
+                        cursor.addRow(new Object[] {
+                                Long.valueOf(id), title, Long.valueOf(time),
+                                Integer.valueOf(recurrence) });
+                    }
+                });
+        cursor.setNotificationUri(context.getContentResolver(),
+                RemindProvider.getContentUri(RemindProvider.REMINDER_TABLE));
+        return cursor;
+    }
+
+    /**
+     * Queries the next reminders that are due at or after a given time, soonest first. A recurring
+     * reminder is due at its first occurrence from then on, and placed there, though its
+     * {@link ReminderColumns#TIME} still holds its own time.
+     *
+     * <p>Never call on the UI thread.
+     *
+     * @param context The context
+     * @param after The earliest time (Posix time) to include
+     * @param limit The maximum number of reminders to return, or {@link Intents#NO_VALUE} for all
+     * @return A {@link Cursor} with {@link ReminderColumns#PROJECTION} and the queried rows
+     *     loaded, if any
+     */
+    public static Cursor queryUpcomingReminders(Context context, long after, int limit) {
+        failOnMainThread();
+
+        ReminderStore store = getStore(context);
+        if (store instanceof SqliteReminderStore) {
+            return context.getContentResolver().query(RemindProvider.getUpcomingUri(after, limit),
+                    ReminderColumns.PROJECTION, null, null, null);
+        }
+
+        UpcomingReminders upcoming = new UpcomingReminders(after, limit);
+        store.queryRecurring(upcoming);
+
+        // The one-shot ones in key order, a page at a time, until as many as the limit
+        OneShotPager pager = new OneShotPager(upcoming, after);
+        while (true) {
+            final int count = store.query(pager.lastTime, pager.lastId, Long.MAX_VALUE, 0, limit,
+                    pager);
+            if (limit == ReminderStore.NO_LIMIT || count < limit || pager.oneShots >= limit) {
+                break;
+            }
+        }
+
+        Cursor cursor = toCursor(upcoming, ReminderColumns.PROJECTION);
+        cursor.setNotificationUri(context.getContentResolver(),
+                RemindProvider.getContentUri(RemindProvider.REMINDER_TABLE));
+        return cursor;
+    }
+
+    /**
+     * Searches the reminders by title: finds the ones with a word starting with every word of the
+     * search text, in any order, through the full-text index. Like
+     * {@link #queryReminders(Context, String[], String, String[], String)}, always queries
+     * {@link RemindProvider}, whatever the store.
+     *
+     * <p>Never call on the UI thread.
+     *
+     * @param context The context
+     * @param query The search text, as typed
+     * @param limit The maximum number of reminders to return, or {@link Intents#NO_VALUE} for all
+     * @return A {@link Cursor} with {@link ReminderColumns#PROJECTION} and the matching rows
+     *     loaded, best match first; empty if the text has no words
+     */
+    public static Cursor searchReminders(Context context, String query, int limit) {
+        failOnMainThread();
+
+        return context.getContentResolver().query(RemindProvider.getSearchUri(query, limit),
+                ReminderColumns.PROJECTION, null, null, null);
+    }
+
+    /**
+     * Queries every recurring reminder, in no particular order. There are few of them next to the
+     * one-shot ones, and their key says nothing about when they are next due, so they are read
+     * all at once rather than in pages.
+     *
+     * <p>Never call on the UI thread.
+     *
+     * @param context The context
+     * @param visitor Receives the reminders
+     * @return The number of reminders returned
+     */
+    public static int queryRecurringReminders(Context context, ReminderStore.Visitor visitor) {
+        failOnMainThread();
+
+        return getStore(context).queryRecurring(visitor);
+    }
+
+    /**
+     * Reads a single reminder, from the cache if possible.
+     *
+     * <p>Never call on the UI thread.
+     *
+     * @param context The context
+     * @param id The ID of the reminder to read
+     * @param out Filled with the reminder, if found
+     * @return Whether the reminder was found
+     */
+    public static boolean getReminder(Context context, long id, Reminder out) {
+        failOnMainThread();
+
+        ReminderCache cache = getCache(context);
+        if (cache.get(id, out)) {
+            return true;
+        }
+
+        // A write on another thread may land while the store is read: then the row read is not
+        // cached, since it may be older than that write
+        final long version = cache.getVersion();
+        if (!getStore(context).get(id, out)) {
+            return false;
+        }
+
+        cache.fill(version, id, out.title, out.time, out.recurrence);
+        return true;
     }
 
     /**
-     * Queries a single reminder from the database.
+     * Queries a single reminder.
      *
      * <p>Never call on the UI thread.
      *
@@ -77,13 +408,24 @@ public class RemindData {
     public static Cursor queryReminder(Context context, long id, String[] projection) {
         failOnMainThread();
 
-        return context.getContentResolver().query(ContentUris.withAppendedId(
-                RemindProvider.getContentUri(RemindProvider.REMINDER_TABLE), id), projection, null,
-                null, null);
+        Reminder reminder = new Reminder();
+        final boolean found = getReminder(context, id, reminder);
+        Cursor cursor = found ? toCursor(reminder, projection)
+                : new MatrixCursor(projection != null ? projection : ReminderColumns.PROJECTION, 0);
+        if (cursor == null) {
+            // Columns that neither the cache nor the store hold
+            return context.getContentResolver().query(ContentUris.withAppendedId(
+                    RemindProvider.getContentUri(RemindProvider.REMINDER_TABLE), id), projection,
+                    null, null, null);
+        }
+
+        cursor.setNotificationUri(context.getContentResolver(),
+                RemindProvider.getContentUri(RemindProvider.REMINDER_TABLE));
+        return cursor;
     }
 
     /**
-     * Updates an existing reminder in the database.
+     * Updates an existing reminder.
      *
      * <p>Never call on the UI thread.
      *
@@ -91,20 +433,37 @@ public class RemindData {
      * @param id The ID of the reminder to update
      * @param title The new title of the reminder
      * @param time The new time to schedule the reminder for
+     * @param recurrence The new {@link Recurrence} rule of the reminder
+     * @return Whether the reminder existed and was updated
      */
-    public static void updateReminder(Context context, long id, String title, long time) {
+    public static boolean updateReminder(Context context, long id, String title, long time,
+            int recurrence) {
         failOnMainThread();
 
-        ContentValues values = new ContentValues();
-        values.put(ReminderColumns.TITLE, title);
-        values.put(ReminderColumns.TIME, time);
-        context.getContentResolver().update(ContentUris.withAppendedId(
-                RemindProvider.getContentUri(RemindProvider.REMINDER_TABLE), id), values, null,
-                null);
+        ReminderStore store = getStore(context);
+        ReminderScheduler scheduler = ReminderScheduler.get(context);
+        ReminderDelta changes = null;
+        scheduler.onWriteStarted();
+        try {
+            boolean updated = store.update(id, title, time, recurrence);
+
+            if (updated) {
+                ReminderCache cache = getCache(context);
+                cache.put(id, title, time, recurrence);
+                cache.onWrite(store.getLastWriteGeneration());
+
+                changes = new ReminderDelta(1);
+                changes.addUpdated(id, title, time, recurrence);
+                changes.setGeneration(store.getLastWriteGeneration());
+            }
+            return updated;
+        } finally {
+            scheduler.onWriteFinished(changes);
+        }
     }
 
     /**
-     * Deletes an existing reminder from the database.
+     * Deletes an existing reminder.
      *
      * <p>Never call on the UI thread.
      *
@@ -114,7 +473,199 @@ public class RemindData {
     public static void deleteReminder(Context context, long id) {
         failOnMainThread();
 
-        context.getContentResolver().delete(ContentUris.withAppendedId(
-                RemindProvider.getContentUri(RemindProvider.REMINDER_TABLE), id), null, null);
+        ReminderStore store = getStore(context);
+        ReminderScheduler scheduler = ReminderScheduler.get(context);
+        ReminderDelta changes = null;
+        scheduler.onWriteStarted();
+        try {
+            boolean deleted = store.delete(id);
+
+            ReminderCache cache = getCache(context);
+            cache.remove(id);
+            if (deleted) {
+                cache.onWrite(store.getLastWriteGeneration());
+
+                changes = new ReminderDelta(1);
+                changes.addDeleted(id);
+                changes.setGeneration(store.getLastWriteGeneration());
+            }
+        } finally {
+            scheduler.onWriteFinished(changes);
+        }
+    }
+
+    /**
+     * Deletes a set of existing reminders, all or none.
+     *
+     * <p>Never call on the UI thread.
+     *
+     * @param context The context
+     * @param ids The IDs of the reminders to delete
+     * @return The number of reminders deleted
+     */
+    public static int deleteReminders(Context context, long[] ids) {
+        failOnMainThread();
+
+        if (ids.length == 0) {
+            return 0;
+        }
+
+        ReminderStore store = getStore(context);
+        ReminderScheduler scheduler = ReminderScheduler.get(context);
+        ReminderDelta changes = null;
+        scheduler.onWriteStarted();
+        try {
+            int count = store.delete(ids);
+
+            ReminderCache cache = getCache(context);
+            for (long id : ids) {
+                cache.remove(id);
+            }
+            if (count > 0) {
+                cache.onWrite(store.getLastWriteGeneration());
+
+                // Unscheduling the ones already gone does nothing
+                changes = new ReminderDelta(ids.length);
+                changes.addDeleted(ids);
+                changes.setGeneration(store.getLastWriteGeneration());
+            }
+            return count;
+        } finally {
+            scheduler.onWriteFinished(changes);
+        }
+    }
+
+    /**
+     * Applies a batch of creates, updates and deletes in order, all or none, in a single
+     * transaction.
+     *
+     * <p>Never call on the UI thread.
+     *
+     * @param context The context
+     * @param writes The writes, see {@link ReminderStore#apply(ReminderDelta)}
+     * @return The changes made, with the generation they produced, see
+     *     {@link ReminderStore#apply(ReminderDelta)}
+     */
+    public static ReminderDelta applyWrites(Context context, ReminderDelta writes) {
+        failOnMainThread();
+
+        ReminderStore store = getStore(context);
+        ReminderScheduler scheduler = ReminderScheduler.get(context);
+        ReminderDelta changes = null;
+        scheduler.onWriteStarted();
+        try {
+            changes = store.apply(writes);
+            if (changes.size() == 0) {
+                return changes;
+            }
+
+            ReminderCache cache = getCache(context);
+            for (int i = 0; i < changes.size(); i++) {
+                if (changes.getKind(i) == ReminderDelta.DELETED) {
+                    cache.remove(changes.getId(i));
+                } else {
+                    cache.put(changes.getId(i), changes.getTitle(i), changes.getTime(i),
+                            changes.getRecurrence(i));
+                }
+            }
+            cache.onWrite(store.getLastWriteGeneration());
+            changes.setGeneration(store.getLastWriteGeneration());
+            return changes;
+        } finally {
+            scheduler.onWriteFinished(changes);
+        }
+    }
+
+    /**
+     * Gets the current generation of the reminder data. The generation moves forward by one with
+     * every committed write or batch of writes, so a snapshot taken at generation {@code g} that
+     * has since had the changes of generations {@code g + 1} to {@code getGeneration()} applied is
+     * up to date.
+     *
+     * <p>Only meaningful within the application process.
+     *
+     * @return The generation
+     */
+    public static long getGeneration() {
+        ReminderStore store = sStore;
+        return store != null ? store.getGeneration() : RemindProvider.getGeneration();
+    }
+
+    /**
+     * Gets the generation produced by the last write made on the calling thread, to be attached to
+     * a {@link ReminderDelta} describing that write.
+     *
+     * @return The generation, or {@link Intents#NO_VALUE} if the calling thread made no writes
+     */
+    public static long getLastWriteGeneration() {
+        ReminderStore store = sStore;
+        return store != null ? store.getLastWriteGeneration()
+                : RemindProvider.getLastWriteGeneration();
+    }
+
+    /**
+     * Builds a cursor out of upcoming reminders, in the order they are due.
+     *
+     * @param upcoming The reminders
+     * @param projection The columns, {@code null} for {@link ReminderColumns#PROJECTION}
+     * @return The cursor
+     */
+    static Cursor toCursor(UpcomingReminders upcoming, String[] projection) {
+        if (projection == null) {
+            projection = ReminderColumns.PROJECTION;
+        }
+
+        final int size = upcoming.size();
+        MatrixCursor cursor = new MatrixCursor(projection, size);
+        for (int i = 0; i < size; i++) {
+            Object[] row = new Object[projection.length];
+            for (int j = 0; j < projection.length; j++) {
+                if (ReminderColumns._ID.equals(projection[j])) {
+                    row[j] = Long.valueOf(upcoming.getId(i));
+                } else if (ReminderColumns.TITLE.equals(projection[j])) {
+                    row[j] = upcoming.getTitle(i);
+                } else if (ReminderColumns.TIME.equals(projection[j])) {
+                    row[j] = Long.valueOf(upcoming.getTime(i));
+                } else if (ReminderColumns.RECURRENCE.equals(projection[j])) {
+                    row[j] = Integer.valueOf(upcoming.getRecurrence(i));
+                } else {
+                    throw new IllegalArgumentException("Unknown column: " + projection[j]);
+                }
+            }
+            cursor.addRow(row);
+        }
+        return cursor;
+    }
+
+    /**
+     * Builds a single-row cursor out of a cached reminder.
+     *
+     * @param reminder The reminder
+     * @param projection The columns, {@code null} for {@link ReminderColumns#PROJECTION}
+     * @return The cursor, or {@code null} if the projection has columns the cache does not hold
+     */
+    private static Cursor toCursor(Reminder reminder, String[] projection) {
+        if (projection == null) {
+            projection = ReminderColumns.PROJECTION;
+        }
+
+        Object[] row = new Object[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            if (ReminderColumns._ID.equals(projection[i])) {
+                row[i] = Long.valueOf(reminder.id);
+            } else if (ReminderColumns.TITLE.equals(projection[i])) {
+                row[i] = reminder.title;
+            } else if (ReminderColumns.TIME.equals(projection[i])) {
+                row[i] = Long.valueOf(reminder.time);
+            } else if (ReminderColumns.RECURRENCE.equals(projection[i])) {
+                row[i] = Integer.valueOf(reminder.recurrence);
+            } else {
+                return null;
+            }
+        }
+
+        MatrixCursor cursor = new MatrixCursor(projection, 1);
+        cursor.addRow(row);
+        return cursor;
     }
 }
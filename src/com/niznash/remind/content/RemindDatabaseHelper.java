@@ -1,22 +1,48 @@
 package com.niznash.remind.content;
 
+import com.niznash.remind.R;
 import com.niznash.remind.content.RemindProvider.ReminderColumns;
 
 import android.content.Context;
+import android.content.res.Resources;
+import android.os.Build;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
 /**
  * Creates and/or opens the database as needed.
  *
+ * <p>From Honeycomb on, the database runs in write-ahead log mode: writes append to the log
+ * instead of rewriting the database in place, so queries, which the framework then runs on
+ * connections of their own, read a committed snapshot and never wait for a write, even a long
+ * batch, nor make one wait. Older devices keep the rollback journal.
+ *
+ * <p>The page cache and the {@code synchronous} level of the connection writes go through are set
+ * on every open, from the {@code database_} integer resources, so a build or a device
+ * configuration can tune them. They only apply to that connection: the read connections the framework opens
+ * for queries in write-ahead log mode keep the SQLite defaults, and there is no hook to configure
+ * them. That costs nothing for {@code synchronous}, which only matters to writes; queries get the
+ * default page cache.
+ *
  * @author niznash@gmail.com (Alejandro Nijamkin)
  */
 public class RemindDatabaseHelper extends SQLiteOpenHelper {
 
     private static RemindDatabaseHelper sInstance;
 
+    // Incremented every time the schema is created or changed
+    private static volatile int sSchemaGeneration;
+
     private static final String DATABASE_NAME = "remind.db";
-    private static final int VERSION = 1;
+    private static final int VERSION = 4;
+
+    // Levels of PRAGMA synchronous: how often SQLite waits for the disk
+    private static final int SYNCHRONOUS_OFF = 0;
+    private static final int SYNCHRONOUS_FULL = 2;
+
+    private static final String TIME_INDEX = RemindProvider.REMINDER_TABLE + "_time_index";
+    private static final String RECURRENCE_INDEX =
+        RemindProvider.REMINDER_TABLE + "_recurrence_index";
 
     static synchronized RemindDatabaseHelper get(Context context) {
         if (sInstance == null) {
@@ -26,8 +52,61 @@ public class RemindDatabaseHelper extends SQLiteOpenHelper {
         return sInstance;
     }
 
+    // Page cache in KiB, 0 for the SQLite default, and synchronous levels with and without WAL
+    private final int mCacheSizeKib;
+    private final int mSynchronousWal;
+    private final int mSynchronousJournal;
+
     public RemindDatabaseHelper(Context context) {
         super(context, DATABASE_NAME, null, VERSION);
+
+        Resources res = context.getResources();
+        mCacheSizeKib = res.getInteger(R.integer.database_cache_size_kib);
+        mSynchronousWal = res.getInteger(R.integer.database_synchronous_wal);
+        mSynchronousJournal = res.getInteger(R.integer.database_synchronous_journal);
+        if (mCacheSizeKib < 0 || !isSynchronousLevel(mSynchronousWal)
+                || !isSynchronousLevel(mSynchronousJournal)) {
+            throw new IllegalArgumentException("Invalid database settings!");
+        }
+    }
+
+    private static boolean isSynchronousLevel(int level) {
+        return level >= SYNCHRONOUS_OFF && level <= SYNCHRONOUS_FULL;
+    }
+
+    /**
+     * @return A number that changes every time the schema is created or changed, so statements
+     *     compiled against the old schema can be told apart
+     */
+    static int getSchemaGeneration() {
+        return sSchemaGeneration;
+    }
+
+    /**
+     * @return Whether the database runs in write-ahead log mode on this device
+     */
+    static boolean isWriteAheadLoggingSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB;
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        if (db.isReadOnly()) {
+            return;
+        }
+
+        boolean wal = false;
+        if (isWriteAheadLoggingSupported()) {
+            wal = db.enableWriteAheadLogging();
+        }
+
+        db.execSQL("PRAGMA synchronous=" + (wal ? mSynchronousWal : mSynchronousJournal));
+        if (mCacheSizeKib > 0) {
+            // A negative size is in KiB whatever the page size. SQLite before 3.7.10 (Android
+            // 4.0 and older) reads it as a number of pages, which are 1KiB by default there
+            db.execSQL("PRAGMA cache_size=-" + mCacheSizeKib);
+        }
     }
 
     @Override
@@ -36,17 +115,111 @@ public class RemindDatabaseHelper extends SQLiteOpenHelper {
             .append("CREATE TABLE " + RemindProvider.REMINDER_TABLE + " (")
             .append(ReminderColumns._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, ")
             .append(ReminderColumns.TITLE + " TEXT NOT NULL, ")
-            .append(ReminderColumns.TIME + " INTEGER NOT NULL);")
+            .append(ReminderColumns.TIME + " INTEGER NOT NULL, ")
+            .append(ReminderColumns.RECURRENCE + " INTEGER NOT NULL DEFAULT 0);")
             .toString();
         db.execSQL(sql);
+
+        createTimeIndex(db);
+        createRecurrenceIndex(db);
+        createSearchTable(db);
+        sSchemaGeneration++;
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 2) {
+            // Version 2 adds the index on the reminder time
+            createTimeIndex(db);
+        }
+        if (oldVersion < 3) {
+            // Version 3 adds recurring reminders
+            db.execSQL("ALTER TABLE " + RemindProvider.REMINDER_TABLE + " ADD COLUMN "
+                    + ReminderColumns.RECURRENCE + " INTEGER NOT NULL DEFAULT 0;");
+            createRecurrenceIndex(db);
+        }
+        if (oldVersion < 4) {
+            // Version 4 adds full-text search on the reminder titles
+            createSearchTable(db);
+            db.execSQL("INSERT INTO " + RemindProvider.REMINDER_FTS_TABLE + " (docid, "
+                    + ReminderColumns.TITLE + ") SELECT " + ReminderColumns._ID + ", "
+                    + ReminderColumns.TITLE + " FROM " + RemindProvider.REMINDER_TABLE + ";");
+        }
+        sSchemaGeneration++;
+    }
+
+    /**
+     * Creates the index on {@link ReminderColumns#TIME}.
+     *
+     * <p>SQLite appends the row ID to every index entry, so this index also satisfies
+     * {@link ReminderColumns#DEFAULT_SORT_ORDER} without a separate sort step.
+     *
+     * @param db The database
+     */
+    private static void createTimeIndex(SQLiteDatabase db) {
         String sql = new StringBuilder()
-            .append("DROP TABLE " + RemindProvider.REMINDER_TABLE + " IF EXISTS")
+            .append("CREATE INDEX IF NOT EXISTS " + TIME_INDEX + " ON ")
+            .append(RemindProvider.REMINDER_TABLE + " (" + ReminderColumns.TIME + ");")
             .toString();
         db.execSQL(sql);
-        onCreate(db);
+    }
+
+    /**
+     * Creates the index on {@link ReminderColumns#RECURRENCE}, so the few recurring reminders can
+     * be found without a scan of the whole table.
+     *
+     * @param db The database
+     */
+    private static void createRecurrenceIndex(SQLiteDatabase db) {
+        String sql = new StringBuilder()
+            .append("CREATE INDEX IF NOT EXISTS " + RECURRENCE_INDEX + " ON ")
+            .append(RemindProvider.REMINDER_TABLE + " (" + ReminderColumns.RECURRENCE + ");")
+            .toString();
+        db.execSQL(sql);
+    }
+
+    /**
+     * Creates the full-text index on {@link ReminderColumns#TITLE}: a virtual table holding a copy
+     * of every title, with the reminder ID as its {@code docid}, kept in sync with the reminder
+     * table by triggers so no write path has to know about it.
+     *
+     * <p>FTS4 keeps statistics that make queries cheaper, but needs the SQLite of Honeycomb or
+     * later; older devices get FTS3, which reads the same queries.
+     *
+     * @param db The database
+     */
+    private static void createSearchTable(SQLiteDatabase db) {
+        final String module =
+            Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB ? "fts4" : "fts3";
+        db.execSQL("CREATE VIRTUAL TABLE " + RemindProvider.REMINDER_FTS_TABLE + " USING "
+                + module + " (" + ReminderColumns.TITLE + ");");
+
+        db.execSQL(new StringBuilder()
+            .append("CREATE TRIGGER " + RemindProvider.REMINDER_FTS_TABLE + "_insert ")
+            .append("AFTER INSERT ON " + RemindProvider.REMINDER_TABLE + " BEGIN ")
+            .append("INSERT INTO " + RemindProvider.REMINDER_FTS_TABLE)
+            .append(" (docid, " + ReminderColumns.TITLE + ")")
+            .append(" VALUES (new." + ReminderColumns._ID + ", new." + ReminderColumns.TITLE + ");")
+            .append(" END;")
+            .toString());
+
+        // Only when the title changes, so moving a reminder costs nothing extra
+        db.execSQL(new StringBuilder()
+            .append("CREATE TRIGGER " + RemindProvider.REMINDER_FTS_TABLE + "_update ")
+            .append("AFTER UPDATE OF " + ReminderColumns.TITLE + " ON ")
+            .append(RemindProvider.REMINDER_TABLE + " BEGIN ")
+            .append("UPDATE " + RemindProvider.REMINDER_FTS_TABLE)
+            .append(" SET " + ReminderColumns.TITLE + "=new." + ReminderColumns.TITLE)
+            .append(" WHERE docid=old." + ReminderColumns._ID + ";")
+            .append(" END;")
+            .toString());
+
+        db.execSQL(new StringBuilder()
+            .append("CREATE TRIGGER " + RemindProvider.REMINDER_FTS_TABLE + "_delete ")
+            .append("AFTER DELETE ON " + RemindProvider.REMINDER_TABLE + " BEGIN ")
+            .append("DELETE FROM " + RemindProvider.REMINDER_FTS_TABLE)
+            .append(" WHERE docid=old." + ReminderColumns._ID + ";")
+            .append(" END;")
+            .toString());
     }
 }
@@ -1,29 +1,81 @@
 package com.niznash.remind.content;
 
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.content.ComponentCallbacks2;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
+import android.database.CrossProcessCursor;
 import android.database.Cursor;
+import android.database.CursorWindow;
+import android.database.CursorWrapper;
+import android.database.MatrixCursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Binder;
+import android.os.Process;
+
+import com.niznash.remind.util.LatencyHistogram;
+import com.niznash.remind.util.Recurrence;
+import com.niznash.remind.util.SearchQuery;
 
 /**
  * Content provider for the application.
  *
  * <ul>
- * <li>{@code com.niznash.reminder/reminder} gets all reminders.
+ * <li>{@code com.niznash.reminder/reminder} gets all reminders, up to the optional {@code limit}
+ *     query parameter.
  * <li>{@code com.niznash.reminder/reminder/#}, where {@code #} is the reminder ID, gets the reminder
  *     with that ID.
+ * <li>{@code com.niznash.reminder/reminder/upcoming} gets the reminders due at or after the
+ *     {@code after} query parameter (defaults to now), soonest first, up to the optional
+ *     {@code limit} query parameter. A recurring reminder is due at its first occurrence from
+ *     then on, and placed there, though its {@code time} column still holds its own time.
+ * <li>{@code com.niznash.reminder/reminder/search} gets the reminders with a word in the title
+ *     starting with every word of the {@code q} query parameter, best match first, up to the
+ *     optional {@code limit} query parameter.
+ * <li>{@code com.niznash.reminder/stats} gets the latency histograms of {@link RemindStats}, one
+ *     row per operation, with the columns of {@link StatsColumns}. Deleting it resets them.
+ * <li>{@code com.niznash.reminder/slow_queries} gets the slow statements of
+ *     {@link RemindStats#SLOW_QUERIES}, newest first, with the columns of
+ *     {@link SlowQueryColumns}. Deleting it clears them; updating it with a
+ *     {@link SlowQueryColumns#THRESHOLD} value sets the threshold, in milliseconds.
  * </ul>
  *
+ * <p>The provider is exported, but {@code stats} and {@code slow_queries} are only open to this
+ * app: the slow statements hold SQL, arguments and the UIDs of callers, and a low threshold slows
+ * every statement down. Other apps get a {@link SecurityException}.
+ *
+ * <p>Every write that changes something notifies observers of
+ * {@code com.niznash.reminder/reminder}, which is also the notification URI of every returned
+ * {@link Cursor}. Batches notify once, when they end.
+ *
  * @author niznash@gmail.com (Alejandro Nijamkin)
  */
 public class RemindProvider extends ContentProvider {
 
     static final String AUTHORITY = "com.niznash.remind";
     static final String REMINDER_TABLE = "reminder";
+    static final String REMINDER_FTS_TABLE = "reminder_fts";
+    static final String UPCOMING_PATH = "upcoming";
+    static final String SEARCH_PATH = "search";
+    static final String STATS_PATH = "stats";
+    static final String SLOW_QUERIES_PATH = "slow_queries";
+
+    // Query parameters
+    static final String PARAM_AFTER = "after";
+    static final String PARAM_LIMIT = "limit";
+    static final String PARAM_QUERY = "q";
 
     /**
      * Defines the columns of the Reminder table.
@@ -35,9 +87,17 @@ public class RemindProvider extends ContentProvider {
         public static final String[] PROJECTION = new String[] {
             ReminderColumns._ID,
             ReminderColumns.TITLE,
-            ReminderColumns.TIME
+            ReminderColumns.TIME,
+            ReminderColumns.RECURRENCE
         };
 
+        /**
+         * Defines the order reminders are returned in when no explicit sort order is given: soonest
+         * first, ties broken by ID so the order is stable.
+         */
+        public static final String DEFAULT_SORT_ORDER =
+            ReminderColumns.TIME + " ASC, " + ReminderColumns._ID + " ASC";
+
         /**
          * ID of the reminder.
          *
@@ -58,6 +118,202 @@ public class RemindProvider extends ContentProvider {
          * <p>User supplied
          */
         public static final String TITLE = "title";
+
+        /**
+         * How the reminder recurs, a {@link Recurrence} rule; {@link Recurrence#NONE} for a
+         * one-shot reminder. When it recurs, {@link #TIME} is the first occurrence.
+         *
+         * <p>User supplied, defaults to {@link Recurrence#NONE}
+         */
+        public static final String RECURRENCE = "recurrence";
+    }
+
+    /**
+     * Defines the columns of the stats. Durations are in microseconds.
+     */
+    public static class StatsColumns {
+        /**
+         * Defines the projection stats are always returned with.
+         */
+        public static final String[] PROJECTION = new String[] {
+            StatsColumns.NAME,
+            StatsColumns.COUNT,
+            StatsColumns.MEAN,
+            StatsColumns.P50,
+            StatsColumns.P90,
+            StatsColumns.P99,
+            StatsColumns.MAX
+        };
+
+        /** Name of the operation */
+        public static final String NAME = "name";
+
+        /** Number of times it ran */
+        public static final String COUNT = "count";
+
+        /** Average duration */
+        public static final String MEAN = "mean_us";
+
+        /** Durations that 50%, 90% and 99% of the runs did not exceed */
+        public static final String P50 = "p50_us";
+        public static final String P90 = "p90_us";
+        public static final String P99 = "p99_us";
+
+        /** Longest duration */
+        public static final String MAX = "max_us";
+    }
+
+    /**
+     * Defines the columns of the slow statements.
+     */
+    public static class SlowQueryColumns {
+        /**
+         * Defines the projection slow statements are always returned with.
+         */
+        public static final String[] PROJECTION = new String[] {
+            SlowQueryColumns.TIME,
+            SlowQueryColumns.UID,
+            SlowQueryColumns.URI,
+            SlowQueryColumns.SQL,
+            SlowQueryColumns.PLAN,
+            SlowQueryColumns.ROWS,
+            SlowQueryColumns.DURATION
+        };
+
+        /** When the statement finished, Unix time */
+        public static final String TIME = "time";
+
+        /** UID of the caller */
+        public static final String UID = "uid";
+
+        /** URI the statement was run for */
+        public static final String URI = "uri";
+
+        /** SQL of the statement, without the values of its arguments */
+        public static final String SQL = "sql";
+
+        /** Query plan of the statement, one step per line */
+        public static final String PLAN = "plan";
+
+        /** Number of rows returned or changed */
+        public static final String ROWS = "rows";
+
+        /** How long the statement ran, in milliseconds */
+        public static final String DURATION = "duration_ms";
+
+        /** Value to update with to set the threshold, in milliseconds, at least {@code 1} */
+        public static final String THRESHOLD = "threshold_ms";
+    }
+
+    /**
+     * A statement and its arguments.
+     */
+    private static class Statement {
+        public final String sql;
+        public final String[] args;
+
+        public Statement(String sql, String[] args) {
+            this.sql = sql;
+            this.args = args;
+        }
+    }
+
+    /**
+     * Cursor of a query that times it once SQLite ran it. SQLite only runs a query as the first
+     * rows are read, whoever reads them: the caller, or the framework when the cursor crosses
+     * processes. So the time to compile the statement is added to the time of the first read that
+     * has to run it, and the query is never run earlier than it would be without timing.
+     */
+    private class TimedCursor extends CursorWrapper implements CrossProcessCursor {
+        private final CrossProcessCursor mCursor;
+        private final Uri mUri;
+        private final Statement mStatement;
+        private final int mCallingUid;
+
+        // Time it took to compile the statement, until the query runs; then -1
+        private long mCompileNanos;
+
+        public TimedCursor(CrossProcessCursor cursor, Uri uri, Statement statement, int callingUid,
+                long compileNanos) {
+            super(cursor);
+            mCursor = cursor;
+            mUri = uri;
+            mStatement = statement;
+            mCallingUid = callingUid;
+            mCompileNanos = compileNanos;
+        }
+
+        /**
+         * Runs the query, if it did not run yet, and times it.
+         */
+        private void run() {
+            if (mCompileNanos < 0) {
+                return;
+            }
+
+            final long start = System.nanoTime();
+            final int count = mCursor.getCount();
+            final long nanos = mCompileNanos + System.nanoTime() - start;
+            mCompileNanos = -1;
+            RemindStats.PROVIDER_QUERY.record(nanos);
+            onStatementRun(mUri, mStatement, count, nanos, mCallingUid);
+        }
+
+        @Override
+        public int getCount() {
+            run();
+            return super.getCount();
+        }
+
+        @Override
+        public boolean move(int offset) {
+            run();
+            return super.move(offset);
+        }
+
+        @Override
+        public boolean moveToPosition(int position) {
+            run();
+            return super.moveToPosition(position);
+        }
+
+        @Override
+        public boolean moveToFirst() {
+            run();
+            return super.moveToFirst();
+        }
+
+        @Override
+        public boolean moveToLast() {
+            run();
+            return super.moveToLast();
+        }
+
+        @Override
+        public boolean moveToNext() {
+            run();
+            return super.moveToNext();
+        }
+
+        @Override
+        public boolean moveToPrevious() {
+            run();
+            return super.moveToPrevious();
+        }
+
+        public CursorWindow getWindow() {
+            return mCursor.getWindow();
+        }
+
+        public void fillWindow(int position, CursorWindow window) {
+            run();
+            mCursor.fillWindow(position, window);
+        }
+
+        public boolean onMove(int oldPosition, int newPosition) {
+            run();
+            return mCursor.onMove(oldPosition, newPosition);
+        }
     }
 
     // URI matcher, used to parse the Uris
@@ -66,11 +322,97 @@ public class RemindProvider extends ContentProvider {
     // URI types
     private static final int TYPE_ALL_REMINDERS = 0;
     private static final int TYPE_SPECIFIC_REMINDER = 1;
+    private static final int TYPE_UPCOMING_REMINDERS = 2;
+    private static final int TYPE_SEARCH_REMINDERS = 3;
+    private static final int TYPE_STATS = 4;
+    private static final int TYPE_SLOW_QUERIES = 5;
+
+    // Inserts a single reminder, compiled once per batch and re-bound for every row
+    private static final String INSERT_REMINDER_SQL = "INSERT INTO " + REMINDER_TABLE + " ("
+        + ReminderColumns.TITLE + ", " + ReminderColumns.TIME + ", " + ReminderColumns.RECURRENCE
+        + ") VALUES (?, ?, ?)";
+
+    // Hot single-row statements, with the ID bound last
+    private static final String GET_REMINDER_SQL = SQLiteQueryBuilder.buildQueryString(false,
+            REMINDER_TABLE, ReminderColumns.PROJECTION, ReminderColumns._ID + "=?", null, null,
+            null, null);
+    private static final String UPDATE_REMINDER_SQL = "UPDATE " + REMINDER_TABLE + " SET "
+        + ReminderColumns.TITLE + "=?, " + ReminderColumns.TIME + "=?, "
+        + ReminderColumns.RECURRENCE + "=? WHERE " + ReminderColumns._ID + "=?";
+    private static final String DELETE_REMINDER_SQL =
+        "DELETE FROM " + REMINDER_TABLE + " WHERE " + ReminderColumns._ID + "=?";
+
+    /*
+     * The one-shot reminders due from a time on: a range on the time index, ordered the way the
+     * index is already ordered, so SQLite walks it from the first due entry and stops after the
+     * limit. The unary plus keeps SQLite from picking the recurrence index for the equality, which
+     * nearly every row satisfies.
+     */
+    private static final String UPCOMING_ONE_SHOT_SQL = SQLiteQueryBuilder.buildQueryString(false,
+            REMINDER_TABLE, ReminderColumns.PROJECTION, ReminderColumns.TIME + ">=? AND +"
+            + ReminderColumns.RECURRENCE + "=" + Recurrence.NONE, null, null,
+            ReminderColumns.DEFAULT_SORT_ORDER, null);
+
+    // Every recurring reminder, a range on the recurrence index
+    private static final String UPCOMING_RECURRING_SQL = SQLiteQueryBuilder.buildQueryString(false,
+            REMINDER_TABLE, ReminderColumns.PROJECTION, ReminderColumns.RECURRENCE + ">"
+            + Recurrence.NONE, null, null, null, null);
+
+    /*
+     * Finds reminders by title, through the full-text index, and ranks them: titles that start
+     * with the search text first, then shorter titles, which the search text covers more of, then
+     * soonest first. Only the matches are sorted, never the whole table.
+     */
+    private static final String SEARCH_REMINDERS_SQL = "SELECT %s FROM " + REMINDER_FTS_TABLE
+        + " JOIN " + REMINDER_TABLE + " ON " + REMINDER_TABLE + "." + ReminderColumns._ID + "="
+        + REMINDER_FTS_TABLE + ".docid WHERE " + REMINDER_FTS_TABLE + " MATCH ? ORDER BY substr("
+        + REMINDER_TABLE + "." + ReminderColumns.TITLE + ", 1, ?)=? COLLATE NOCASE DESC, length("
+        + REMINDER_TABLE + "." + ReminderColumns.TITLE + ") ASC, " + REMINDER_TABLE + "."
+        + ReminderColumns.TIME + " ASC, " + REMINDER_TABLE + "." + ReminderColumns._ID + " ASC";
+
+    /**
+     * State of a batch ({@link #bulkInsert(Uri, ContentValues[])} or {@link #applyBatch(ArrayList)})
+     * running on the current thread.
+     */
+    private static class Batch {
+        /** Compiled {@link #INSERT_REMINDER_SQL}, shared by every insert in the batch */
+        public final SQLiteStatement insert;
+
+        /** Whether anything in the batch changed the data, and observers need to be notified */
+        public boolean changed;
+
+        /** Whether the batch transaction was marked successful, and will be committed */
+        public boolean successful;
+
+        public Batch(SQLiteDatabase db) {
+            insert = db.compileStatement(INSERT_REMINDER_SQL);
+        }
+    }
+
+    // The batch running on each thread, if any
+    private final ThreadLocal<Batch> mBatch = new ThreadLocal<Batch>();
+
+    // Compiled single-row updates and deletes
+    private final StatementCache mStatements = new StatementCache();
+
+    /*
+     * Generation of the reminder data: incremented once per committed write or batch. Lets callers
+     * tell whether a snapshot of the data they hold already reflects every write.
+     */
+    private static final AtomicLong sGeneration = new AtomicLong();
+
+    // Generation produced by the last write made on each thread
+    private static final ThreadLocal<Long> sLastWriteGeneration = new ThreadLocal<Long>();
 
     static {
         URI_MATCHER = new UriMatcher(UriMatcher.NO_MATCH);
         URI_MATCHER.addURI(AUTHORITY, REMINDER_TABLE, TYPE_ALL_REMINDERS);
         URI_MATCHER.addURI(AUTHORITY, REMINDER_TABLE + "/#", TYPE_SPECIFIC_REMINDER);
+        URI_MATCHER.addURI(AUTHORITY, REMINDER_TABLE + "/" + UPCOMING_PATH,
+                TYPE_UPCOMING_REMINDERS);
+        URI_MATCHER.addURI(AUTHORITY, REMINDER_TABLE + "/" + SEARCH_PATH, TYPE_SEARCH_REMINDERS);
+        URI_MATCHER.addURI(AUTHORITY, STATS_PATH, TYPE_STATS);
+        URI_MATCHER.addURI(AUTHORITY, SLOW_QUERIES_PATH, TYPE_SLOW_QUERIES);
     }
 
     static Uri getContentUri(String tableName) {
@@ -81,18 +423,88 @@ public class RemindProvider extends ContentProvider {
             .build();
     }
 
+    /**
+     * Builds the URI that queries the reminders due at or after a given time.
+     *
+     * @param after The earliest time (Posix time) to include
+     * @param limit The maximum number of reminders to return, or {@link Intents#NO_VALUE} for all
+     * @return The URI
+     */
+    static Uri getUpcomingUri(long after, int limit) {
+        Uri.Builder builder = getContentUri(REMINDER_TABLE).buildUpon()
+            .appendPath(UPCOMING_PATH)
+            .appendQueryParameter(PARAM_AFTER, Long.toString(after));
+        if (limit != Intents.NO_VALUE) {
+            builder.appendQueryParameter(PARAM_LIMIT, Integer.toString(limit));
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Builds the URI that searches the reminders by title.
+     *
+     * @param query The search text, as typed
+     * @param limit The maximum number of reminders to return, or {@link Intents#NO_VALUE} for all
+     * @return The URI
+     */
+    static Uri getSearchUri(String query, int limit) {
+        Uri.Builder builder = getContentUri(REMINDER_TABLE).buildUpon()
+            .appendPath(SEARCH_PATH)
+            .appendQueryParameter(PARAM_QUERY, query);
+        if (limit != Intents.NO_VALUE) {
+            builder.appendQueryParameter(PARAM_LIMIT, Integer.toString(limit));
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * @return The current generation of the reminder data
+     */
+    static long getGeneration() {
+        return sGeneration.get();
+    }
+
+    /**
+     * @return The generation produced by the last write made on the calling thread, or
+     *     {@link Intents#NO_VALUE} if it made none
+     */
+    static long getLastWriteGeneration() {
+        Long generation = sLastWriteGeneration.get();
+        return generation != null ? generation.longValue() : Intents.NO_VALUE;
+    }
+
     @Override
     public boolean onCreate() {
         return true;
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        RemindData.onTrimMemory(level);
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        RemindData.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+    }
+
     @Override
     public String getType(Uri uri) {
         switch (URI_MATCHER.match(uri)) {
             case TYPE_ALL_REMINDERS:
+            case TYPE_UPCOMING_REMINDERS:
+            case TYPE_SEARCH_REMINDERS:
                 return "vnd.android.cursor.dir/reminder";
             case TYPE_SPECIFIC_REMINDER:
                 return "vnd.android.cursor.item.reminder";
+            case TYPE_STATS:
+                return "vnd.android.cursor.dir/stats";
+            case TYPE_SLOW_QUERIES:
+                return "vnd.android.cursor.dir/slow_query";
             default:
                 throw new IllegalArgumentException("Unknown URI type: " + uri.toString());
         }
@@ -108,17 +520,83 @@ public class RemindProvider extends ContentProvider {
         }
     }
 
+    @Override
+    public int bulkInsert(Uri uri, ContentValues[] values) {
+        switch (URI_MATCHER.match(uri)) {
+            case TYPE_ALL_REMINDERS:
+                return bulkInsertReminders(values);
+            default:
+                throw new IllegalArgumentException("Cannot insert into: " + uri.toString());
+        }
+    }
+
+    /**
+     * Applies all the operations in a single transaction, notifying observers once at the end.
+     *
+     * <p>If any operation fails, none of them are applied.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        final long start = System.nanoTime();
+        SQLiteDatabase db = RemindDatabaseHelper.get(getContext()).getWritableDatabase();
+        Batch batch = beginBatch(db);
+        try {
+            final int count = operations.size();
+            ContentProviderResult[] results = new ContentProviderResult[count];
+            for (int i = 0; i < count; i++) {
+                results[i] = operations.get(i).apply(this, results, i);
+            }
+            db.setTransactionSuccessful();
+            batch.successful = true;
+            return results;
+        } finally {
+            endBatch(db, batch);
+            RemindStats.PROVIDER_BATCH.recordSince(start);
+        }
+    }
+
     @Override
     public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
             String sortOrder) {
-        switch (URI_MATCHER.match(uri)) {
+        final int type = URI_MATCHER.match(uri);
+        if (type == TYPE_STATS) {
+            enforceCallerIsSelf(uri);
+            return getStats();
+        } else if (type == TYPE_SLOW_QUERIES) {
+            enforceCallerIsSelf(uri);
+            return getSlowQueries();
+        }
+
+        final long start = System.nanoTime();
+        Cursor cursor;
+        switch (type) {
             case TYPE_ALL_REMINDERS:
-                return getAllReminders(uri, projection, selection, selectionArgs, sortOrder);
+                cursor = runQuery(uri, getAllReminders(uri, projection, selection, selectionArgs,
+                        sortOrder), start);
+                break;
             case TYPE_SPECIFIC_REMINDER:
-                return getReminder(ContentUris.parseId(uri), projection);
+                cursor = runQuery(uri, getReminder(ContentUris.parseId(uri), projection), start);
+                break;
+            case TYPE_UPCOMING_REMINDERS:
+                cursor = getUpcomingReminders(uri, projection);
+                break;
+            case TYPE_SEARCH_REMINDERS: {
+                Statement statement = searchReminders(uri, projection);
+                // Nothing to look for, nothing found
+                cursor = statement != null ? runQuery(uri, statement, start) : new MatrixCursor(
+                        projection != null ? projection : ReminderColumns.PROJECTION, 0);
+                break;
+            }
             default:
                 throw new IllegalArgumentException("Cannot query: " + uri.toString());
         }
+
+        // Any change to the reminder table may affect any of the queries above
+        cursor.setNotificationUri(getContext().getContentResolver(),
+                getContentUri(REMINDER_TABLE));
+
+        return cursor;
     }
 
     @Override
@@ -126,6 +604,15 @@ public class RemindProvider extends ContentProvider {
         switch (URI_MATCHER.match(uri)) {
             case TYPE_SPECIFIC_REMINDER:
                 return updateReminder(ContentUris.parseId(uri), values);
+            case TYPE_SLOW_QUERIES: {
+                enforceCallerIsSelf(uri);
+                Long threshold = values.getAsLong(SlowQueryColumns.THRESHOLD);
+                if (threshold == null) {
+                    throw new IllegalArgumentException("No threshold to set!");
+                }
+                RemindStats.SLOW_QUERIES.setThresholdMillis(threshold.longValue());
+                return 1;
+            }
             default:
                 throw new IllegalArgumentException("Cannot update: " + uri.toString());
         }
@@ -135,47 +622,440 @@ public class RemindProvider extends ContentProvider {
     public int delete(Uri uri, String selection, String[] selectionArgs) {
         switch (URI_MATCHER.match(uri)) {
             case TYPE_ALL_REMINDERS:
-                return deleteAllReminders();
+                return deleteReminders(uri, selection, selectionArgs);
             case TYPE_SPECIFIC_REMINDER:
                 return deleteReminder(ContentUris.parseId(uri));
+            case TYPE_STATS:
+                enforceCallerIsSelf(uri);
+                RemindStats.reset();
+                return RemindStats.getAll().length;
+            case TYPE_SLOW_QUERIES:
+                enforceCallerIsSelf(uri);
+                return RemindStats.SLOW_QUERIES.clear();
             default:
                 throw new IllegalArgumentException("Cannot delete: " + uri.toString());
         }
     }
 
     private Uri insertReminder(ContentValues values) {
+        final long start = System.nanoTime();
+        long id;
+        Batch batch = mBatch.get();
+        if (batch != null) {
+            // Part of a batch, reuse its compiled statement
+            id = executeInsert(batch.insert, values);
+        } else {
+            SQLiteDatabase db = RemindDatabaseHelper.get(getContext()).getWritableDatabase();
+            id = db.insert(REMINDER_TABLE, null, values);
+        }
+
+        onDataChanged();
+        RemindStats.PROVIDER_INSERT.recordSince(start);
+        return ContentUris.withAppendedId(getContentUri(REMINDER_TABLE), id);
+    }
+
+    private int bulkInsertReminders(ContentValues[] values) {
+        final long start = System.nanoTime();
         SQLiteDatabase db = RemindDatabaseHelper.get(getContext()).getWritableDatabase();
-        return ContentUris.withAppendedId(getContentUri(REMINDER_TABLE),
-                db.insert(REMINDER_TABLE, null, values));
+        Batch batch = beginBatch(db);
+        try {
+            for (ContentValues row : values) {
+                executeInsert(batch.insert, row);
+            }
+            batch.changed = values.length > 0;
+            db.setTransactionSuccessful();
+            batch.successful = true;
+            return values.length;
+        } finally {
+            endBatch(db, batch);
+            RemindStats.PROVIDER_BATCH.recordSince(start);
+        }
+    }
+
+    /**
+     * Binds a row to a compiled {@link #INSERT_REMINDER_SQL} and runs it.
+     *
+     * @param insert The compiled statement
+     * @param values The row to insert
+     * @return The ID of the new reminder
+     */
+    private static long executeInsert(SQLiteStatement insert, ContentValues values) {
+        String title = values.getAsString(ReminderColumns.TITLE);
+        Long time = values.getAsLong(ReminderColumns.TIME);
+        if (title == null || time == null) {
+            throw new IllegalArgumentException("A reminder needs both a title and a time!");
+        }
+
+        Integer recurrence = values.getAsInteger(ReminderColumns.RECURRENCE);
+
+        insert.bindString(1, title);
+        insert.bindLong(2, time.longValue());
+        insert.bindLong(3, recurrence != null ? recurrence.intValue() : Recurrence.NONE);
+        return insert.executeInsert();
     }
 
-    private Cursor getAllReminders(Uri uri, String[] projection, String selection,
+    /**
+     * Starts a transaction for a batch on the current thread.
+     *
+     * @param db The database
+     * @return The new batch, to be passed to {@link #endBatch(SQLiteDatabase, Batch)}
+     */
+    private Batch beginBatch(SQLiteDatabase db) {
+        if (mBatch.get() != null) {
+            throw new IllegalStateException("A batch is already running on this thread!");
+        }
+
+        Batch batch = new Batch(db);
+        mBatch.set(batch);
+        db.beginTransaction();
+        return batch;
+    }
+
+    /**
+     * Ends the transaction of a batch, committing it if it was marked successful, and notifies
+     * observers if the committed batch changed anything.
+     *
+     * @param db The database
+     * @param batch The batch returned by {@link #beginBatch(SQLiteDatabase)}
+     */
+    private void endBatch(SQLiteDatabase db, Batch batch) {
+        try {
+            db.endTransaction();
+        } finally {
+            mBatch.set(null);
+            batch.insert.close();
+        }
+
+        if (batch.changed && batch.successful) {
+            notifyChange();
+        }
+    }
+
+    /**
+     * Records that the reminder table changed and notifies observers. Inside a batch, observers are
+     * notified once when the batch ends instead.
+     */
+    private void onDataChanged() {
+        Batch batch = mBatch.get();
+        if (batch != null) {
+            batch.changed = true;
+        } else {
+            notifyChange();
+        }
+    }
+
+    /**
+     * Moves the reminder data to its next generation and notifies observers of the reminder table
+     * that its contents changed.
+     */
+    private void notifyChange() {
+        sLastWriteGeneration.set(Long.valueOf(sGeneration.incrementAndGet()));
+        getContext().getContentResolver().notifyChange(getContentUri(REMINDER_TABLE), null);
+    }
+
+    private Statement getAllReminders(Uri uri, String[] projection, String selection,
             String[] selectionArgs, String sortOrder) {
-        SQLiteDatabase db = RemindDatabaseHelper.get(getContext()).getWritableDatabase();
-        return db.query(REMINDER_TABLE, projection, selection, selectionArgs, null, null,
-                sortOrder);
+        return new Statement(SQLiteQueryBuilder.buildQueryString(false, REMINDER_TABLE, projection,
+                selection, null, null,
+                sortOrder != null ? sortOrder : ReminderColumns.DEFAULT_SORT_ORDER,
+                uri.getQueryParameter(PARAM_LIMIT)), selectionArgs);
     }
 
-    private Cursor getReminder(long id, String[] projection) {
-        SQLiteDatabase db = RemindDatabaseHelper.get(getContext()).getWritableDatabase();
-        return db.query(REMINDER_TABLE, projection, ReminderColumns._ID + "=?",
-                new String[] { Long.toString(id) }, null, null, null);
+    /**
+     * Runs a query, timed.
+     *
+     * @param uri The URI the query is for
+     * @param statement The query
+     * @param start When the call for the query started, from {@link System#nanoTime()}
+     * @return The cursor
+     */
+    private Cursor runQuery(Uri uri, Statement statement, long start) {
+        // With the write-ahead log, runs on a read connection, alongside any write
+        SQLiteDatabase db = RemindDatabaseHelper.get(getContext()).getReadableDatabase();
+        return new TimedCursor((CrossProcessCursor) db.rawQuery(statement.sql, statement.args),
+                uri, statement, Binder.getCallingUid(), System.nanoTime() - start);
+    }
+
+    /**
+     * Merges the first one-shot reminders due with every recurring reminder, placed at its next
+     * occurrence: the few recurring reminders can be due at any time, whatever their own time.
+     */
+    private Cursor getUpcomingReminders(Uri uri, String[] projection) {
+        final String after = uri.getQueryParameter(PARAM_AFTER);
+        final long afterTime = after != null ? Long.parseLong(after) : System.currentTimeMillis();
+        final String limit = uri.getQueryParameter(PARAM_LIMIT);
+        final int count = limit != null ? Integer.parseInt(limit) : ReminderStore.NO_LIMIT;
+        UpcomingReminders upcoming = new UpcomingReminders(afterTime, count);
+
+        String oneShot = UPCOMING_ONE_SHOT_SQL;
+        if (count != ReminderStore.NO_LIMIT) {
+            oneShot += " LIMIT " + count;
+        }
+        SqliteReminderStore.visit(runQuery(uri, new Statement(oneShot,
+                new String[] { Long.toString(afterTime) }), System.nanoTime()), upcoming);
+        SqliteReminderStore.visit(runQuery(uri, new Statement(UPCOMING_RECURRING_SQL, null),
+                System.nanoTime()), upcoming);
+
+        return RemindData.toCursor(upcoming, projection);
+    }
+
+    /**
+     * @return The statement, or {@code null} if the search text has nothing to look for
+     */
+    private Statement searchReminders(Uri uri, String[] projection) {
+        if (projection == null) {
+            projection = ReminderColumns.PROJECTION;
+        }
+
+        final SearchQuery query = new SearchQuery(uri.getQueryParameter(PARAM_QUERY));
+        if (query.isEmpty()) {
+            return null;
+        }
+
+        // Both tables have a title column, so every column is qualified
+        StringBuilder columns = new StringBuilder();
+        for (String column : projection) {
+            if (columns.length() > 0) {
+                columns.append(", ");
+            }
+            columns.append(REMINDER_TABLE).append('.').append(column);
+        }
+
+        String sql = String.format(SEARCH_REMINDERS_SQL, columns);
+        final String limit = uri.getQueryParameter(PARAM_LIMIT);
+        if (limit != null) {
+            sql += " LIMIT " + Integer.parseInt(limit);
+        }
+
+        // SQLite counts characters in code points
+        final String text = query.getText();
+        final int length = text.codePointCount(0, text.length());
+        return new Statement(sql,
+                new String[] { query.toFtsQuery(), Integer.toString(length), text });
+    }
+
+    private Statement getReminder(long id, String[] projection) {
+        // The framework keeps the compiled query of every connection by SQL, so the usual
+        // projection always gets the same SQL
+        final String sql = projection == ReminderColumns.PROJECTION ? GET_REMINDER_SQL
+                : SQLiteQueryBuilder.buildQueryString(false, REMINDER_TABLE, projection,
+                        ReminderColumns._ID + "=?", null, null, null, null);
+        return new Statement(sql, new String[] { Long.toString(id) });
     }
 
     private int updateReminder(long parseId, ContentValues values) {
+        final long start = System.nanoTime();
         SQLiteDatabase db = RemindDatabaseHelper.get(getContext()).getWritableDatabase();
-        return db.update(REMINDER_TABLE, values, ReminderColumns._ID + "=?",
-                new String[] { Long.toString(parseId) });
+        int count;
+        if (StatementCache.isSupported() && isWholeReminder(values)) {
+            // No lock is held while it runs, since it may wait for the database
+            SQLiteStatement update = mStatements.acquire(db, UPDATE_REMINDER_SQL);
+            try {
+                bindString(update, 1, values.getAsString(ReminderColumns.TITLE));
+                bindLong(update, 2, values.getAsLong(ReminderColumns.TIME));
+                bindLong(update, 3, values.getAsLong(ReminderColumns.RECURRENCE));
+                update.bindLong(4, parseId);
+                count = update.executeUpdateDelete();
+            } finally {
+                mStatements.release(db, UPDATE_REMINDER_SQL, update);
+            }
+        } else {
+            count = db.update(REMINDER_TABLE, values, ReminderColumns._ID + "=?",
+                    new String[] { Long.toString(parseId) });
+        }
+        if (count > 0) {
+            onDataChanged();
+        }
+        RemindStats.PROVIDER_UPDATE.recordSince(start);
+        return count;
     }
 
-    private int deleteAllReminders() {
+    private int deleteReminders(Uri uri, String selection, String[] selectionArgs) {
+        // One statement, one transaction, no matter how many rows the selection matches
+        final long start = System.nanoTime();
         SQLiteDatabase db = RemindDatabaseHelper.get(getContext()).getWritableDatabase();
-        return db.delete(REMINDER_TABLE, null, null);
+        int count;
+        db.beginTransaction();
+        try {
+            count = db.delete(REMINDER_TABLE, selection, selectionArgs);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        if (count > 0) {
+            onDataChanged();
+        }
+
+        // The selection comes from the caller, and may not use any index
+        final long nanos = System.nanoTime() - start;
+        RemindStats.PROVIDER_DELETE.record(nanos);
+        onStatementRun(uri, new Statement("DELETE FROM " + REMINDER_TABLE
+                + (selection != null ? " WHERE " + selection : ""), selectionArgs), count, nanos,
+                Binder.getCallingUid());
+        return count;
     }
 
     private int deleteReminder(long parseId) {
+        final long start = System.nanoTime();
         SQLiteDatabase db = RemindDatabaseHelper.get(getContext()).getWritableDatabase();
-        return db.delete(REMINDER_TABLE, ReminderColumns._ID + "=?",
-                new String[] { Long.toString(parseId) });
+        int count;
+        if (StatementCache.isSupported()) {
+            SQLiteStatement delete = mStatements.acquire(db, DELETE_REMINDER_SQL);
+            try {
+                delete.bindLong(1, parseId);
+                count = delete.executeUpdateDelete();
+            } finally {
+                mStatements.release(db, DELETE_REMINDER_SQL, delete);
+            }
+        } else {
+            count = db.delete(REMINDER_TABLE, ReminderColumns._ID + "=?",
+                    new String[] { Long.toString(parseId) });
+        }
+        if (count > 0) {
+            onDataChanged();
+        }
+        RemindStats.PROVIDER_DELETE.recordSince(start);
+        return count;
+    }
+
+    /**
+     * @return Whether some values set every user supplied column of a reminder, and nothing else,
+     *     as {@link #UPDATE_REMINDER_SQL} does
+     */
+    private static boolean isWholeReminder(ContentValues values) {
+        return values.size() == 3 && values.containsKey(ReminderColumns.TITLE)
+                && values.containsKey(ReminderColumns.TIME)
+                && values.containsKey(ReminderColumns.RECURRENCE);
+    }
+
+    private static void bindString(SQLiteStatement statement, int index, String value) {
+        if (value != null) {
+            statement.bindString(index, value);
+        } else {
+            statement.bindNull(index);
+        }
+    }
+
+    private static void bindLong(SQLiteStatement statement, int index, Long value) {
+        if (value != null) {
+            statement.bindLong(index, value.longValue());
+        } else {
+            statement.bindNull(index);
+        }
+    }
+
+    /**
+     * @return One row of {@link StatsColumns} per histogram of {@link RemindStats}
+     */
+    private static Cursor getStats() {
+        final LatencyHistogram[] histograms = RemindStats.getAll();
+        MatrixCursor cursor = new MatrixCursor(StatsColumns.PROJECTION, histograms.length);
+        for (LatencyHistogram histogram : histograms) {
+            cursor.addRow(new Object[] {
+                histogram.getName(),
+                histogram.getCount(),
+                toMicros(histogram.getMean()),
+                toMicros(histogram.getPercentile(50)),
+                toMicros(histogram.getPercentile(90)),
+                toMicros(histogram.getPercentile(99)),
+                toMicros(histogram.getMax())
+            });
+        }
+        return cursor;
+    }
+
+    private static long toMicros(long nanos) {
+        return nanos / 1000;
+    }
+
+    /**
+     * Fails unless the caller is this app, for the URIs that only it may use.
+     *
+     * @param uri The URI called
+     * @throws SecurityException If the caller is another app
+     */
+    private static void enforceCallerIsSelf(Uri uri) {
+        if (Binder.getCallingUid() != Process.myUid()) {
+            throw new SecurityException("Only this app may use " + uri.toString());
+        }
+    }
+
+    /**
+     * Adds a statement to {@link RemindStats#SLOW_QUERIES}, with its query plan, if it was slow.
+     *
+     * @param uri The URI it was run for
+     * @param statement The statement
+     * @param rows The number of rows it returned or changed
+     * @param nanos How long it ran, in nanoseconds
+     * @param callingUid UID of the caller it was run for
+     */
+    private void onStatementRun(Uri uri, Statement statement, int rows, long nanos,
+            int callingUid) {
+        if (!RemindStats.SLOW_QUERIES.isSlow(nanos)) {
+            return;
+        }
+
+        String plan;
+        try {
+            plan = explain(statement);
+        } catch (SQLiteException e) {
+            // Never fail the statement for its plan
+            plan = "Could not explain: " + e.getMessage();
+        }
+        RemindStats.SLOW_QUERIES.add(new SlowQueryLog.Entry(System.currentTimeMillis(),
+                callingUid, uri.toString(), statement.sql, plan, rows, nanos));
+    }
+
+    /**
+     * Asks SQLite how it runs a statement.
+     *
+     * @param statement The statement
+     * @return The query plan, one step per line
+     */
+    private String explain(Statement statement) {
+        SQLiteDatabase db = RemindDatabaseHelper.get(getContext()).getReadableDatabase();
+        Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + statement.sql, statement.args);
+        try {
+            // The columns changed across SQLite versions, but the step is always in "detail"
+            final int detail = cursor.getColumnIndex("detail");
+            StringBuilder plan = new StringBuilder();
+            while (cursor.moveToNext()) {
+                if (plan.length() > 0) {
+                    plan.append('\n');
+                }
+                if (detail >= 0) {
+                    plan.append(cursor.getString(detail));
+                } else {
+                    for (int i = 0; i < cursor.getColumnCount(); i++) {
+                        plan.append(i > 0 ? " " : "").append(cursor.getString(i));
+                    }
+                }
+            }
+            return plan.toString();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * @return One row of {@link SlowQueryColumns} per entry of {@link RemindStats#SLOW_QUERIES},
+     *     newest first
+     */
+    private static Cursor getSlowQueries() {
+        final SlowQueryLog.Entry[] entries = RemindStats.SLOW_QUERIES.getEntries();
+        MatrixCursor cursor = new MatrixCursor(SlowQueryColumns.PROJECTION, entries.length);
+        for (SlowQueryLog.Entry entry : entries) {
+            cursor.addRow(new Object[] {
+                entry.time,
+                entry.uid,
+                entry.uri,
+                entry.sql,
+                entry.plan,
+                entry.rows,
+                entry.nanos / 1000000L
+            });
+        }
+        return cursor;
     }
 }
@@ -1,7 +1,9 @@
 package com.niznash.remind.content;
 
 /**
- * Listens to completion of operations done in the service.
+ * Listens to completion of operations done in the service. Every notification carries the new
+ * title, time and recurrence of the created and updated reminders, so listeners can keep their
+ * state up to date without reading the database.
  *
  * @author niznash@gmail.com (Alejandro Nijamkin)
  */
@@ -11,16 +13,22 @@ public class RemindServiceListener {
      * Notifies that a reminder was created.
      *
      * @param id ID of the new reminder
+     * @param title Its title
+     * @param time Its time, its first occurrence if it recurs
+     * @param recurrence Its recurrence rule
      */
-    public void onReminderCreated(long id) {
+    public void onReminderCreated(long id, String title, long time, int recurrence) {
     }
 
     /**
      * Notifies that a reminder was updated.
      *
      * @param id ID of the updated reminder
+     * @param title Its new title
+     * @param time Its new time, its first occurrence if it recurs
+     * @param recurrence Its new recurrence rule
      */
-    public void onReminderUpdated(long id) {
+    public void onReminderUpdated(long id, String title, long time, int recurrence) {
     }
 
     /**
@@ -30,4 +38,59 @@ public class RemindServiceListener {
      */
     public void onReminderDeleted(long id) {
     }
+
+    /**
+     * Notifies that a set of reminders was deleted in a single operation.
+     *
+     * <p>By default, calls {@link #onReminderDeleted(long)} for each ID. Override to handle the
+     * whole set at once.
+     *
+     * @param ids IDs of the deleted reminders
+     */
+    public void onRemindersDeleted(long[] ids) {
+        for (long id : ids) {
+            onReminderDeleted(id);
+        }
+    }
+
+    /**
+     * Notifies that a service operation changed reminders.
+     *
+     * <p>By default, calls {@link #onReminderCreated(long, String, long, int)} and
+     * {@link #onReminderUpdated(long, String, long, int)} for each created and updated reminder,
+     * and {@link #onRemindersDeleted(long[])} once for all the deleted ones. Override to handle
+     * the whole change at once.
+     *
+     * @param delta The change, made by one or more operations committed together
+     */
+    public void onRemindersChanged(ReminderDelta delta) {
+        int deletedCount = 0;
+        final int size = delta.size();
+        for (int i = 0; i < size; i++) {
+            switch (delta.getKind(i)) {
+                case ReminderDelta.INSERTED:
+                    onReminderCreated(delta.getId(i), delta.getTitle(i), delta.getTime(i),
+                            delta.getRecurrence(i));
+                    break;
+                case ReminderDelta.UPDATED:
+                    onReminderUpdated(delta.getId(i), delta.getTitle(i), delta.getTime(i),
+                            delta.getRecurrence(i));
+                    break;
+                case ReminderDelta.DELETED:
+                    deletedCount++;
+                    break;
+            }
+        }
+
+        if (deletedCount > 0) {
+            long[] ids = new long[deletedCount];
+            int j = 0;
+            for (int i = 0; i < size; i++) {
+                if (delta.getKind(i) == ReminderDelta.DELETED) {
+                    ids[j++] = delta.getId(i);
+                }
+            }
+            onRemindersDeleted(ids);
+        }
+    }
 }
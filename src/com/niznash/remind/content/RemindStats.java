@@ -0,0 +1,70 @@
+package com.niznash.remind.content;
+
+import com.niznash.remind.util.LatencyHistogram;
+
+/**
+ * Latency histograms of the operations of the provider and the service, readable and resettable
+ * through the {@code stats} URI of {@link RemindProvider}, so percentiles can be compared across
+ * releases and devices without a profiler.
+ *
+ * <p>Does not depend on Android.
+ *
+ * @author niznash@gmail.com (Alejandro Nijamkin)
+ */
+public class RemindStats {
+
+    /** Provider queries of reminders, run to the end */
+    public static final LatencyHistogram PROVIDER_QUERY = new LatencyHistogram("provider.query");
+
+    /** Provider inserts, updates and deletes, each on its own or as part of a batch */
+    public static final LatencyHistogram PROVIDER_INSERT =
+        new LatencyHistogram("provider.insert");
+    public static final LatencyHistogram PROVIDER_UPDATE =
+        new LatencyHistogram("provider.update");
+    public static final LatencyHistogram PROVIDER_DELETE =
+        new LatencyHistogram("provider.delete");
+
+    /** Provider batches, bulk inserts included, from the start to the end of their transaction */
+    public static final LatencyHistogram PROVIDER_BATCH = new LatencyHistogram("provider.batch");
+
+    /** Service writes, from when they were started to when they were committed */
+    public static final LatencyHistogram SERVICE_WRITE = new LatencyHistogram("service.write");
+
+    /** Service runs of the due reminders, and rebuilds of the schedule, from start to end */
+    public static final LatencyHistogram SERVICE_FIRE = new LatencyHistogram("service.fire");
+    public static final LatencyHistogram SERVICE_RESCHEDULE =
+        new LatencyHistogram("service.reschedule");
+
+    /** Provider statements slower than its threshold */
+    public static final SlowQueryLog SLOW_QUERIES = new SlowQueryLog(32);
+
+    private static final LatencyHistogram[] ALL = new LatencyHistogram[] {
+        PROVIDER_QUERY,
+        PROVIDER_INSERT,
+        PROVIDER_UPDATE,
+        PROVIDER_DELETE,
+        PROVIDER_BATCH,
+        SERVICE_WRITE,
+        SERVICE_FIRE,
+        SERVICE_RESCHEDULE
+    };
+
+    private RemindStats() {
+    }
+
+    /**
+     * @return Every histogram, in a fixed order
+     */
+    public static LatencyHistogram[] getAll() {
+        return ALL.clone();
+    }
+
+    /**
+     * Resets every histogram. Leaves {@link #SLOW_QUERIES} alone.
+     */
+    public static void reset() {
+        for (LatencyHistogram histogram : ALL) {
+            histogram.reset();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.niznash.remind.content;
+
+import com.niznash.remind.util.Recurrence;
+
+/**
+ * Holds the data of a single reminder. Meant to be reused: fill it with {@link #set} rather than
+ * allocating one per row.
+ *
+ * @author niznash@gmail.com (Alejandro Nijamkin)
+ */
+public class Reminder {
+
+    /** ID of the reminder */
+    public long id;
+
+    /** Title of the reminder */
+    public String title;
+
+    /** Time for the reminder, Unix time; the first occurrence if it recurs */
+    public long time;
+
+    /** How the reminder recurs, see {@link Recurrence} */
+    public int recurrence;
+
+    /**
+     * Sets all the data of the reminder.
+     *
+     * @param id The ID
+     * @param title The title
+     * @param time The time
+     * @param recurrence The recurrence rule
+     */
+    public void set(long id, String title, long time, int recurrence) {
+        this.id = id;
+        this.title = title;
+        this.time = time;
+        this.recurrence = recurrence;
+    }
+}
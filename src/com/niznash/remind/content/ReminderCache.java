@@ -0,0 +1,302 @@
+package com.niznash.remind.content;
+
+import java.util.Arrays;
+
+import com.niznash.remind.util.SlotIndex;
+
+/**
+ * Least-recently-used cache of reminders, keyed by ID.
+ *
+ * <p>Entries live in parallel primitive arrays, chained in recency order through {@code int}
+ * links and found through a {@link SlotIndex}, so neither a lookup nor an insert allocates.
+ *
+ * <p>Also tracks the generation of the reminder data it reflects (see
+ * {@link RemindData#getGeneration()}), so it can tell whether a change notification is for a write
+ * it already knows about.
+ *
+ * <p>Reads that miss fill the cache from the store without holding its lock, so a write may land
+ * in between. Every change made by a writer moves a version forward, and a fill only happens if
+ * the version did not move since the read started (see {@link #getVersion()} and
+ * {@link #fill(long, long, String, long, int)}), so a stale row never replaces a newer write.
+ *
+ * <p>Thread-safe.
+ *
+ * @author niznash@gmail.com (Alejandro Nijamkin)
+ */
+public class ReminderCache {
+
+    // Marks the end of a chain of slots
+    private static final int NONE = -1;
+
+    private final int mCapacity;
+
+    // Entries, by slot, and the slot of each ID
+    private final SlotIndex mIndex;
+    private final long[] mTimes;
+    private final String[] mTitles;
+    private final int[] mRecurrences;
+
+    // Recency chain, most recent at the head; the free slots are chained through mNext too
+    private final int[] mPrev;
+    private final int[] mNext;
+    private int mHead = NONE;
+    private int mTail = NONE;
+    private int mFree;
+    private int mSize;
+
+    private long mHits;
+    private long mMisses;
+    private long mGeneration;
+
+    // Moved forward by every change but fills
+    private long mVersion;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity Maximum number of reminders to hold
+     * @param generation The current generation of the reminder data
+     */
+    public ReminderCache(int capacity, long generation) {
+        mCapacity = Math.max(capacity, 1);
+        mIndex = new SlotIndex(mCapacity);
+        mTimes = new long[mCapacity];
+        mTitles = new String[mCapacity];
+        mRecurrences = new int[mCapacity];
+        mPrev = new int[mCapacity];
+        mNext = new int[mCapacity];
+
+        mGeneration = generation;
+        resetFreeSlots();
+    }
+
+    /**
+     * Looks up a reminder, and marks it as the most recently used.
+     *
+     * @param id The ID of the reminder
+     * @param out Filled with the reminder, if found
+     * @return Whether the reminder was found
+     */
+    public synchronized boolean get(long id, Reminder out) {
+        final int slot = mIndex.find(id);
+        if (slot == SlotIndex.NONE) {
+            mMisses++;
+            return false;
+        }
+
+        mHits++;
+        moveToHead(slot);
+        out.set(id, mTitles[slot], mTimes[slot], mRecurrences[slot]);
+        return true;
+    }
+
+    /**
+     * Adds or replaces a reminder, evicting the least recently used one if full.
+     *
+     * @param id The ID of the reminder
+     * @param title Its title
+     * @param time Its time
+     * @param recurrence Its recurrence rule
+     */
+    public synchronized void put(long id, String title, long time, int recurrence) {
+        mVersion++;
+        store(id, title, time, recurrence);
+    }
+
+    /**
+     * @return The version of the cache, to pass to {@link #fill(long, long, String, long, int)}:
+     *     read it before reading the reminder from the store
+     */
+    public synchronized long getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * Adds a reminder read from the store after a miss, unless some write changed the cache since
+     * the read started: the row read may be older than that write.
+     *
+     * @param version The version of the cache from before the reminder was read
+     * @param id The ID of the reminder
+     * @param title Its title
+     * @param time Its time
+     * @param recurrence Its recurrence rule
+     * @return Whether the reminder was added
+     */
+    public synchronized boolean fill(long version, long id, String title, long time,
+            int recurrence) {
+        if (version != mVersion) {
+            return false;
+        }
+        store(id, title, time, recurrence);
+        return true;
+    }
+
+    /**
+     * Adds or replaces a reminder, evicting the least recently used one if full. Must be called
+     * with the cache locked.
+     */
+    private void store(long id, String title, long time, int recurrence) {
+        int slot = mIndex.find(id);
+        if (slot == SlotIndex.NONE) {
+            if (mSize == mCapacity) {
+                removeSlot(mTail);
+            }
+
+            slot = mFree;
+            mFree = mNext[slot];
+            mIndex.add(slot, id);
+            linkAtHead(slot);
+            mSize++;
+        } else {
+            moveToHead(slot);
+        }
+
+        mTitles[slot] = title;
+        mTimes[slot] = time;
+        mRecurrences[slot] = recurrence;
+    }
+
+    /**
+     * Removes a reminder, if present.
+     *
+     * @param id The ID of the reminder
+     */
+    public synchronized void remove(long id) {
+        mVersion++;
+        final int slot = mIndex.find(id);
+        if (slot != SlotIndex.NONE) {
+            removeSlot(slot);
+        }
+    }
+
+    /**
+     * Removes all reminders.
+     */
+    public synchronized void clear() {
+        mVersion++;
+        mIndex.clear();
+        Arrays.fill(mTitles, null);
+        mHead = NONE;
+        mTail = NONE;
+        mSize = 0;
+        resetFreeSlots();
+    }
+
+    /**
+     * Evicts the least recently used reminders until at most {@code size} are left.
+     *
+     * @param size The number of reminders to keep
+     */
+    public synchronized void trimToSize(int size) {
+        while (mSize > size) {
+            removeSlot(mTail);
+        }
+    }
+
+    /**
+     * Records that this cache was written through with the changes of a write.
+     *
+     * <p>If the write skipped a generation, some other write went unseen and the cache is
+     * cleared.
+     *
+     * @param generation The generation produced by the write
+     */
+    public synchronized void onWrite(long generation) {
+        mVersion++;
+        if (generation > mGeneration + 1) {
+            clear();
+        }
+        mGeneration = Math.max(mGeneration, generation);
+    }
+
+    /**
+     * Records that the reminder data changed. Unless this cache already reflects the given
+     * generation, it is cleared.
+     *
+     * @param generation The current generation of the reminder data
+     */
+    public synchronized void onChange(long generation) {
+        if (generation != mGeneration) {
+            clear();
+            mGeneration = generation;
+        }
+    }
+
+    /**
+     * @return The number of reminders in the cache
+     */
+    public synchronized int size() {
+        return mSize;
+    }
+
+    /**
+     * @return The maximum number of reminders the cache holds
+     */
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    /**
+     * @return The number of lookups that found their reminder
+     */
+    public synchronized long getHitCount() {
+        return mHits;
+    }
+
+    /**
+     * @return The number of lookups that did not find their reminder
+     */
+    public synchronized long getMissCount() {
+        return mMisses;
+    }
+
+    private void removeSlot(int slot) {
+        mIndex.remove(slot);
+        unlink(slot);
+        mTitles[slot] = null;
+        mNext[slot] = mFree;
+        mFree = slot;
+        mSize--;
+    }
+
+    private void linkAtHead(int slot) {
+        mPrev[slot] = NONE;
+        mNext[slot] = mHead;
+        if (mHead != NONE) {
+            mPrev[mHead] = slot;
+        }
+        mHead = slot;
+        if (mTail == NONE) {
+            mTail = slot;
+        }
+    }
+
+    private void unlink(int slot) {
+        final int prev = mPrev[slot];
+        final int next = mNext[slot];
+        if (prev != NONE) {
+            mNext[prev] = next;
+        } else {
+            mHead = next;
+        }
+        if (next != NONE) {
+            mPrev[next] = prev;
+        } else {
+            mTail = prev;
+        }
+    }
+
+    private void moveToHead(int slot) {
+        if (slot != mHead) {
+            unlink(slot);
+            linkAtHead(slot);
+        }
+    }
+
+    private void resetFreeSlots() {
+        for (int i = 0; i < mCapacity; i++) {
+            mNext[i] = i + 1 < mCapacity ? i + 1 : NONE;
+        }
+        mFree = 0;
+    }
+}
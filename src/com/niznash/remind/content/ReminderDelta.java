@@ -0,0 +1,199 @@
+package com.niznash.remind.content;
+
+import com.niznash.remind.util.Recurrence;
+
+/**
+ * Row-level description of a change to the reminder data: which reminders were inserted, updated
+ * or deleted and, for inserts and updates, their new title, time and recurrence.
+ *
+ * <p>Also describes a batch of writes to make, see {@link ReminderStore#apply(ReminderDelta)}.
+ *
+ * <p>Backed by growable parallel arrays so building one does not allocate per row.
+ *
+ * <p>Does not depend on Android.
+ *
+ * @author niznash@gmail.com (Alejandro Nijamkin)
+ */
+public class ReminderDelta {
+
+    // Kinds of change
+    public static final int INSERTED = 0;
+    public static final int UPDATED = 1;
+    public static final int DELETED = 2;
+
+    // Same as Intents.NO_VALUE
+    private static final long NO_VALUE = -1;
+
+    private static final int INITIAL_CAPACITY = 4;
+
+    private int mSize;
+    private int[] mKinds;
+    private long[] mIds;
+    private long[] mTimes;
+    private String[] mTitles;
+    private int[] mRecurrences;
+
+    // Generation of the data after this change, see RemindData#getGeneration()
+    private long mGeneration = NO_VALUE;
+
+    /**
+     * Constructor.
+     */
+    public ReminderDelta() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param capacity The number of changes to make room for
+     */
+    public ReminderDelta(int capacity) {
+        capacity = Math.max(capacity, 1);
+        mKinds = new int[capacity];
+        mIds = new long[capacity];
+        mTimes = new long[capacity];
+        mTitles = new String[capacity];
+        mRecurrences = new int[capacity];
+    }
+
+    /**
+     * Records that a reminder was inserted.
+     *
+     * @param id The ID of the new reminder
+     * @param title Its title
+     * @param time Its time
+     * @param recurrence Its recurrence rule
+     */
+    public void addInserted(long id, String title, long time, int recurrence) {
+        add(INSERTED, id, title, time, recurrence);
+    }
+
+    /**
+     * Records that a reminder was updated.
+     *
+     * @param id The ID of the reminder
+     * @param title Its new title
+     * @param time Its new time
+     * @param recurrence Its new recurrence rule
+     */
+    public void addUpdated(long id, String title, long time, int recurrence) {
+        add(UPDATED, id, title, time, recurrence);
+    }
+
+    /**
+     * Records that a reminder was deleted.
+     *
+     * @param id The ID of the deleted reminder
+     */
+    public void addDeleted(long id) {
+        add(DELETED, id, null, NO_VALUE, Recurrence.NONE);
+    }
+
+    /**
+     * Records that a set of reminders was deleted.
+     *
+     * @param ids The IDs of the deleted reminders
+     */
+    public void addDeleted(long[] ids) {
+        ensureCapacity(mSize + ids.length);
+        for (long id : ids) {
+            add(DELETED, id, null, NO_VALUE, Recurrence.NONE);
+        }
+    }
+
+    /**
+     * @return The number of changes
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @param index The index of the change, between {@code 0} and {@link #size()}
+     * @return The kind of change: {@link #INSERTED}, {@link #UPDATED} or {@link #DELETED}
+     */
+    public int getKind(int index) {
+        return mKinds[index];
+    }
+
+    /**
+     * @param index The index of the change, between {@code 0} and {@link #size()}
+     * @return The ID of the changed reminder
+     */
+    public long getId(int index) {
+        return mIds[index];
+    }
+
+    /**
+     * @param index The index of the change, between {@code 0} and {@link #size()}
+     * @return The new title of the reminder, {@code null} for deletes
+     */
+    public String getTitle(int index) {
+        return mTitles[index];
+    }
+
+    /**
+     * @param index The index of the change, between {@code 0} and {@link #size()}
+     * @return The new time of the reminder, {@link Intents#NO_VALUE} for deletes
+     */
+    public long getTime(int index) {
+        return mTimes[index];
+    }
+
+    /**
+     * @param index The index of the change, between {@code 0} and {@link #size()}
+     * @return The new recurrence rule of the reminder, {@link Recurrence#NONE} for deletes
+     */
+    public int getRecurrence(int index) {
+        return mRecurrences[index];
+    }
+
+    /**
+     * @return The generation of the reminder data once this change was written, or
+     *     {@link Intents#NO_VALUE} if unknown
+     */
+    public long getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * @param generation The generation of the reminder data once this change was written
+     */
+    public void setGeneration(long generation) {
+        mGeneration = generation;
+    }
+
+    private void add(int kind, long id, String title, long time, int recurrence) {
+        ensureCapacity(mSize + 1);
+        mKinds[mSize] = kind;
+        mIds[mSize] = id;
+        mTitles[mSize] = title;
+        mTimes[mSize] = time;
+        mRecurrences[mSize] = recurrence;
+        mSize++;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= mIds.length) {
+            return;
+        }
+
+        int newCapacity = Math.max(capacity, mIds.length * 2);
+        int[] kinds = new int[newCapacity];
+        long[] ids = new long[newCapacity];
+        long[] times = new long[newCapacity];
+        String[] titles = new String[newCapacity];
+        int[] recurrences = new int[newCapacity];
+        System.arraycopy(mKinds, 0, kinds, 0, mSize);
+        System.arraycopy(mIds, 0, ids, 0, mSize);
+        System.arraycopy(mTimes, 0, times, 0, mSize);
+        System.arraycopy(mTitles, 0, titles, 0, mSize);
+        System.arraycopy(mRecurrences, 0, recurrences, 0, mSize);
+        mKinds = kinds;
+        mIds = ids;
+        mTimes = times;
+        mTitles = titles;
+        mRecurrences = recurrences;
+    }
+}
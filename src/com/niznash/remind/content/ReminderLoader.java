@@ -1,20 +1,120 @@
 package com.niznash.remind.content;
 
+import java.util.Arrays;
+import java.util.Comparator;
+
 import com.niznash.remind.content.RemindProvider.ReminderColumns;
+import com.niznash.remind.util.SearchQuery;
 
 import android.content.Context;
 import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.os.Handler;
 import android.support.v4.content.CursorLoader;
 
 /**
  * Loads reminders using a {@link Cursor}.
  *
+ * <p>Reloads automatically when the reminder data changes. Changes are coalesced: the first change
+ * schedules a reload after the debounce window (see {@link #setDebounce(long)}), and any further
+ * changes within that window are served by that same reload.
+ *
+ * <p>When loading all reminders, the result is a {@link ReminderPagedCursor}: only the first page
+ * is queried here, the rest is fetched as the list scrolls. If, by the time a reload is due, that
+ * cursor has been patched up to the current generation of the data (see
+ * {@link ReminderPagedCursor#apply(ReminderDelta)}), the reload is skipped.
+ *
+ * <p>When a search query is set (see {@link #setQuery(String)}), the result is instead the
+ * reminders whose title matches it, best match first, up to {@link #SEARCH_LIMIT}. Meant to be
+ * called on every keystroke:
+ * <ul>
+ * <li>A query that a newer one superseded is abandoned as soon as it is noticed, before the rows
+ *     are read, which is where SQLite does most of the work. Only then does the newer one start.
+ * <li>When the new query narrows the last one (more was typed) and the last results were complete
+ *     and are still current, the new results are filtered out of them in memory, without a query.
+ * </ul>
+ *
  * @author niznash@gmail.com (Alejandro Nijamkin)
  */
 public class ReminderLoader extends CursorLoader {
 
+    /**
+     * Default debounce window, in milliseconds: about one frame
+     */
+    public static final long DEFAULT_DEBOUNCE = 16;
+
+    /**
+     * Maximum number of reminders found by a search
+     */
+    public static final int SEARCH_LIMIT = 200;
+
+    /**
+     * Results of a search, ranked, and what it takes to tell whether they can be refined.
+     */
+    private static class SearchResults {
+        /** The query */
+        public final SearchQuery query;
+
+        /** The generation of the reminder data the results reflect */
+        public final long generation;
+
+        /** Whether every matching reminder is in the results, rather than the first few */
+        public boolean complete;
+
+        /** The rows, each laid out as {@link ReminderColumns#PROJECTION} */
+        public Object[][] rows;
+
+        public SearchResults(SearchQuery query, long generation) {
+            this.query = query;
+            this.generation = generation;
+        }
+
+        public Cursor toCursor() {
+            MatrixCursor cursor = new MatrixCursor(ReminderColumns.PROJECTION, rows.length);
+            for (Object[] row : rows) {
+                cursor.addRow(row);
+            }
+            return cursor;
+        }
+    }
+
     private final long mReminderId;
 
+    // Current search query, empty when not searching; set on the main thread, read in background
+    private volatile String mQuery = "";
+
+    // Results of the last search, to refine when the next query narrows it; background only
+    private volatile SearchResults mResults;
+
+    // Observes the loaded cursor, calls onContentChanged() on the main thread
+    private final ForceLoadContentObserver mObserver = new ForceLoadContentObserver();
+
+    // Runs the coalesced reload at the end of the debounce window
+    private final Handler mHandler = new Handler();
+    private final Runnable mReload = new Runnable() {
+        public void run() {
+            mReloadPending = false;
+            if (!isUpToDate()) {
+                ReminderLoader.super.onContentChanged();
+            }
+        }
+    };
+
+    // Fetches the pages of the list, on the background thread of ReminderPagedCursor
+    private final ReminderPagedCursor.PageSource mPageSource = new ReminderPagedCursor.PageSource() {
+        public Cursor queryPage(long afterTime, long afterId, long throughTime, long throughId,
+                int limit) {
+            return RemindData.queryReminderPage(getContext(), afterTime, afterId, throughTime,
+                    throughId, limit);
+        }
+    };
+
+    private long mDebounce = DEFAULT_DEBOUNCE;
+    private boolean mReloadPending;
+
+    // The last cursor delivered
+    private Cursor mCursor;
+
     /**
      * Constructor.
      *
@@ -29,7 +129,8 @@ public class ReminderLoader extends CursorLoader {
     /**
      * Constructor.
      *
-     * <p>Loads a single reminder using {@link ReminderColumns#PROJECTION}.
+     * <p>Loads a single reminder using {@link ReminderColumns#PROJECTION}. Unlike the list, it is
+     * not reloaded when the reminder data changes, so it never overwrites edits in progress.
      *
      * @param context The context
      * @param reminderId The ID of the reminder to load
@@ -39,11 +140,201 @@ public class ReminderLoader extends CursorLoader {
         mReminderId = reminderId;
     }
 
+    /**
+     * Sets the window in which changes to the reminder data are coalesced into a single reload.
+     *
+     * @param debounce The window, in milliseconds; {@code 0} reloads on every change
+     */
+    public void setDebounce(long debounce) {
+        mDebounce = debounce;
+    }
+
+    /**
+     * Switches to searching reminders by title, or back to loading them all, and reloads at once.
+     * Must be called on the main thread.
+     *
+     * @param query The search text, as typed; {@code null} or empty to load all reminders
+     */
+    public void setQuery(String query) {
+        query = query != null ? query.trim() : "";
+        if (query.equals(mQuery)) {
+            return;
+        }
+
+        mQuery = query;
+
+        // Skip the debounce, and Loader cancels the load in progress
+        super.onContentChanged();
+    }
+
     @Override
     public Cursor loadInBackground() {
-        String selection = mReminderId != Intents.NO_VALUE ? ReminderColumns._ID + "=?" : null;
-        String[] args =
-            mReminderId != Intents.NO_VALUE ? new String[] { Long.toString(mReminderId) } : null;
-        return RemindData.queryReminders(getContext(), ReminderColumns.PROJECTION, selection, args);
+        // Read the generation first: the query reflects at least every write up to it
+        final long generation = RemindData.getGeneration();
+
+        Cursor cursor;
+        final String query = mQuery;
+        if (mReminderId == Intents.NO_VALUE && query.length() > 0) {
+            cursor = search(new SearchQuery(query), generation);
+            if (cursor == null) {
+                // Superseded, nobody will see the result
+                return null;
+            }
+            cursor.setNotificationUri(getContext().getContentResolver(),
+                    RemindProvider.getContentUri(RemindProvider.REMINDER_TABLE));
+        } else if (mReminderId == Intents.NO_VALUE) {
+            // Fetch the first page now, the rest on demand
+            ReminderPagedCursor paged = new ReminderPagedCursor(mPageSource, generation,
+                    ReminderPagedCursor.DEFAULT_PAGE_SIZE, ReminderPagedCursor.DEFAULT_MAX_PAGES);
+            paged.fetchFirstPage();
+            paged.setNotificationUri(getContext().getContentResolver(),
+                    RemindProvider.getContentUri(RemindProvider.REMINDER_TABLE));
+            cursor = paged;
+        } else {
+            // Not watched for changes: see the constructor
+            cursor = RemindData.queryReminder(getContext(), mReminderId,
+                    ReminderColumns.PROJECTION);
+            if (cursor == null) {
+                return null;
+            }
+
+            // Fill the window here, in the background
+            cursor.getCount();
+            return cursor;
+        }
+
+        // Watch for changes
+        cursor.registerContentObserver(mObserver);
+        return cursor;
+    }
+
+    @Override
+    public void deliverResult(Cursor cursor) {
+        if (!isReset()) {
+            mCursor = cursor;
+        }
+
+        super.deliverResult(cursor);
+    }
+
+    @Override
+    public void onContentChanged() {
+        if (mDebounce <= 0) {
+            if (!isUpToDate()) {
+                super.onContentChanged();
+            }
+        } else if (!mReloadPending) {
+            mReloadPending = true;
+            mHandler.postDelayed(mReload, mDebounce);
+        }
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+
+        mHandler.removeCallbacks(mReload);
+        mReloadPending = false;
+        mCursor = null;
+    }
+
+    /**
+     * Searches the reminders, refining the last search in memory when possible. Runs in the
+     * background.
+     *
+     * @param query The query
+     * @param generation The generation of the reminder data
+     * @return The reminders found, or {@code null} if the query was superseded
+     */
+    private Cursor search(SearchQuery query, long generation) {
+        final SearchResults last = mResults;
+        SearchResults results;
+        if (last != null && last.complete && last.generation == generation
+                && query.narrows(last.query)) {
+            results = refine(last, query);
+        } else {
+            Cursor cursor = RemindData.searchReminders(getContext(), query.getText(), SEARCH_LIMIT);
+            if (cursor == null) {
+                return null;
+            }
+
+            try {
+                // Queries only run as rows are read: a superseded one never has to
+                if (isSuperseded(query)) {
+                    return null;
+                }
+
+                results = new SearchResults(query, generation);
+                ReminderRowMapper mapper = new ReminderRowMapper(cursor);
+                results.rows = new Object[cursor.getCount()][];
+                for (int i = 0; cursor.moveToNext(); i++) {
+                    results.rows[i] = new Object[] {
+                        Long.valueOf(mapper.getId()), mapper.getTitle(),
+                        Long.valueOf(mapper.getTime()), Integer.valueOf(mapper.getRecurrence())
+                    };
+                }
+                results.complete = results.rows.length < SEARCH_LIMIT;
+            } finally {
+                cursor.close();
+            }
+        }
+
+        mResults = results;
+        return isSuperseded(query) ? null : results.toCursor();
+    }
+
+    /**
+     * Filters the results of a search down to those of a narrower query, and ranks them again the
+     * way {@link RemindProvider} does, since the new query may rank them differently.
+     */
+    private static SearchResults refine(SearchResults last, final SearchQuery query) {
+        int count = 0;
+        Object[][] rows = new Object[last.rows.length][];
+        for (Object[] row : last.rows) {
+            if (query.matches((String) row[1])) {
+                rows[count++] = row;
+            }
+        }
+
+        SearchResults results = new SearchResults(query, last.generation);
+        results.complete = true;
+        results.rows = new Object[count][];
+        System.arraycopy(rows, 0, results.rows, 0, count);
+        Arrays.sort(results.rows, new Comparator<Object[]>() {
+            public int compare(Object[] lhs, Object[] rhs) {
+                final String lhsTitle = (String) lhs[1];
+                final String rhsTitle = (String) rhs[1];
+                final boolean lhsPrefix = query.isPrefixOf(lhsTitle);
+                if (lhsPrefix != query.isPrefixOf(rhsTitle)) {
+                    return lhsPrefix ? -1 : 1;
+                }
+
+                final int lhsLength = lhsTitle.codePointCount(0, lhsTitle.length());
+                final int rhsLength = rhsTitle.codePointCount(0, rhsTitle.length());
+                if (lhsLength != rhsLength) {
+                    return lhsLength < rhsLength ? -1 : 1;
+                }
+
+                final int byTime = ((Long) lhs[2]).compareTo((Long) rhs[2]);
+                return byTime != 0 ? byTime : ((Long) lhs[0]).compareTo((Long) rhs[0]);
+            }
+        });
+        return results;
+    }
+
+    /**
+     * @return Whether a newer query was set since a search started
+     */
+    private boolean isSuperseded(SearchQuery query) {
+        return !query.getText().equals(mQuery);
+    }
+
+    /**
+     * @return Whether the last delivered cursor is a snapshot that already reflects the current
+     *     generation of the reminder data
+     */
+    private boolean isUpToDate() {
+        return mCursor instanceof ReminderPagedCursor && !mCursor.isClosed()
+            && ((ReminderPagedCursor) mCursor).getGeneration() == RemindData.getGeneration();
     }
 }
@@ -0,0 +1,719 @@
+package com.niznash.remind.content;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import android.database.AbstractCursor;
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.niznash.remind.content.RemindProvider.ReminderColumns;
+
+/**
+ * Windowed view of all reminders, in {@link ReminderColumns#DEFAULT_SORT_ORDER}, exposed as a
+ * {@link Cursor} with {@link ReminderColumns#PROJECTION}.
+ *
+ * <p>Rows are fetched in pages keyed on {@code (time, _id)}: each page holds the rows after the
+ * last key of the previous page, up to and including its own last key. Pages are fetched in the
+ * background as the cursor moves towards the end of what was fetched so far, and only a bounded
+ * number of pages is kept in memory; pages that were dropped keep their size and key range, and are
+ * fetched again when needed. The count only covers the pages fetched so far, so neither the first
+ * page nor the memory used depend on the total number of reminders.
+ *
+ * <p>While the row under the cursor is being fetched, all its columns are {@code null} (see
+ * {@link #isNull(int)}). Data set observers are notified whenever fetched rows arrive.
+ *
+ * <p>The cursor can also be patched in place with a {@link ReminderDelta} so a change does not
+ * require a new query. All methods but {@link #fetchFirstPage()} must be called on the main thread.
+ *
+ * @author niznash@gmail.com (Alejandro Nijamkin)
+ */
+public class ReminderPagedCursor extends AbstractCursor {
+
+    // Results of apply()
+    public static final int NOT_APPLIED = 0;
+    public static final int APPLIED_IN_PLACE = 1;
+    public static final int APPLIED_STRUCTURAL = 2;
+
+    /**
+     * Default number of rows in a page
+     */
+    public static final int DEFAULT_PAGE_SIZE = 50;
+
+    /**
+     * Default number of pages kept in memory
+     */
+    public static final int DEFAULT_MAX_PAGES = 8;
+
+    /**
+     * Fetches pages of reminders.
+     */
+    public interface PageSource {
+        /**
+         * Queries the reminders after one key and up to (and including) another, in
+         * {@link ReminderColumns#DEFAULT_SORT_ORDER}, with {@link ReminderColumns#PROJECTION}.
+         * Called on a background thread.
+         *
+         * @param afterTime The time of the key to start after, {@link Long#MIN_VALUE} to start at
+         *     the first reminder
+         * @param afterId The ID of the key to start after
+         * @param throughTime The time of the last key to include, {@link Long#MAX_VALUE} for no
+         *     upper bound
+         * @param throughId The ID of the last key to include
+         * @param limit The maximum number of rows, {@link Intents#NO_VALUE} for no limit
+         * @return The rows
+         */
+        Cursor queryPage(long afterTime, long afterId, long throughTime, long throughId, int limit);
+    }
+
+    // Column indexes, as defined by ReminderColumns.PROJECTION
+    private static final int COLUMN_ID = 0;
+    private static final int COLUMN_TITLE = 1;
+    private static final int COLUMN_TIME = 2;
+    private static final int COLUMN_RECURRENCE = 3;
+
+    // Fetches pages for all cursors, one at a time
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor();
+
+    /**
+     * A page of rows, or the bounds of one that is not in memory.
+     */
+    private static class Page {
+        /** Number of rows in the page */
+        public int size;
+
+        /** Key of the last row in the page's range, inclusive */
+        public long lastTime;
+        public long lastId;
+
+        /** The rows, {@code null} when not in memory */
+        public long[] ids;
+        public long[] times;
+        public String[] titles;
+        public int[] recurrences;
+
+        /** Whether the rows are being fetched */
+        public boolean fetching;
+
+        /** When the page was last read, in the units of {@link ReminderPagedCursor#mClock} */
+        public long lastAccess;
+
+        public boolean isLoaded() {
+            return ids != null;
+        }
+    }
+
+    private final PageSource mSource;
+    private final int mPageSize;
+    private final int mMaxPages;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private final ArrayList<Page> mPages = new ArrayList<Page>();
+    private int mCount;
+    private boolean mHasMore = true;
+    private boolean mFetchingNext;
+    private long mClock;
+
+    // Where the current row is: its page and its index in the page
+    private Page mRowPage;
+    private int mRowIndex = -1;
+
+    // Where the last reminder looked up by find() is
+    private Page mFoundPage;
+    private int mFoundIndex;
+
+    // Generation of the reminder data this cursor reflects
+    private long mGeneration;
+
+    // Positions of the rows changed in place by the last call to apply()
+    private int[] mPatchedPositions = new int[0];
+    private int mPatchedCount;
+
+    /**
+     * Constructor. Call {@link #fetchFirstPage()} before handing the cursor out.
+     *
+     * @param source Fetches the pages
+     * @param generation The generation of the reminder data when the cursor is created
+     * @param pageSize Number of rows in a page
+     * @param maxPages Number of pages to keep in memory, at least {@code 2}
+     */
+    public ReminderPagedCursor(PageSource source, long generation, int pageSize, int maxPages) {
+        mSource = source;
+        mGeneration = generation;
+        mPageSize = pageSize;
+        mMaxPages = Math.max(maxPages, 2);
+    }
+
+    /**
+     * Fetches the first page, synchronously. Never call on the UI thread.
+     */
+    public void fetchFirstPage() {
+        Cursor cursor = mSource.queryPage(Long.MIN_VALUE, Long.MIN_VALUE, Long.MAX_VALUE,
+                Long.MAX_VALUE, mPageSize);
+        try {
+            appendPage(read(cursor));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * @return The generation of the reminder data this cursor reflects
+     */
+    public long getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Patches the cursor with a change.
+     *
+     * <p>Changes are only applied in generation order: a change the cursor already reflects is
+     * ignored, and one that skips a generation is not applied (the cursor is then stale and needs
+     * to be re-queried). Neither is a change to a reminder the cursor cannot find while some pages
+     * are out of memory, nor one that moves a reminder into a page out of memory or past the last
+     * page fetched. On {@link #APPLIED_STRUCTURAL}, data set observers are notified; on
+     * {@link #APPLIED_IN_PLACE}, no row moved and {@link #getPatchedPosition(int)} tells which
+     * rows changed, nobody is notified.
+     *
+     * @param delta The change
+     * @return {@link #NOT_APPLIED}, {@link #APPLIED_IN_PLACE} or {@link #APPLIED_STRUCTURAL}
+     */
+    public int apply(ReminderDelta delta) {
+        mPatchedCount = 0;
+        if (delta.getGeneration() != mGeneration + 1 || !canApply(delta)) {
+            return NOT_APPLIED;
+        }
+
+        boolean structural = false;
+        final int size = delta.size();
+        for (int i = 0; i < size; i++) {
+            final long id = delta.getId(i);
+            final int position = find(id);
+            switch (delta.getKind(i)) {
+                case ReminderDelta.INSERTED:
+                case ReminderDelta.UPDATED:
+                    if (position >= 0 && mFoundPage.times[mFoundIndex] == delta.getTime(i)) {
+                        // Same place in the order, just patch the rest
+                        mFoundPage.titles[mFoundIndex] = delta.getTitle(i);
+                        mFoundPage.recurrences[mFoundIndex] = delta.getRecurrence(i);
+                        addPatchedPosition(position);
+                    } else {
+                        // A new reminder, or one that moves
+                        if (position >= 0) {
+                            removeRow(mFoundPage, mFoundIndex);
+                        }
+                        insertRow(id, delta.getTitle(i), delta.getTime(i),
+                                delta.getRecurrence(i));
+                        structural = true;
+                    }
+                    break;
+
+                case ReminderDelta.DELETED:
+                    if (position >= 0) {
+                        removeRow(mFoundPage, mFoundIndex);
+                        structural = true;
+                    }
+                    break;
+            }
+        }
+
+        mGeneration = delta.getGeneration();
+        if (structural) {
+            onStructureChanged();
+            return APPLIED_STRUCTURAL;
+        }
+
+        return APPLIED_IN_PLACE;
+    }
+
+    /**
+     * @return The number of rows changed in place by the last call to {@link #apply(ReminderDelta)}
+     */
+    public int getPatchedCount() {
+        return mPatchedCount;
+    }
+
+    /**
+     * @param index Between {@code 0} and {@link #getPatchedCount()}
+     * @return The position of a row changed in place by the last call to
+     *     {@link #apply(ReminderDelta)}
+     */
+    public int getPatchedPosition(int index) {
+        return mPatchedPositions[index];
+    }
+
+    /**
+     * Finds a reminder among the rows in memory.
+     *
+     * @param id The ID of a reminder
+     * @return Its position, or {@code -1} if it is not in memory
+     */
+    public int indexOf(long id) {
+        return find(id);
+    }
+
+    @Override
+    public int getCount() {
+        return mCount;
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return ReminderColumns.PROJECTION;
+    }
+
+    @Override
+    public boolean onMove(int oldPosition, int newPosition) {
+        // Find the page of the new position
+        int start = 0;
+        int index = 0;
+        final int pageCount = mPages.size();
+        while (index < pageCount && start + mPages.get(index).size <= newPosition) {
+            start += mPages.get(index).size;
+            index++;
+        }
+        if (index == pageCount) {
+            return false;
+        }
+
+        Page page = mPages.get(index);
+        mRowPage = page;
+        mRowIndex = newPosition - start;
+        page.lastAccess = ++mClock;
+
+        if (!page.isLoaded()) {
+            fetchPage(index);
+        }
+
+        // Getting close to the end of what was fetched: fetch more
+        if (mHasMore && newPosition >= mCount - mPageSize / 2) {
+            fetchNextPage();
+        }
+
+        return true;
+    }
+
+    @Override
+    public String getString(int column) {
+        if (!mRowPage.isLoaded()) {
+            return null;
+        }
+
+        switch (column) {
+            case COLUMN_TITLE:
+                return mRowPage.titles[mRowIndex];
+            case COLUMN_ID:
+                return Long.toString(mRowPage.ids[mRowIndex]);
+            case COLUMN_TIME:
+                return Long.toString(mRowPage.times[mRowIndex]);
+            case COLUMN_RECURRENCE:
+                return Integer.toString(mRowPage.recurrences[mRowIndex]);
+            default:
+                throw new IllegalArgumentException("No such column: " + column);
+        }
+    }
+
+    @Override
+    public long getLong(int column) {
+        if (!mRowPage.isLoaded()) {
+            return Intents.NO_VALUE;
+        }
+
+        switch (column) {
+            case COLUMN_ID:
+                return mRowPage.ids[mRowIndex];
+            case COLUMN_TIME:
+                return mRowPage.times[mRowIndex];
+            case COLUMN_RECURRENCE:
+                return mRowPage.recurrences[mRowIndex];
+            default:
+                return Long.parseLong(getString(column));
+        }
+    }
+
+    @Override
+    public short getShort(int column) {
+        return (short) getLong(column);
+    }
+
+    @Override
+    public int getInt(int column) {
+        return (int) getLong(column);
+    }
+
+    @Override
+    public float getFloat(int column) {
+        return getLong(column);
+    }
+
+    @Override
+    public double getDouble(int column) {
+        return getLong(column);
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        return !mRowPage.isLoaded() || (column == COLUMN_TITLE && getString(column) == null);
+    }
+
+    /**
+     * Reads the rows of a cursor into a page. Runs in the background.
+     */
+    private Page read(Cursor cursor) {
+        final int count = cursor.getCount();
+        Page page = new Page();
+        page.ids = new long[Math.max(count, 1)];
+        page.times = new long[page.ids.length];
+        page.titles = new String[page.ids.length];
+        page.recurrences = new int[page.ids.length];
+
+        final int idColumn = cursor.getColumnIndexOrThrow(ReminderColumns._ID);
+        final int titleColumn = cursor.getColumnIndexOrThrow(ReminderColumns.TITLE);
+        final int timeColumn = cursor.getColumnIndexOrThrow(ReminderColumns.TIME);
+        final int recurrenceColumn = cursor.getColumnIndexOrThrow(ReminderColumns.RECURRENCE);
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            page.ids[page.size] = cursor.getLong(idColumn);
+            page.titles[page.size] = cursor.getString(titleColumn);
+            page.times[page.size] = cursor.getLong(timeColumn);
+            page.recurrences[page.size] = cursor.getInt(recurrenceColumn);
+            page.size++;
+        }
+        return page;
+    }
+
+    /**
+     * Adds a freshly fetched page after the last one.
+     */
+    private void appendPage(Page page) {
+        if (page.size == mPageSize) {
+            // There may be more: the page's range ends with its last row
+            page.lastTime = page.times[page.size - 1];
+            page.lastId = page.ids[page.size - 1];
+        } else {
+            // That's all there is: the last page takes in everything after the previous one
+            page.lastTime = Long.MAX_VALUE;
+            page.lastId = Long.MAX_VALUE;
+            mHasMore = false;
+        }
+
+        page.lastAccess = ++mClock;
+        mPages.add(page);
+        mCount += page.size;
+    }
+
+    /**
+     * Fetches the page after the last one, in the background.
+     */
+    private void fetchNextPage() {
+        if (mFetchingNext || mPages.isEmpty()) {
+            return;
+        }
+
+        mFetchingNext = true;
+        final Page last = mPages.get(mPages.size() - 1);
+        final long afterTime = last.lastTime;
+        final long afterId = last.lastId;
+        final long generation = mGeneration;
+        sExecutor.execute(new Runnable() {
+            public void run() {
+                Cursor cursor = mSource.queryPage(afterTime, afterId, Long.MAX_VALUE,
+                        Long.MAX_VALUE, mPageSize);
+                final Page page;
+                try {
+                    page = read(cursor);
+                } finally {
+                    cursor.close();
+                }
+
+                mHandler.post(new Runnable() {
+                    public void run() {
+                        mFetchingNext = false;
+                        if (isClosed() || !mHasMore || mPages.get(mPages.size() - 1) != last) {
+                            // Closed or changed while fetching, this page may no longer fit
+                            return;
+                        }
+
+                        if (mGeneration != generation) {
+                            // Patched while fetching, the page may miss the patch: fetch it again
+                            fetchNextPage();
+                            return;
+                        }
+
+                        appendPage(page);
+                        evictPages(page);
+                        onStructureChanged();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Fetches a page that is not in memory, in the background.
+     */
+    private void fetchPage(int index) {
+        final Page page = mPages.get(index);
+        if (page.fetching) {
+            return;
+        }
+
+        page.fetching = true;
+        final long afterTime = index > 0 ? mPages.get(index - 1).lastTime : Long.MIN_VALUE;
+        final long afterId = index > 0 ? mPages.get(index - 1).lastId : Long.MIN_VALUE;
+        final long throughTime = page.lastTime;
+        final long throughId = page.lastId;
+        final long generation = mGeneration;
+        sExecutor.execute(new Runnable() {
+            public void run() {
+                Cursor cursor = mSource.queryPage(afterTime, afterId, throughTime, throughId,
+                        Intents.NO_VALUE);
+                final Page fetched;
+                try {
+                    fetched = read(cursor);
+                } finally {
+                    cursor.close();
+                }
+
+                mHandler.post(new Runnable() {
+                    public void run() {
+                        page.fetching = false;
+                        final int index = mPages.indexOf(page);
+                        if (isClosed() || index < 0) {
+                            return;
+                        }
+                        if (mGeneration != generation) {
+                            // Patched while fetching, the rows may miss the patch: fetch again
+                            fetchPage(index);
+                            return;
+                        }
+
+                        mCount += fetched.size - page.size;
+                        page.size = fetched.size;
+                        page.ids = fetched.ids;
+                        page.times = fetched.times;
+                        page.titles = fetched.titles;
+                        page.recurrences = fetched.recurrences;
+                        evictPages(page);
+                        onStructureChanged();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Drops the least recently read pages from memory until at most {@link #mMaxPages} are left.
+     *
+     * @param keep A page not to drop
+     */
+    private void evictPages(Page keep) {
+        int loaded = 0;
+        for (Page page : mPages) {
+            if (page.isLoaded()) {
+                loaded++;
+            }
+        }
+
+        while (loaded > mMaxPages) {
+            Page oldest = null;
+            for (Page page : mPages) {
+                if (page.isLoaded() && page != keep
+                        && (oldest == null || page.lastAccess < oldest.lastAccess)) {
+                    oldest = page;
+                }
+            }
+
+            oldest.ids = null;
+            oldest.times = null;
+            oldest.titles = null;
+            oldest.recurrences = null;
+            loaded--;
+        }
+    }
+
+    private boolean hasEvictedPages() {
+        for (Page page : mPages) {
+            if (!page.isLoaded()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds a reminder among the rows in memory, and leaves its page and index in
+     * {@link #mFoundPage} and {@link #mFoundIndex}.
+     *
+     * @return Its position, or {@code -1} if it is not in memory
+     */
+    private int find(long id) {
+        int start = 0;
+        for (Page page : mPages) {
+            if (page.isLoaded()) {
+                for (int i = 0; i < page.size; i++) {
+                    if (page.ids[i] == id) {
+                        mFoundPage = page;
+                        mFoundIndex = i;
+                        return start + i;
+                    }
+                }
+            }
+            start += page.size;
+        }
+        return -1;
+    }
+
+    /**
+     * Whether every change in a delta can be applied: updates and deletes need to find the old row,
+     * which is impossible to rule out while some pages are out of memory, and a row that is
+     * inserted or moves needs a page in memory to go to.
+     */
+    private boolean canApply(ReminderDelta delta) {
+        final boolean evicted = hasEvictedPages();
+        final int size = delta.size();
+        for (int i = 0; i < size; i++) {
+            final int kind = delta.getKind(i);
+            if (kind == ReminderDelta.DELETED) {
+                if (evicted && find(delta.getId(i)) < 0) {
+                    return false;
+                }
+                continue;
+            }
+
+            final int position = find(delta.getId(i));
+            if (kind == ReminderDelta.UPDATED && evicted && position < 0) {
+                return false;
+            }
+            if (position >= 0 && mFoundPage.times[mFoundIndex] == delta.getTime(i)) {
+                // Patched where it is
+                continue;
+            }
+
+            // Page ranges never change while a delta is applied, so this is where it will go
+            if (!canInsertRow(delta.getId(i), delta.getTime(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return Whether {@link #insertRow(long, String, long, int)} can place a row with a key: a
+     *     row past the last page fetched, or in a page out of memory, would leave the cursor with
+     *     a gap or positions that have no row
+     */
+    private boolean canInsertRow(long id, long time) {
+        if (mPages.isEmpty()) {
+            return !mHasMore;
+        }
+
+        final Page page = findPage(id, time);
+        return page != null && page.isLoaded();
+    }
+
+    /**
+     * @return The page whose range covers a key, or {@code null} if it is past the last page
+     */
+    private Page findPage(long id, long time) {
+        for (Page page : mPages) {
+            if (time < page.lastTime || (time == page.lastTime && id <= page.lastId)) {
+                return page;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Inserts a row into the page whose range covers its key. Only call once
+     * {@link #canInsertRow(long, long)} said it can.
+     */
+    private void insertRow(long id, String title, long time, int recurrence) {
+        if (mPages.isEmpty()) {
+            Page page = new Page();
+            page.ids = new long[1];
+            page.times = new long[1];
+            page.titles = new String[1];
+            page.recurrences = new int[1];
+            page.lastTime = Long.MAX_VALUE;
+            page.lastId = Long.MAX_VALUE;
+            mPages.add(page);
+        }
+
+        final Page page = findPage(id, time);
+        mCount++;
+
+        // Binary search for the first row that sorts after (time, id)
+        int low = 0;
+        int high = page.size;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (page.times[mid] < time || (page.times[mid] == time && page.ids[mid] < id)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        if (page.size == page.ids.length) {
+            final int capacity = page.ids.length * 2;
+            long[] ids = new long[capacity];
+            long[] times = new long[capacity];
+            String[] titles = new String[capacity];
+            int[] recurrences = new int[capacity];
+            System.arraycopy(page.ids, 0, ids, 0, page.size);
+            System.arraycopy(page.times, 0, times, 0, page.size);
+            System.arraycopy(page.titles, 0, titles, 0, page.size);
+            System.arraycopy(page.recurrences, 0, recurrences, 0, page.size);
+            page.ids = ids;
+            page.times = times;
+            page.titles = titles;
+            page.recurrences = recurrences;
+        }
+
+        System.arraycopy(page.ids, low, page.ids, low + 1, page.size - low);
+        System.arraycopy(page.times, low, page.times, low + 1, page.size - low);
+        System.arraycopy(page.titles, low, page.titles, low + 1, page.size - low);
+        System.arraycopy(page.recurrences, low, page.recurrences, low + 1, page.size - low);
+        page.ids[low] = id;
+        page.times[low] = time;
+        page.titles[low] = title;
+        page.recurrences[low] = recurrence;
+        page.size++;
+    }
+
+    /**
+     * Removes a row from a page. The page's key range stays the same.
+     */
+    private void removeRow(Page page, int index) {
+        final int tail = page.size - index - 1;
+        System.arraycopy(page.ids, index + 1, page.ids, index, tail);
+        System.arraycopy(page.times, index + 1, page.times, index, tail);
+        System.arraycopy(page.titles, index + 1, page.titles, index, tail);
+        System.arraycopy(page.recurrences, index + 1, page.recurrences, index, tail);
+        page.size--;
+        page.titles[page.size] = null;
+        mCount--;
+    }
+
+    /**
+     * Positions may all have shifted: forget the current row and notify data set observers.
+     */
+    private void onStructureChanged() {
+        mPatchedCount = 0;
+        mPos = -1;
+        mRowPage = null;
+        mDataSetObservable.notifyChanged();
+    }
+
+    private void addPatchedPosition(int position) {
+        if (mPatchedCount == mPatchedPositions.length) {
+            int[] positions = new int[Math.max(4, mPatchedCount * 2)];
+            System.arraycopy(mPatchedPositions, 0, positions, 0, mPatchedCount);
+            mPatchedPositions = positions;
+        }
+        mPatchedPositions[mPatchedCount++] = position;
+    }
+}
@@ -0,0 +1,118 @@
+package com.niznash.remind.content;
+
+import android.database.Cursor;
+
+import com.niznash.remind.content.RemindProvider.ReminderColumns;
+
+/**
+ * Reads reminders out of a {@link Cursor} by column name rather than by position. The indexes of
+ * the columns are looked up once, when the mapper is made, so reading a row costs no more than
+ * with hard-coded indexes and allocates nothing but what the cursor does.
+ *
+ * <p>Works with any projection that includes the columns of {@link ReminderColumns#PROJECTION},
+ * in any order; a cursor missing one of them is rejected up front instead of reading the wrong
+ * column on every row.
+ *
+ * @author niznash@gmail.com (Alejandro Nijamkin)
+ */
+public class ReminderRowMapper {
+
+    private final Cursor mCursor;
+    private final int mIdColumn;
+    private final int mTitleColumn;
+    private final int mTimeColumn;
+    private final int mRecurrenceColumn;
+
+    /**
+     * Constructor.
+     *
+     * @param cursor The cursor to read reminders from
+     * @throws IllegalArgumentException If it lacks a column of {@link ReminderColumns#PROJECTION}
+     */
+    public ReminderRowMapper(Cursor cursor) {
+        if (cursor == null) {
+            throw new IllegalArgumentException("Need a cursor to map!");
+        }
+
+        mCursor = cursor;
+        mIdColumn = getColumn(cursor, ReminderColumns._ID);
+        mTitleColumn = getColumn(cursor, ReminderColumns.TITLE);
+        mTimeColumn = getColumn(cursor, ReminderColumns.TIME);
+        mRecurrenceColumn = getColumn(cursor, ReminderColumns.RECURRENCE);
+    }
+
+    /**
+     * Gets a mapper for a cursor, reusing an existing one if it was made for the same cursor.
+     *
+     * @param mapper The existing mapper, or {@code null} if there is none
+     * @param cursor The cursor
+     * @return A mapper for the cursor
+     * @throws IllegalArgumentException If it lacks a column of {@link ReminderColumns#PROJECTION}
+     */
+    public static ReminderRowMapper forCursor(ReminderRowMapper mapper, Cursor cursor) {
+        return mapper != null && mapper.mCursor == cursor ? mapper : new ReminderRowMapper(cursor);
+    }
+
+    /**
+     * @return The cursor the mapper reads from
+     */
+    public Cursor getCursor() {
+        return mCursor;
+    }
+
+    /**
+     * @return Whether the data of the current row is there: a {@link ReminderPagedCursor} leaves
+     *     rows blank until their page arrives
+     */
+    public boolean isLoaded() {
+        return !mCursor.isNull(mTimeColumn);
+    }
+
+    /**
+     * @return The ID of the reminder in the current row
+     */
+    public long getId() {
+        return mCursor.getLong(mIdColumn);
+    }
+
+    /**
+     * @return The title of the reminder in the current row
+     */
+    public String getTitle() {
+        return mCursor.getString(mTitleColumn);
+    }
+
+    /**
+     * @return The time of the reminder in the current row
+     */
+    public long getTime() {
+        return mCursor.getLong(mTimeColumn);
+    }
+
+    /**
+     * @return The recurrence rule of the reminder in the current row
+     */
+    public int getRecurrence() {
+        return mCursor.getInt(mRecurrenceColumn);
+    }
+
+    /**
+     * Copies the reminder in the current row to a holder.
+     *
+     * @param out The holder, meant to be reused from row to row
+     * @return The holder
+     */
+    public Reminder fill(Reminder out) {
+        out.set(mCursor.getLong(mIdColumn), mCursor.getString(mTitleColumn),
+                mCursor.getLong(mTimeColumn), mCursor.getInt(mRecurrenceColumn));
+        return out;
+    }
+
+    private static int getColumn(Cursor cursor, String name) {
+        final int column = cursor.getColumnIndex(name);
+        if (column < 0) {
+            throw new IllegalArgumentException("Cursor has no " + name + " column!");
+        }
+        return column;
+    }
+}
@@ -0,0 +1,139 @@
+package com.niznash.remind.content;
+
+import com.niznash.remind.util.Recurrence;
+
+/**
+ * Storage engine for reminders. Reminders are ordered by their key, the {@code (time, id)} pair,
+ * soonest first with ties broken by ID. The time of a recurring reminder is its first occurrence.
+ *
+ * <p>Implementations must be thread-safe, and must apply every write, including every batch
+ * write, atomically.
+ *
+ * @author niznash@gmail.com (Alejandro Nijamkin)
+ */
+public interface ReminderStore {
+
+    /**
+     * Limit for {@link #query} to return all reminders in range. Same as {@link Intents#NO_VALUE}.
+     */
+    int NO_LIMIT = -1;
+
+    /**
+     * Receives the reminders returned by {@link #query}.
+     */
+    interface Visitor {
+        /**
+         * Called once per reminder, in key order.
+         *
+         * @param id The ID of the reminder
+         * @param title Its title
+         * @param time Its time
+         * @param recurrence Its recurrence rule
+         */
+        void visit(long id, String title, long time, int recurrence);
+    }
+
+    /**
+     * Creates a reminder.
+     *
+     * @param title The title of the reminder
+     * @param time The time to schedule the reminder for, its first occurrence if it recurs
+     * @param recurrence The {@link Recurrence} rule of the reminder
+     * @return The ID of the new reminder
+     */
+    long create(String title, long time, int recurrence);
+
+    /**
+     * Creates a set of one-shot reminders, all or none.
+     *
+     * @param titles The titles of the reminders
+     * @param times The times to schedule the reminders for, one per title
+     * @return The number of reminders created
+     */
+    int create(String[] titles, long[] times);
+
+    /**
+     * Reads a single reminder.
+     *
+     * @param id The ID of the reminder
+     * @param out Filled with the reminder, if found
+     * @return Whether the reminder was found
+     */
+    boolean get(long id, Reminder out);
+
+    /**
+     * Updates an existing reminder.
+     *
+     * @param id The ID of the reminder
+     * @param title Its new title
+     * @param time Its new time
+     * @param recurrence Its new recurrence rule
+     * @return Whether the reminder existed and was updated
+     */
+    boolean update(long id, String title, long time, int recurrence);
+
+    /**
+     * Deletes a reminder.
+     *
+     * @param id The ID of the reminder
+     * @return Whether the reminder existed and was deleted
+     */
+    boolean delete(long id);
+
+    /**
+     * Deletes a set of reminders, all or none.
+     *
+     * @param ids The IDs of the reminders
+     * @return The number of reminders deleted
+     */
+    int delete(long[] ids);
+
+    /**
+     * Applies a batch of writes in order, all or none, as a single write: the generation moves,
+     * and observers are notified, once.
+     *
+     * @param writes The writes: inserts, whose IDs are ignored, updates and deletes
+     * @return The changes made, in order: the inserts with their new IDs, and the updates and
+     *     deletes of the reminders that existed
+     */
+    ReminderDelta apply(ReminderDelta writes);
+
+    /**
+     * Queries the reminders whose key sorts after one key and up to (and including) another.
+     *
+     * @param afterTime The time of the key to start after, {@link Long#MIN_VALUE} to start at the
+     *     first reminder
+     * @param afterId The ID of the key to start after
+     * @param throughTime The time of the last key to include, {@link Long#MAX_VALUE} for no upper
+     *     bound
+     * @param throughId The ID of the last key to include
+     * @param limit The maximum number of reminders to return, or {@link #NO_LIMIT} for all
+     * @param visitor Receives the reminders, in key order
+     * @return The number of reminders returned
+     */
+    int query(long afterTime, long afterId, long throughTime, long throughId, int limit,
+            Visitor visitor);
+
+    /**
+     * Queries every recurring reminder, in no particular order.
+     *
+     * @param visitor Receives the reminders
+     * @return The number of reminders returned
+     */
+    int queryRecurring(Visitor visitor);
+
+    /**
+     * Gets the current generation of the data. The generation moves forward by one with every
+     * write, or batch of writes, that changes something.
+     *
+     * @return The generation
+     */
+    long getGeneration();
+
+    /**
+     * Gets the generation produced by the last write made on the calling thread.
+     *
+     * @return The generation, or {@link Intents#NO_VALUE} if the calling thread made no writes
+     */
+    long getLastWriteGeneration();
+}
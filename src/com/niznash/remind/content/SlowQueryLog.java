@@ -0,0 +1,141 @@
+package com.niznash.remind.content;
+
+/**
+ * The last provider statements that ran for longer than a threshold, with their query plan, in a
+ * ring buffer: once full, every new entry replaces the oldest. Readable, clearable and tunable
+ * through the {@code slow_queries} URI of {@link RemindProvider}, to find the access patterns that
+ * need an index.
+ *
+ * <p>Thread-safe. Does not depend on Android.
+ *
+ * @author niznash@gmail.com (Alejandro Nijamkin)
+ */
+public class SlowQueryLog {
+
+    /**
+     * Threshold a new log starts with, in milliseconds.
+     */
+    public static final long DEFAULT_THRESHOLD_MILLIS = 50;
+
+    /**
+     * A slow statement.
+     */
+    public static class Entry {
+        /** When it finished, Unix time */
+        public final long time;
+
+        /** UID of the caller */
+        public final int uid;
+
+        /** The URI it was run for */
+        public final String uri;
+
+        /** The SQL, without the values of its arguments */
+        public final String sql;
+
+        /** The query plan SQLite chose, one step per line */
+        public final String plan;
+
+        /** The number of rows it returned or changed */
+        public final int rows;
+
+        /** How long it ran, in nanoseconds */
+        public final long nanos;
+
+        public Entry(long time, int uid, String uri, String sql, String plan, int rows,
+                long nanos) {
+            this.time = time;
+            this.uid = uid;
+            this.uri = uri;
+            this.sql = sql;
+            this.plan = plan;
+            this.rows = rows;
+            this.nanos = nanos;
+        }
+    }
+
+    private final Entry[] mEntries;
+
+    // Index the next entry goes to, and the number of entries, guarded by this
+    private int mNext;
+    private int mSize;
+
+    // Read without locking on every statement
+    private volatile long mThresholdNanos = DEFAULT_THRESHOLD_MILLIS * 1000000L;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity The number of entries to keep
+     */
+    public SlowQueryLog(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Need room for at least one entry!");
+        }
+        mEntries = new Entry[capacity];
+    }
+
+    /**
+     * @return The threshold, in milliseconds
+     */
+    public long getThresholdMillis() {
+        return mThresholdNanos / 1000000L;
+    }
+
+    /**
+     * @param millis The threshold, in milliseconds, at least {@code 1}: statements that take at
+     *     least this long are slow. Every slow statement is explained, so a lower threshold would
+     *     slow every statement down.
+     */
+    public void setThresholdMillis(long millis) {
+        if (millis < 1) {
+            throw new IllegalArgumentException("Invalid threshold: " + millis);
+        }
+        mThresholdNanos = millis * 1000000L;
+    }
+
+    /**
+     * @param nanos How long a statement ran, in nanoseconds
+     * @return Whether that is slow, and the statement should be added
+     */
+    public boolean isSlow(long nanos) {
+        return nanos >= mThresholdNanos;
+    }
+
+    /**
+     * Adds an entry, replacing the oldest one if the log is full.
+     *
+     * @param entry The entry
+     */
+    public synchronized void add(Entry entry) {
+        mEntries[mNext] = entry;
+        mNext = (mNext + 1) % mEntries.length;
+        mSize = Math.min(mSize + 1, mEntries.length);
+    }
+
+    /**
+     * @return The entries, newest first
+     */
+    public synchronized Entry[] getEntries() {
+        Entry[] entries = new Entry[mSize];
+        for (int i = 0; i < mSize; i++) {
+            entries[i] = mEntries[(mNext - 1 - i + mEntries.length) % mEntries.length];
+        }
+        return entries;
+    }
+
+    /**
+     * Removes every entry.
+     *
+     * @return The number of entries removed
+     */
+    public synchronized int clear() {
+        final int size = mSize;
+        for (int i = 0; i < mEntries.length; i++) {
+            mEntries[i] = null;
+        }
+        mNext = 0;
+        mSize = 0;
+        return size;
+    }
+}
@@ -0,0 +1,244 @@
+package com.niznash.remind.content;
+
+import java.util.ArrayList;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.RemoteException;
+
+import com.niznash.remind.content.RemindProvider.ReminderColumns;
+import com.niznash.remind.util.Recurrence;
+import com.niznash.remind.util.SqlUtil;
+
+/**
+ * {@link ReminderStore} backed by the SQLite database. Goes through {@link RemindProvider}, so
+ * observers of the reminder data are notified of every write, and the generation is the
+ * provider's.
+ *
+ * <p>Every method does disk I/O: never call on the UI thread.
+ *
+ * @author niznash@gmail.com (Alejandro Nijamkin)
+ */
+public class SqliteReminderStore implements ReminderStore {
+
+    private final ContentResolver mResolver;
+    private final Uri mUri = RemindProvider.getContentUri(RemindProvider.REMINDER_TABLE);
+
+    /**
+     * Constructor.
+     *
+     * @param context The context
+     */
+    public SqliteReminderStore(Context context) {
+        mResolver = context.getApplicationContext().getContentResolver();
+    }
+
+    public long create(String title, long time, int recurrence) {
+        ContentValues values = new ContentValues(3);
+        values.put(ReminderColumns.TITLE, title);
+        values.put(ReminderColumns.TIME, time);
+        values.put(ReminderColumns.RECURRENCE, recurrence);
+        return ContentUris.parseId(mResolver.insert(mUri, values));
+    }
+
+    public int create(String[] titles, long[] times) {
+        if (titles.length != times.length) {
+            throw new IllegalArgumentException("Need exactly one time per title!");
+        }
+
+        ContentValues[] rows = new ContentValues[titles.length];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = new ContentValues(2);
+            rows[i].put(ReminderColumns.TITLE, titles[i]);
+            rows[i].put(ReminderColumns.TIME, times[i]);
+        }
+        return mResolver.bulkInsert(mUri, rows);
+    }
+
+    public boolean get(long id, Reminder out) {
+        Cursor cursor = mResolver.query(ContentUris.withAppendedId(mUri, id),
+                ReminderColumns.PROJECTION, null, null, null);
+        if (cursor == null) {
+            return false;
+        }
+
+        try {
+            if (!cursor.moveToFirst()) {
+                return false;
+            }
+            new ReminderRowMapper(cursor).fill(out);
+            return true;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public boolean update(long id, String title, long time, int recurrence) {
+        ContentValues values = new ContentValues(3);
+        values.put(ReminderColumns.TITLE, title);
+        values.put(ReminderColumns.TIME, time);
+        values.put(ReminderColumns.RECURRENCE, recurrence);
+        return mResolver.update(ContentUris.withAppendedId(mUri, id), values, null, null) > 0;
+    }
+
+    public boolean delete(long id) {
+        return mResolver.delete(ContentUris.withAppendedId(mUri, id), null, null) > 0;
+    }
+
+    public int delete(long[] ids) {
+        if (ids.length == 0) {
+            return 0;
+        }
+        return mResolver.delete(mUri, SqlUtil.inSelection(ReminderColumns._ID, ids), null);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Runs as one {@link RemindProvider#applyBatch(ArrayList)}: one transaction, one fsync.
+     */
+    public ReminderDelta apply(ReminderDelta writes) {
+        final int size = writes.size();
+        ArrayList<ContentProviderOperation> operations =
+            new ArrayList<ContentProviderOperation>(size);
+        for (int i = 0; i < size; i++) {
+            if (writes.getKind(i) == ReminderDelta.DELETED) {
+                operations.add(ContentProviderOperation.newDelete(
+                        ContentUris.withAppendedId(mUri, writes.getId(i))).build());
+                continue;
+            }
+
+            ContentProviderOperation.Builder builder = writes.getKind(i) == ReminderDelta.INSERTED
+                    ? ContentProviderOperation.newInsert(mUri)
+                    : ContentProviderOperation.newUpdate(
+                            ContentUris.withAppendedId(mUri, writes.getId(i)));
+            operations.add(builder
+                    .withValue(ReminderColumns.TITLE, writes.getTitle(i))
+                    .withValue(ReminderColumns.TIME, writes.getTime(i))
+                    .withValue(ReminderColumns.RECURRENCE, writes.getRecurrence(i))
+                    .build());
+        }
+
+        ContentProviderResult[] results;
+        try {
+            results = mResolver.applyBatch(RemindProvider.AUTHORITY, operations);
+        } catch (RemoteException e) {
+            throw new IllegalStateException("Could not apply the writes!", e);
+        } catch (OperationApplicationException e) {
+            throw new IllegalStateException("Could not apply the writes!", e);
+        }
+
+        ReminderDelta changes = new ReminderDelta(size);
+        for (int i = 0; i < size; i++) {
+            final long id = writes.getId(i);
+            switch (writes.getKind(i)) {
+                case ReminderDelta.INSERTED:
+                    changes.addInserted(ContentUris.parseId(results[i].uri), writes.getTitle(i),
+                            writes.getTime(i), writes.getRecurrence(i));
+                    break;
+                case ReminderDelta.UPDATED:
+                    if (results[i].count.intValue() > 0) {
+                        changes.addUpdated(id, writes.getTitle(i), writes.getTime(i),
+                                writes.getRecurrence(i));
+                    }
+                    break;
+                default:
+                    if (results[i].count.intValue() > 0) {
+                        changes.addDeleted(id);
+                    }
+                    break;
+            }
+        }
+        return changes;
+    }
+
+    public int query(long afterTime, long afterId, long throughTime, long throughId, int limit,
+            Visitor visitor) {
+        return visit(query(afterTime, afterId, throughTime, throughId, limit), visitor);
+    }
+
+    public int queryRecurring(Visitor visitor) {
+        // A range on the recurrence index
+        return visit(mResolver.query(mUri, ReminderColumns.PROJECTION,
+                ReminderColumns.RECURRENCE + ">?",
+                new String[] { Integer.toString(Recurrence.NONE) }, null), visitor);
+    }
+
+    /**
+     * Same as {@link #query(long, long, long, long, int, Visitor)}, but returns the rows as they
+     * come from the provider, with {@link ReminderColumns#PROJECTION}. Both ends of the range are
+     * seeks on the time index, so the cost of a query does not depend on where the range starts.
+     *
+     * @return A {@link Cursor} with the queried rows loaded, if any
+     */
+    public Cursor query(long afterTime, long afterId, long throughTime, long throughId,
+            int limit) {
+        StringBuilder selection = new StringBuilder();
+        ArrayList<String> args = new ArrayList<String>(6);
+        if (afterTime != Long.MIN_VALUE) {
+            selection.append(ReminderColumns.TIME + ">=? AND (" + ReminderColumns.TIME + ">? OR "
+                    + ReminderColumns._ID + ">?)");
+            args.add(Long.toString(afterTime));
+            args.add(Long.toString(afterTime));
+            args.add(Long.toString(afterId));
+        }
+        if (throughTime != Long.MAX_VALUE) {
+            if (selection.length() > 0) {
+                selection.append(" AND ");
+            }
+            selection.append(ReminderColumns.TIME + "<=? AND (" + ReminderColumns.TIME + "<? OR "
+                    + ReminderColumns._ID + "<=?)");
+            args.add(Long.toString(throughTime));
+            args.add(Long.toString(throughTime));
+            args.add(Long.toString(throughId));
+        }
+
+        Uri.Builder uri = mUri.buildUpon();
+        if (limit != NO_LIMIT) {
+            uri.appendQueryParameter(RemindProvider.PARAM_LIMIT, Integer.toString(limit));
+        }
+        return mResolver.query(uri.build(), ReminderColumns.PROJECTION,
+                selection.length() > 0 ? selection.toString() : null,
+                args.toArray(new String[args.size()]), ReminderColumns.DEFAULT_SORT_ORDER);
+    }
+
+    /**
+     * Hands every row of a cursor with {@link ReminderColumns#PROJECTION} to a visitor, and
+     * closes it.
+     *
+     * @return The number of rows
+     */
+    static int visit(Cursor cursor, Visitor visitor) {
+        if (cursor == null) {
+            return 0;
+        }
+
+        try {
+            ReminderRowMapper mapper = new ReminderRowMapper(cursor);
+            int count = 0;
+            while (cursor.moveToNext()) {
+                visitor.visit(mapper.getId(), mapper.getTitle(), mapper.getTime(),
+                        mapper.getRecurrence());
+                count++;
+            }
+            return count;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public long getGeneration() {
+        return RemindProvider.getGeneration();
+    }
+
+    public long getLastWriteGeneration() {
+        return RemindProvider.getLastWriteGeneration();
+    }
+}
@@ -0,0 +1,109 @@
+package com.niznash.remind.content;
+
+import java.util.HashMap;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
+
+/**
+ * Compiled statements for the hot single-row writes of the provider, compiled once per database
+ * and reused, with their arguments bound as primitives.
+ *
+ * <p>Statements are compiled against a database, and forgotten when a different one is passed
+ * in, or when the schema changed since (see {@link RemindDatabaseHelper#getSchemaGeneration()}).
+ *
+ * <p>A statement holds its bindings until it runs, so it is taken out of the cache by
+ * {@link #acquire(SQLiteDatabase, String)} and put back by
+ * {@link #release(SQLiteDatabase, String, SQLiteStatement)}: the cache is only locked for that,
+ * never while the statement runs and waits for the database lock. A thread that finds the
+ * statement taken compiles one of its own.
+ *
+ * @author niznash@gmail.com (Alejandro Nijamkin)
+ */
+class StatementCache {
+
+    // Not in the SDK the app builds against
+    private static final int JELLY_BEAN = 16;
+
+    private final HashMap<String, SQLiteStatement> mStatements =
+        new HashMap<String, SQLiteStatement>();
+
+    // What the statements were compiled against, guarded by this
+    private SQLiteDatabase mDatabase;
+    private int mSchemaGeneration;
+
+    /**
+     * @return Whether cached statements are worth it on this device: running updates and deletes
+     *     on them takes {@link SQLiteStatement#executeUpdateDelete()}, from Honeycomb on, and from
+     *     Jelly Bean on every connection caches its compiled statements by SQL already
+     */
+    static boolean isSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                && Build.VERSION.SDK_INT < JELLY_BEAN;
+    }
+
+    /**
+     * Takes the compiled statement for some SQL out of the cache, compiling one if there is none.
+     * Give it back with {@link #release(SQLiteDatabase, String, SQLiteStatement)} once it ran.
+     *
+     * @param db The database to run the statement on
+     * @param sql The SQL of the statement
+     * @return The statement, with no bindings, for the caller only
+     */
+    SQLiteStatement acquire(SQLiteDatabase db, String sql) {
+        SQLiteStatement statement;
+        synchronized (this) {
+            if (!isCurrent(db)) {
+                clear();
+                mDatabase = db;
+                mSchemaGeneration = RemindDatabaseHelper.getSchemaGeneration();
+            }
+            statement = mStatements.remove(sql);
+        }
+
+        if (statement == null) {
+            return db.compileStatement(sql);
+        }
+        statement.clearBindings();
+        return statement;
+    }
+
+    /**
+     * Puts a statement taken by {@link #acquire(SQLiteDatabase, String)} back in the cache, or
+     * closes it if the cache has moved on to another database or schema, or has one for the SQL
+     * already.
+     *
+     * @param db The database the statement was taken for
+     * @param sql The SQL of the statement
+     * @param statement The statement
+     */
+    void release(SQLiteDatabase db, String sql, SQLiteStatement statement) {
+        synchronized (this) {
+            if (isCurrent(db) && !mStatements.containsKey(sql)) {
+                mStatements.put(sql, statement);
+                return;
+            }
+        }
+        statement.close();
+    }
+
+    /**
+     * Closes every statement in the cache.
+     */
+    synchronized void clear() {
+        for (SQLiteStatement statement : mStatements.values()) {
+            statement.close();
+        }
+        mStatements.clear();
+        mDatabase = null;
+    }
+
+    /**
+     * @return Whether the statements in the cache can run on a database. Must be called with the
+     *     cache locked.
+     */
+    private boolean isCurrent(SQLiteDatabase db) {
+        return db == mDatabase && RemindDatabaseHelper.getSchemaGeneration() == mSchemaGeneration;
+    }
+}
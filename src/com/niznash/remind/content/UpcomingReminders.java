@@ -0,0 +1,193 @@
+package com.niznash.remind.content;
+
+import com.niznash.remind.util.Recurrence;
+import com.niznash.remind.util.TimeUtil;
+
+/**
+ * The next reminders due at or after a time, soonest first, built out of the reminders visited.
+ *
+ * <p>A one-shot reminder is due at its time. A recurring reminder is due at its first occurrence at
+ * or after the time looked from, whatever its own time, which is its first occurrence ever: visit
+ * the one-shot reminders due from then on, in key order and skipping recurring ones, and every
+ * recurring reminder, in any order.
+ *
+ * <p>Only the reminders within the limit are kept, in sorted parallel arrays, so building one does
+ * not allocate per reminder.
+ *
+ * <p>Does not depend on Android.
+ *
+ * @author niznash@gmail.com (Alejandro Nijamkin)
+ */
+public class UpcomingReminders implements ReminderStore.Visitor {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final long mAfter;
+    private final int mLimit;
+
+    // Sorted by due time, ties broken by ID
+    private int mSize;
+    private long[] mDueTimes;
+    private long[] mIds;
+    private String[] mTitles;
+    private long[] mTimes;
+    private int[] mRecurrences;
+
+    /**
+     * Constructor.
+     *
+     * @param after The earliest time (Posix time) to include
+     * @param limit The maximum number of reminders to keep, or {@link ReminderStore#NO_LIMIT} for
+     *     all
+     */
+    public UpcomingReminders(long after, int limit) {
+        if (limit < 0 && limit != ReminderStore.NO_LIMIT) {
+            throw new IllegalArgumentException("Invalid limit: " + limit);
+        }
+
+        mAfter = after;
+        mLimit = limit;
+        final int capacity = limit == ReminderStore.NO_LIMIT ? INITIAL_CAPACITY
+                : Math.max(Math.min(limit, INITIAL_CAPACITY), 1);
+        mDueTimes = new long[capacity];
+        mIds = new long[capacity];
+        mTitles = new String[capacity];
+        mTimes = new long[capacity];
+        mRecurrences = new int[capacity];
+    }
+
+    public void visit(long id, String title, long time, int recurrence) {
+        long due = time;
+        if (Recurrence.isRecurring(recurrence)) {
+            // The first occurrence strictly after the time just before
+            due = TimeUtil.nextOccurrence(time, recurrence,
+                    mAfter != Long.MIN_VALUE ? mAfter - 1 : Long.MIN_VALUE);
+        }
+        if (due < mAfter || due == Long.MAX_VALUE) {
+            return;
+        }
+
+        final int index = findInsertionPoint(due, id);
+        if (mLimit != ReminderStore.NO_LIMIT && index >= mLimit) {
+            return;
+        }
+
+        if (mSize == mIds.length) {
+            grow();
+        }
+        final int moved = mSize - index;
+        System.arraycopy(mDueTimes, index, mDueTimes, index + 1, moved);
+        System.arraycopy(mIds, index, mIds, index + 1, moved);
+        System.arraycopy(mTitles, index, mTitles, index + 1, moved);
+        System.arraycopy(mTimes, index, mTimes, index + 1, moved);
+        System.arraycopy(mRecurrences, index, mRecurrences, index + 1, moved);
+        mDueTimes[index] = due;
+        mIds[index] = id;
+        mTitles[index] = title;
+        mTimes[index] = time;
+        mRecurrences[index] = recurrence;
+
+        if (mLimit == ReminderStore.NO_LIMIT || mSize < mLimit) {
+            mSize++;
+        } else {
+            // Pushed out the last one
+            mTitles[mSize] = null;
+        }
+    }
+
+    /**
+     * @return Whether as many reminders as the limit were kept, so reminders due later than the
+     *     last one can't make it in
+     */
+    public boolean isFull() {
+        return mLimit != ReminderStore.NO_LIMIT && mSize == mLimit;
+    }
+
+    /**
+     * @return The number of reminders kept
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @param index The index of a reminder, between {@code 0} and {@link #size()}, soonest first
+     * @return The time it is due at, that of its occurrence if it recurs
+     */
+    public long getDueTime(int index) {
+        return mDueTimes[index];
+    }
+
+    /**
+     * @param index The index of a reminder, between {@code 0} and {@link #size()}
+     * @return Its ID
+     */
+    public long getId(int index) {
+        return mIds[index];
+    }
+
+    /**
+     * @param index The index of a reminder, between {@code 0} and {@link #size()}
+     * @return Its title
+     */
+    public String getTitle(int index) {
+        return mTitles[index];
+    }
+
+    /**
+     * @param index The index of a reminder, between {@code 0} and {@link #size()}
+     * @return Its own time, its first occurrence if it recurs
+     */
+    public long getTime(int index) {
+        return mTimes[index];
+    }
+
+    /**
+     * @param index The index of a reminder, between {@code 0} and {@link #size()}
+     * @return Its {@link Recurrence} rule
+     */
+    public int getRecurrence(int index) {
+        return mRecurrences[index];
+    }
+
+    /**
+     * @return The index of the first reminder that sorts after a due time and ID
+     */
+    private int findInsertionPoint(long due, long id) {
+        int low = 0;
+        int high = mSize;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (mDueTimes[mid] < due || (mDueTimes[mid] == due && mIds[mid] < id)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void grow() {
+        int capacity = mIds.length * 2;
+        if (mLimit != ReminderStore.NO_LIMIT) {
+            // One past the limit, room for the one pushed out
+            capacity = Math.min(capacity, mLimit + 1);
+        }
+
+        long[] dueTimes = new long[capacity];
+        long[] ids = new long[capacity];
+        String[] titles = new String[capacity];
+        long[] times = new long[capacity];
+        int[] recurrences = new int[capacity];
+        System.arraycopy(mDueTimes, 0, dueTimes, 0, mSize);
+        System.arraycopy(mIds, 0, ids, 0, mSize);
+        System.arraycopy(mTitles, 0, titles, 0, mSize);
+        System.arraycopy(mTimes, 0, times, 0, mSize);
+        System.arraycopy(mRecurrences, 0, recurrences, 0, mSize);
+        mDueTimes = dueTimes;
+        mIds = ids;
+        mTitles = titles;
+        mTimes = times;
+        mRecurrences = recurrences;
+    }
+}
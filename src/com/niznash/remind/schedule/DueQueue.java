@@ -0,0 +1,247 @@
+package com.niznash.remind.schedule;
+
+import com.niznash.remind.util.ArrayUtil;
+import com.niznash.remind.util.SlotIndex;
+
+/**
+ * Pending reminders, ordered by when they are due: a binary min-heap on the {@code (time, id)}
+ * key, indexed by ID so any reminder can be moved or removed in O(log n). Finding the earliest
+ * reminder is O(1).
+ *
+ * <p>Entries live in parallel primitive arrays that grow as needed, so there is no per-entry object
+ * overhead. Not thread-safe.
+ *
+ * <p>Does not depend on Android.
+ *
+ * @author niznash@gmail.com (Alejandro Nijamkin)
+ */
+public class DueQueue {
+
+    /**
+     * Returned by {@link #peekId()} and {@link #poll()} when the queue is empty
+     */
+    public static final long NONE = -1;
+
+    // Marks the end of the chain of free slots
+    private static final int NO_SLOT = -1;
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    // Entries, by slot, and the slot of each ID
+    private SlotIndex mIndex;
+    private long[] mTimes;
+
+    // Heap position of each slot in use; the free slots are chained through here too
+    private int[] mPositions;
+    private int mFree;
+
+    // The heap, of slots
+    private int[] mHeap;
+    private int mSize;
+
+    /**
+     * Constructor.
+     */
+    public DueQueue() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param capacity Number of reminders to make room for up front
+     */
+    public DueQueue(int capacity) {
+        allocate(Math.max(capacity, 1));
+    }
+
+    /**
+     * @return The number of reminders in the queue
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @return The ID of the earliest reminder, or {@link #NONE} if the queue is empty
+     */
+    public long peekId() {
+        return mSize > 0 ? mIndex.getKey(mHeap[0]) : NONE;
+    }
+
+    /**
+     * @return The time of the earliest reminder, or {@link Long#MAX_VALUE} if the queue is empty
+     */
+    public long peekTime() {
+        return mSize > 0 ? mTimes[mHeap[0]] : Long.MAX_VALUE;
+    }
+
+    /**
+     * Removes the earliest reminder.
+     *
+     * @return Its ID, or {@link #NONE} if the queue is empty
+     */
+    public long poll() {
+        if (mSize == 0) {
+            return NONE;
+        }
+
+        final long id = mIndex.getKey(mHeap[0]);
+        removeAt(0);
+        return id;
+    }
+
+    /**
+     * Adds a reminder, or moves it if already in the queue.
+     *
+     * @param id The ID of the reminder
+     * @param time When it is due
+     */
+    public void put(long id, long time) {
+        int slot = mIndex.find(id);
+        if (slot != SlotIndex.NONE) {
+            final long old = mTimes[slot];
+            mTimes[slot] = time;
+            if (time < old) {
+                siftUp(mPositions[slot]);
+            } else if (time > old) {
+                siftDown(mPositions[slot]);
+            }
+            return;
+        }
+
+        if (mFree == NO_SLOT) {
+            grow();
+        }
+        slot = mFree;
+        mFree = mPositions[slot];
+
+        mIndex.add(slot, id);
+        mTimes[slot] = time;
+        mHeap[mSize] = slot;
+        mPositions[slot] = mSize;
+        siftUp(mSize++);
+    }
+
+    /**
+     * Removes a reminder, if present.
+     *
+     * @param id The ID of the reminder
+     * @return Whether it was in the queue
+     */
+    public boolean remove(long id) {
+        final int slot = mIndex.find(id);
+        if (slot == SlotIndex.NONE) {
+            return false;
+        }
+
+        removeAt(mPositions[slot]);
+        return true;
+    }
+
+    /**
+     * @param id The ID of a reminder
+     * @return Whether it is in the queue
+     */
+    public boolean contains(long id) {
+        return mIndex.find(id) != SlotIndex.NONE;
+    }
+
+    /**
+     * Removes all reminders.
+     */
+    public void clear() {
+        mIndex.clear();
+        mSize = 0;
+        resetFreeSlots(0);
+    }
+
+    private void removeAt(int position) {
+        final int slot = mHeap[position];
+        mIndex.remove(slot);
+        mPositions[slot] = mFree;
+        mFree = slot;
+
+        // Fill the hole with the last entry, which may have to go either way
+        final int last = mHeap[--mSize];
+        if (position < mSize) {
+            mHeap[position] = last;
+            mPositions[last] = position;
+            siftDown(position);
+            siftUp(mPositions[last]);
+        }
+    }
+
+    private boolean less(int slot, int other) {
+        final long time = mTimes[slot];
+        final long otherTime = mTimes[other];
+        return time < otherTime
+                || (time == otherTime && mIndex.getKey(slot) < mIndex.getKey(other));
+    }
+
+    private void siftUp(int position) {
+        final int slot = mHeap[position];
+        while (position > 0) {
+            final int parent = (position - 1) >>> 1;
+            if (!less(slot, mHeap[parent])) {
+                break;
+            }
+            mHeap[position] = mHeap[parent];
+            mPositions[mHeap[position]] = position;
+            position = parent;
+        }
+        mHeap[position] = slot;
+        mPositions[slot] = position;
+    }
+
+    private void siftDown(int position) {
+        final int slot = mHeap[position];
+        final int half = mSize >>> 1;
+        while (position < half) {
+            int child = 2 * position + 1;
+            if (child + 1 < mSize && less(mHeap[child + 1], mHeap[child])) {
+                child++;
+            }
+            if (!less(mHeap[child], slot)) {
+                break;
+            }
+            mHeap[position] = mHeap[child];
+            mPositions[mHeap[position]] = position;
+            position = child;
+        }
+        mHeap[position] = slot;
+        mPositions[slot] = position;
+    }
+
+    private void allocate(int capacity) {
+        mIndex = new SlotIndex(capacity);
+        mTimes = new long[capacity];
+        mPositions = new int[capacity];
+        mHeap = new int[capacity];
+        resetFreeSlots(0);
+    }
+
+    /**
+     * Doubles the capacity. Only called when every slot is in use, so slots keep their index.
+     */
+    private void grow() {
+        final int size = mIndex.getCapacity();
+        final int capacity = size * 2;
+        mIndex.grow(capacity);
+        mTimes = ArrayUtil.copyOf(mTimes, capacity);
+        mPositions = ArrayUtil.copyOf(mPositions, capacity);
+        mHeap = ArrayUtil.copyOf(mHeap, capacity);
+        resetFreeSlots(size);
+    }
+
+    /**
+     * Chains the slots from {@code first} on as free.
+     */
+    private void resetFreeSlots(int first) {
+        final int capacity = mIndex.getCapacity();
+        for (int i = first; i < capacity; i++) {
+            mPositions[i] = i + 1 < capacity ? i + 1 : NO_SLOT;
+        }
+        mFree = first < capacity ? first : NO_SLOT;
+    }
+}
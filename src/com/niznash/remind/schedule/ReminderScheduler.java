@@ -0,0 +1,469 @@
+package com.niznash.remind.schedule;
+
+import java.util.HashMap;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.niznash.remind.AlarmReceiver;
+import com.niznash.remind.content.Intents;
+import com.niznash.remind.content.RemindData;
+import com.niznash.remind.content.ReminderDelta;
+import com.niznash.remind.content.ReminderRowMapper;
+import com.niznash.remind.content.ReminderStore;
+import com.niznash.remind.util.Recurrence;
+import com.niznash.remind.util.TimeUtil;
+
+/**
+ * Keeps exactly one system alarm pending: the one for the earliest reminder that hasn't fired yet.
+ *
+ * <p>Pending reminders are seeded on first use with a query on the time index, and kept in sync
+ * with every change after that: {@link RemindData} hands over the change each of its writes made,
+ * and any other write, such as one made by another application through the provider, is caught
+ * by the generation of the reminder data moving past the writes handed over, and reloads them. They are held in a {@link TimingWheel}, where a create, update or
+ * delete is O(1), until their minute comes up; from then on they are in a {@link DueQueue}, which
+ * only ever holds the few reminders due that soon and gives the exact time of the earliest. The
+ * {@link AlarmManager} is only called when the earliest reminder changes.
+ *
+ * <p>Reminders fire in key order. The key of the last fired reminder is persisted, so reminders
+ * that came due while the process was dead still fire, and none fires twice.
+ *
+ * <p>A recurring reminder is pending at the time of its next occurrence, rather than at its own
+ * time, and is moved to the one after every time it fires. Occurrences missed while the process
+ * was dead fire once, as a single catch-up. The few recurring reminders are kept in memory, so
+ * their rules don't have to be read back on every firing.
+ *
+ * <p>Does disk I/O: never call on the UI thread.
+ *
+ * @author niznash@gmail.com (Alejandro Nijamkin)
+ */
+public class ReminderScheduler {
+
+    private static final String PREFERENCES = "scheduler";
+    private static final String PREF_FIRED_TIME = "fired_time";
+    private static final String PREF_FIRED_ID = "fired_id";
+
+    private static final String TAG = "ReminderScheduler";
+
+    // Rows in the first page loaded, which is enough to arm, and in every page after it
+    private static final int FIRST_LOAD_PAGE_SIZE = 16;
+    private static final int LOAD_PAGE_SIZE = 1024;
+
+    /**
+     * Time from the start of a load to the alarm being armed that is logged as too slow, in
+     * milliseconds
+     */
+    public static final long ARM_BUDGET_MILLIS = 250;
+
+    /**
+     * Reminders that came due, as returned by {@link ReminderScheduler#pollDue(long)}.
+     */
+    public static class Due {
+        /** The IDs of the reminders, in the order they came due */
+        public final long[] ids;
+
+        /** The time each came due: its time, or that of its occurrence if it recurs */
+        public final long[] times;
+
+        Due(long[] ids, long[] times) {
+            this.ids = ids;
+            this.times = times;
+        }
+    }
+
+    /**
+     * First occurrence and rule of a recurring reminder.
+     */
+    private static class Recurring {
+        public long start;
+        public int rule;
+
+        public Recurring(long start, int rule) {
+            this.start = start;
+            this.rule = rule;
+        }
+    }
+
+    private static ReminderScheduler sInstance;
+
+    private final Context mContext;
+
+    // Reminders due after the horizon of the wheel, and the ones due before it
+    private TimingWheel mWheel;
+    private final DueQueue mQueue = new DueQueue();
+    private boolean mLoaded;
+
+    // Generation the pending reminders were loaded at, and the writes applied on top since
+    private long mLoadedGeneration;
+    private long mWritesApplied;
+
+    // Writes through RemindData started but not handed over yet
+    private int mWritesInFlight;
+
+    // Recurring reminders, by ID
+    private final HashMap<Long, Recurring> mRecurring = new HashMap<Long, Recurring>();
+
+    // Moves reminders out of the wheel as their minute comes up
+    private final TimingWheel.Expiry mExpiry = new TimingWheel.Expiry() {
+        public void onExpired(long id, long time) {
+            mQueue.put(id, time);
+        }
+    };
+
+    // Key of the last reminder fired, only later ones are pending
+    private long mFiredTime;
+    private long mFiredId;
+
+    // Time the alarm is set for, Long.MAX_VALUE for none; unknown until first armed
+    private long mArmedTime;
+    private boolean mArmed;
+
+    // How long the last load took in all, and until the alarm was armed
+    private long mLastLoadMillis;
+    private long mLastArmMillis;
+
+    /**
+     * Gets the scheduler of the application.
+     *
+     * @param context The context
+     * @return The scheduler
+     */
+    public static synchronized ReminderScheduler get(Context context) {
+        if (sInstance == null) {
+            sInstance = new ReminderScheduler(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private ReminderScheduler(Context context) {
+        mContext = context;
+
+        // Called on a binder thread
+        RemindData.registerObserver(context, new ContentObserver(null) {
+            @Override
+            public void onChange(boolean selfChange) {
+                reloadIfChanged();
+            }
+        });
+    }
+
+    /**
+     * Records that a write through {@link RemindData} is about to be made, so that the change it
+     * makes is not taken for one made elsewhere before it is handed over. Must be followed by
+     * {@link #onWriteFinished(ReminderDelta)}, whether the write succeeds or not.
+     */
+    public synchronized void onWriteStarted() {
+        mWritesInFlight++;
+    }
+
+    /**
+     * Updates the pending reminders with the change a write through {@link RemindData} made, and
+     * re-arms the alarm if the earliest reminder changed. Once no such write is in flight, reloads
+     * the pending reminders if the reminder data has changes that were not handed over.
+     *
+     * @param changes The change, with the generation it produced; {@code null} if the write failed,
+     *     changed nothing, or changed reminders it can't list
+     */
+    public synchronized void onWriteFinished(ReminderDelta changes) {
+        mWritesInFlight--;
+
+        // A change made before the load is already in it
+        if (mLoaded && changes != null && changes.size() > 0
+                && changes.getGeneration() > mLoadedGeneration) {
+            final int size = changes.size();
+            for (int i = 0; i < size; i++) {
+                final long id = changes.getId(i);
+                long time = changes.getTime(i);
+                if (changes.getKind(i) != ReminderDelta.DELETED
+                        && Recurrence.isRecurring(changes.getRecurrence(i))) {
+                    mRecurring.put(Long.valueOf(id), new Recurring(time, changes.getRecurrence(i)));
+                    time = getNextPendingOccurrence(id, time, changes.getRecurrence(i));
+                } else {
+                    mRecurring.remove(Long.valueOf(id));
+                }
+
+                if (changes.getKind(i) != ReminderDelta.DELETED && time != Long.MAX_VALUE
+                        && isPending(time, id)) {
+                    schedule(id, time);
+                } else {
+                    unschedule(id);
+                }
+            }
+            mWritesApplied++;
+        }
+
+        if (mWritesInFlight == 0 && (!mLoaded || hasChangesNotApplied())) {
+            load();
+        }
+        if (mLoaded) {
+            arm();
+        }
+    }
+
+    /**
+     * Reloads the pending reminders if the reminder data has changes that were not handed over.
+     * While writes through {@link RemindData} are in flight, the last one to finish checks instead.
+     */
+    private synchronized void reloadIfChanged() {
+        if (mLoaded && mWritesInFlight == 0 && hasChangesNotApplied()) {
+            load();
+            arm();
+        }
+    }
+
+    /**
+     * Whether the reminder data moved past the load and the writes applied on top of it: every
+     * committed write moves the generation forward by one.
+     */
+    private boolean hasChangesNotApplied() {
+        return RemindData.getGeneration() != mLoadedGeneration + mWritesApplied;
+    }
+
+    /**
+     * Rebuilds the pending reminders from the reminder data and arms the alarm, as needed when the
+     * alarm was lost or the occurrences moved: after a reboot, or a change of the time zone or the
+     * clock.
+     */
+    public synchronized void rehydrate() {
+        final long start = SystemClock.elapsedRealtime();
+        mArmed = false;
+        load();
+        Log.i(TAG, "Armed " + (start + mLastArmMillis) + "ms after boot");
+    }
+
+    /**
+     * Removes the reminders that are due, marks them as fired and re-arms the alarm for the next
+     * one.
+     *
+     * @param now The current time
+     * @return The reminders that came due
+     */
+    public synchronized Due pollDue(long now) {
+        if (!mLoaded) {
+            load();
+        }
+
+        mWheel.advance(now, mExpiry);
+
+        int count = 0;
+        long[] ids = new long[4];
+        long[] times = new long[4];
+        while (mQueue.size() > 0 && mQueue.peekTime() <= now) {
+            mFiredTime = mQueue.peekTime();
+            mFiredId = mQueue.poll();
+            if (count == ids.length) {
+                long[] grownIds = new long[count * 2];
+                long[] grownTimes = new long[count * 2];
+                System.arraycopy(ids, 0, grownIds, 0, count);
+                System.arraycopy(times, 0, grownTimes, 0, count);
+                ids = grownIds;
+                times = grownTimes;
+            }
+            ids[count] = mFiredId;
+            times[count] = mFiredTime;
+            count++;
+
+            Recurring recurring = mRecurring.get(Long.valueOf(mFiredId));
+            if (recurring != null) {
+                // Next occurrence after now, so missed ones don't all fire one after the other
+                final long next = TimeUtil.nextOccurrence(recurring.start, recurring.rule, now);
+                if (next != Long.MAX_VALUE) {
+                    schedule(mFiredId, next);
+                }
+            }
+        }
+
+        if (count > 0) {
+            mContext.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE).edit()
+                    .putLong(PREF_FIRED_TIME, mFiredTime)
+                    .putLong(PREF_FIRED_ID, mFiredId)
+                    .commit();
+        }
+
+        // The alarm that called us is gone
+        mArmed = false;
+        arm();
+
+        long[] dueIds = new long[count];
+        long[] dueTimes = new long[count];
+        System.arraycopy(ids, 0, dueIds, 0, count);
+        System.arraycopy(times, 0, dueTimes, 0, count);
+        return new Due(dueIds, dueTimes);
+    }
+
+    /**
+     * @return The number of pending reminders
+     */
+    public synchronized int getPendingCount() {
+        return mLoaded ? mWheel.size() + mQueue.size() : 0;
+    }
+
+    /**
+     * @return How long the last load of the pending reminders took, in milliseconds
+     */
+    public synchronized long getLastLoadMillis() {
+        return mLastLoadMillis;
+    }
+
+    /**
+     * @return How long the last load of the pending reminders took to arm the alarm, in
+     *     milliseconds
+     */
+    public synchronized long getLastArmMillis() {
+        return mLastArmMillis;
+    }
+
+    /**
+     * Whether a reminder sorts after the last one fired.
+     */
+    private boolean isPending(long time, long id) {
+        return time > mFiredTime || (time == mFiredTime && id > mFiredId);
+    }
+
+    /**
+     * Computes the first occurrence of a recurring reminder whose key sorts after the last
+     * reminder fired.
+     *
+     * @return The occurrence, or {@link Long#MAX_VALUE} if there is none
+     */
+    private long getNextPendingOccurrence(long id, long start, int rule) {
+        // The first occurrence at or after the last firing, or the one after that
+        final long time = TimeUtil.nextOccurrence(start, rule, mFiredTime - 1);
+        return time != Long.MAX_VALUE && isPending(time, id) ? time
+                : TimeUtil.nextOccurrence(start, rule, mFiredTime);
+    }
+
+    /**
+     * Adds a pending reminder, or moves it.
+     */
+    private void schedule(long id, long time) {
+        if (mWheel.add(id, time)) {
+            mQueue.remove(id);
+        } else {
+            mQueue.put(id, time);
+        }
+    }
+
+    /**
+     * Removes a pending reminder, if it is one.
+     */
+    private void unschedule(long id) {
+        if (!mWheel.remove(id)) {
+            mQueue.remove(id);
+        }
+    }
+
+    /**
+     * Seeds the wheel with every reminder after the last one fired, and arms the alarm. If nothing
+     * ever fired, starts from now rather than firing every past reminder.
+     *
+     * <p>The recurring reminders are read first, all at once, since their next occurrence can be
+     * anywhere. The others are then streamed in key order, a page at a time, with each page a seek
+     * on the time index. The first page is small and holds the earliest of them, so the alarm is
+     * armed right after it, before the rest is loaded.
+     */
+    private void load() {
+        final long start = SystemClock.elapsedRealtime();
+
+        SharedPreferences preferences =
+            mContext.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+        mFiredTime = preferences.getLong(PREF_FIRED_TIME, System.currentTimeMillis());
+        mFiredId = preferences.getLong(PREF_FIRED_ID, Long.MAX_VALUE);
+
+        // Read before the data, so the writes committed up to then are known to be in it
+        mLoadedGeneration = RemindData.getGeneration();
+        mWritesApplied = 0;
+
+        mQueue.clear();
+        mRecurring.clear();
+        mWheel = new TimingWheel(System.currentTimeMillis(), LOAD_PAGE_SIZE);
+        mLoaded = true;
+
+        RemindData.queryRecurringReminders(mContext, new ReminderStore.Visitor() {
+            public void visit(long id, String title, long time, int recurrence) {
+                mRecurring.put(Long.valueOf(id), new Recurring(time, recurrence));
+                final long next = getNextPendingOccurrence(id, time, recurrence);
+                if (next != Long.MAX_VALUE) {
+                    schedule(id, next);
+                }
+            }
+        });
+
+        long afterTime = mFiredTime;
+        long afterId = mFiredId;
+        int pageSize = FIRST_LOAD_PAGE_SIZE;
+        while (true) {
+            Cursor cursor = RemindData.queryReminderPage(mContext, afterTime, afterId,
+                    Long.MAX_VALUE, 0, pageSize);
+            if (cursor == null) {
+                break;
+            }
+
+            int count = 0;
+            try {
+                ReminderRowMapper mapper = new ReminderRowMapper(cursor);
+                while (cursor.moveToNext()) {
+                    afterId = mapper.getId();
+                    afterTime = mapper.getTime();
+                    if (!Recurrence.isRecurring(mapper.getRecurrence())) {
+                        schedule(afterId, afterTime);
+                    }
+                    count++;
+                }
+            } finally {
+                cursor.close();
+            }
+
+            if (pageSize == FIRST_LOAD_PAGE_SIZE) {
+                arm();
+                mLastArmMillis = SystemClock.elapsedRealtime() - start;
+            }
+            if (count < pageSize) {
+                break;
+            }
+            pageSize = LOAD_PAGE_SIZE;
+        }
+
+        mLastLoadMillis = SystemClock.elapsedRealtime() - start;
+        if (mLastArmMillis > ARM_BUDGET_MILLIS) {
+            Log.w(TAG, "Armed in " + mLastArmMillis + "ms, over the budget of "
+                    + ARM_BUDGET_MILLIS + "ms");
+        }
+        Log.i(TAG, "Loaded " + getPendingCount() + " pending reminders in " + mLastLoadMillis
+                + "ms, armed in " + mLastArmMillis + "ms");
+    }
+
+    /**
+     * Sets the alarm for the earliest pending reminder, or cancels it if there is none. Does
+     * nothing if the alarm is already right.
+     */
+    private void arm() {
+        if (mQueue.size() == 0) {
+            // Bring in the next minute that has reminders, if any
+            mWheel.advanceToNext(mExpiry);
+        }
+
+        final long time = mQueue.peekTime();
+        if (mArmed && time == mArmedTime) {
+            return;
+        }
+
+        AlarmManager alarmManager = (AlarmManager) mContext.getSystemService(Context.ALARM_SERVICE);
+        PendingIntent operation = PendingIntent.getBroadcast(mContext, 0,
+                new Intent(mContext, AlarmReceiver.class), PendingIntent.FLAG_UPDATE_CURRENT);
+        if (time == Long.MAX_VALUE) {
+            alarmManager.cancel(operation);
+        } else {
+            alarmManager.set(AlarmManager.RTC_WAKEUP, time, operation);
+        }
+        mArmedTime = time;
+        mArmed = true;
+    }
+}
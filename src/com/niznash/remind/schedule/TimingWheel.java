@@ -0,0 +1,430 @@
+package com.niznash.remind.schedule;
+
+import java.util.Arrays;
+
+import com.niznash.remind.util.ArrayUtil;
+import com.niznash.remind.util.SlotIndex;
+
+/**
+ * Hierarchical timing wheel of pending reminders, with a minute, an hour and a day level.
+ *
+ * <p>The wheel has a current minute, its tick. A reminder due in the same hour as the tick sits in
+ * the minute level, one due later that day in the hour level, and one due within the same
+ * {@link #DAYS}-day period in the day level; anything later waits in an overflow list. As the tick
+ * moves into a new hour (or day, or period) the matching bucket of the level above is spread
+ * over the levels below. Reminders due at or before the tick are never held: they are handed
+ * back as expired.
+ *
+ * <p>Adding and removing a reminder is O(1), and so is advancing the tick by a minute, plus the
+ * reminders that expire or move down a level. Stretches of empty buckets are skipped over whole.
+ * Entries live in parallel primitive arrays that grow as needed, so there is no per-entry object
+ * overhead. Not thread-safe.
+ *
+ * <p>Does not depend on Android.
+ *
+ * @author niznash@gmail.com (Alejandro Nijamkin)
+ */
+public class TimingWheel {
+
+    /**
+     * Length of a tick, in milliseconds
+     */
+    public static final long MINUTE = 60 * 1000;
+
+    /**
+     * Number of buckets in the day level, and so the length of a period, in days
+     */
+    public static final int DAYS = 512;
+
+    /**
+     * Receives the reminders that expire as the wheel advances.
+     */
+    public interface Expiry {
+        /**
+         * Called once per reminder that came due. The reminder is no longer in the wheel. Reminders
+         * may be added to the wheel from here, but not removed.
+         *
+         * @param id The ID of the reminder
+         * @param time When it is due
+         */
+        void onExpired(long id, long time);
+    }
+
+    private static final int MINUTES_PER_HOUR = 60;
+    private static final int MINUTES_PER_DAY = 24 * MINUTES_PER_HOUR;
+    private static final long MINUTES_PER_PERIOD = (long) DAYS * MINUTES_PER_DAY;
+
+    // Levels, by index
+    private static final int LEVEL_MINUTE = 0;
+    private static final int LEVEL_HOUR = 1;
+    private static final int LEVEL_DAY = 2;
+    private static final int LEVEL_OVERFLOW = 3;
+
+    // First bucket of each level, and the number of buckets
+    private static final int FIRST_MINUTE = 0;
+    private static final int FIRST_HOUR = FIRST_MINUTE + MINUTES_PER_HOUR;
+    private static final int FIRST_DAY = FIRST_HOUR + 24;
+    private static final int OVERFLOW = FIRST_DAY + DAYS;
+    private static final int BUCKETS = OVERFLOW + 1;
+
+    // Marks the end of a chain of entries
+    private static final int NONE = -1;
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    // Entries, by slot, and the slot of each ID
+    private SlotIndex mIndex;
+    private long[] mTimes;
+
+    // Bucket chains; the free slots are chained through mNext too
+    private int[] mNext;
+    private int[] mPrev;
+    private int[] mBuckets;
+    private final int[] mHeads = new int[BUCKETS];
+    private int mFree;
+
+    // Number of entries in each level
+    private final int[] mLevelSizes = new int[LEVEL_OVERFLOW + 1];
+    private int mSize;
+
+    // The current minute
+    private long mTick;
+
+    /**
+     * Constructor.
+     *
+     * @param now The current time; reminders due in its minute or earlier expire right away
+     * @param capacity Number of reminders to make room for up front
+     */
+    public TimingWheel(long now, int capacity) {
+        mTick = toTick(now);
+        Arrays.fill(mHeads, NONE);
+        allocate(Math.max(capacity, DEFAULT_CAPACITY));
+    }
+
+    /**
+     * @return The number of reminders in the wheel
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @return The end of the current minute: reminders due before it are never in the wheel
+     */
+    public long getHorizon() {
+        return (mTick + 1) * MINUTE;
+    }
+
+    /**
+     * Adds a reminder, or moves it if already in the wheel.
+     *
+     * @param id The ID of the reminder
+     * @param time When it is due
+     * @return Whether the reminder was added, {@code false} if it is due before
+     *     {@link #getHorizon()} and so expired already
+     */
+    public boolean add(long id, long time) {
+        int slot = mIndex.find(id);
+        if (slot != SlotIndex.NONE) {
+            unlink(slot);
+            if (toTick(time) <= mTick) {
+                release(slot);
+                return false;
+            }
+            mTimes[slot] = time;
+            link(slot);
+            return true;
+        }
+
+        if (toTick(time) <= mTick) {
+            return false;
+        }
+
+        if (mFree == NONE) {
+            grow();
+        }
+        slot = mFree;
+        mFree = mNext[slot];
+
+        mIndex.add(slot, id);
+        mTimes[slot] = time;
+        link(slot);
+        mSize++;
+        return true;
+    }
+
+    /**
+     * Removes a reminder, if present.
+     *
+     * @param id The ID of the reminder
+     * @return Whether it was in the wheel
+     */
+    public boolean remove(long id) {
+        final int slot = mIndex.find(id);
+        if (slot == SlotIndex.NONE) {
+            return false;
+        }
+
+        unlink(slot);
+        release(slot);
+        return true;
+    }
+
+    /**
+     * @param id The ID of a reminder
+     * @return Whether it is in the wheel
+     */
+    public boolean contains(long id) {
+        return mIndex.find(id) != SlotIndex.NONE;
+    }
+
+    /**
+     * Removes all reminders.
+     */
+    public void clear() {
+        Arrays.fill(mHeads, NONE);
+        Arrays.fill(mLevelSizes, 0);
+        mIndex.clear();
+        mSize = 0;
+        resetFreeSlots(0);
+    }
+
+    /**
+     * Moves the tick forward to the minute of the given time, expiring every reminder due up to
+     * the end of that minute. Does nothing if the tick is already there or later.
+     *
+     * @param now The time to advance to
+     * @param expiry Receives the expired reminders
+     * @return The number of reminders that expired
+     */
+    public int advance(long now, Expiry expiry) {
+        return advance(toTick(now), false, expiry);
+    }
+
+    /**
+     * Moves the tick forward to the next minute that has reminders due, expiring them.
+     *
+     * @param expiry Receives the expired reminders
+     * @return The number of reminders that expired, 0 only if the wheel is empty
+     */
+    public int advanceToNext(Expiry expiry) {
+        return advance(Long.MAX_VALUE, true, expiry);
+    }
+
+    private int advance(long tick, boolean untilExpired, Expiry expiry) {
+        int expired = 0;
+        while (mTick < tick && !(untilExpired && expired > 0)) {
+            if (mSize == 0) {
+                // Nothing can expire on the way
+                if (!untilExpired) {
+                    mTick = tick;
+                }
+                break;
+            }
+
+            // Skip to the last minute of the hour, day or period if nothing is due before then
+            long last = mTick;
+            if (mLevelSizes[LEVEL_MINUTE] == 0) {
+                last = endOf(mTick, MINUTES_PER_HOUR);
+                if (mLevelSizes[LEVEL_HOUR] == 0) {
+                    last = endOf(mTick, MINUTES_PER_DAY);
+                    if (mLevelSizes[LEVEL_DAY] == 0) {
+                        last = endOf(mTick, MINUTES_PER_PERIOD);
+                    }
+                }
+            }
+            if (last >= tick) {
+                mTick = tick;
+                break;
+            }
+            mTick = last + 1;
+
+            // Spread the buckets that now fall in the tick's period, day and hour
+            final long minute = floorMod(mTick, MINUTES_PER_HOUR);
+            final long minuteOfDay = floorMod(mTick, MINUTES_PER_DAY);
+            final long minuteOfPeriod = floorMod(mTick, MINUTES_PER_PERIOD);
+            if (minuteOfPeriod == 0) {
+                cascade(OVERFLOW);
+            }
+            if (minuteOfDay == 0) {
+                cascade(FIRST_DAY + (int) (minuteOfPeriod / MINUTES_PER_DAY));
+            }
+            if (minute == 0) {
+                cascade(FIRST_HOUR + (int) (minuteOfDay / MINUTES_PER_HOUR));
+            }
+            expired += expire(FIRST_MINUTE + (int) minute, expiry);
+        }
+        return expired;
+    }
+
+    private static long toTick(long time) {
+        // Rounds down, also before 1970
+        return time >= 0 ? time / MINUTE : (time + 1) / MINUTE - 1;
+    }
+
+    private static long endOf(long tick, long unit) {
+        return tick - floorMod(tick, unit) + unit - 1;
+    }
+
+    private static long floorMod(long value, long unit) {
+        final long mod = value % unit;
+        return mod < 0 ? mod + unit : mod;
+    }
+
+    /**
+     * @return The bucket a reminder due at the given tick belongs in, relative to the current one
+     */
+    private int bucketOf(long tick) {
+        if (tick - floorMod(tick, MINUTES_PER_HOUR) == mTick - floorMod(mTick, MINUTES_PER_HOUR)) {
+            return FIRST_MINUTE + (int) floorMod(tick, MINUTES_PER_HOUR);
+        }
+        if (tick - floorMod(tick, MINUTES_PER_DAY) == mTick - floorMod(mTick, MINUTES_PER_DAY)) {
+            return FIRST_HOUR + (int) (floorMod(tick, MINUTES_PER_DAY) / MINUTES_PER_HOUR);
+        }
+        if (tick - floorMod(tick, MINUTES_PER_PERIOD)
+                == mTick - floorMod(mTick, MINUTES_PER_PERIOD)) {
+            return FIRST_DAY + (int) (floorMod(tick, MINUTES_PER_PERIOD) / MINUTES_PER_DAY);
+        }
+        return OVERFLOW;
+    }
+
+    private static int levelOf(int bucket) {
+        if (bucket < FIRST_HOUR) {
+            return LEVEL_MINUTE;
+        }
+        if (bucket < FIRST_DAY) {
+            return LEVEL_HOUR;
+        }
+        return bucket < OVERFLOW ? LEVEL_DAY : LEVEL_OVERFLOW;
+    }
+
+    /**
+     * Moves every entry of a bucket to where it belongs now.
+     */
+    private void cascade(int bucket) {
+        int slot = detach(bucket);
+        while (slot != NONE) {
+            final int next = mNext[slot];
+            link(slot);
+            slot = next;
+        }
+    }
+
+    /**
+     * Expires every entry of a bucket of the minute level.
+     */
+    private int expire(int bucket, Expiry expiry) {
+        int count = 0;
+        int slot = detach(bucket);
+        while (slot != NONE) {
+            final int next = mNext[slot];
+            final long id = mIndex.getKey(slot);
+            final long time = mTimes[slot];
+            release(slot);
+            expiry.onExpired(id, time);
+            count++;
+            slot = next;
+        }
+        return count;
+    }
+
+    /**
+     * Empties a bucket.
+     *
+     * @return The first entry of its chain, which is left intact
+     */
+    private int detach(int bucket) {
+        final int head = mHeads[bucket];
+        mHeads[bucket] = NONE;
+        for (int slot = head; slot != NONE; slot = mNext[slot]) {
+            mLevelSizes[levelOf(bucket)]--;
+            mBuckets[slot] = NONE;
+        }
+        return head;
+    }
+
+    /**
+     * Links an entry at the head of the bucket it belongs in.
+     */
+    private void link(int slot) {
+        final int bucket = bucketOf(toTick(mTimes[slot]));
+        final int head = mHeads[bucket];
+        mPrev[slot] = NONE;
+        mNext[slot] = head;
+        if (head != NONE) {
+            mPrev[head] = slot;
+        }
+        mHeads[bucket] = slot;
+        mBuckets[slot] = bucket;
+        mLevelSizes[levelOf(bucket)]++;
+    }
+
+    /**
+     * Unlinks an entry from its bucket, if in one.
+     */
+    private void unlink(int slot) {
+        final int bucket = mBuckets[slot];
+        if (bucket == NONE) {
+            return;
+        }
+
+        final int prev = mPrev[slot];
+        final int next = mNext[slot];
+        if (prev != NONE) {
+            mNext[prev] = next;
+        } else {
+            mHeads[bucket] = next;
+        }
+        if (next != NONE) {
+            mPrev[next] = prev;
+        }
+        mBuckets[slot] = NONE;
+        mLevelSizes[levelOf(bucket)]--;
+    }
+
+    /**
+     * Frees the slot of an entry that is in no bucket.
+     */
+    private void release(int slot) {
+        mIndex.remove(slot);
+        mNext[slot] = mFree;
+        mFree = slot;
+        mSize--;
+    }
+
+    private void allocate(int capacity) {
+        mIndex = new SlotIndex(capacity);
+        mTimes = new long[capacity];
+        mNext = new int[capacity];
+        mPrev = new int[capacity];
+        mBuckets = new int[capacity];
+        resetFreeSlots(0);
+    }
+
+    /**
+     * Doubles the capacity. Only called when every slot is in use, so slots keep their index.
+     */
+    private void grow() {
+        final int size = mIndex.getCapacity();
+        final int capacity = size * 2;
+        mIndex.grow(capacity);
+        mTimes = ArrayUtil.copyOf(mTimes, capacity);
+        mNext = ArrayUtil.copyOf(mNext, capacity);
+        mPrev = ArrayUtil.copyOf(mPrev, capacity);
+        mBuckets = ArrayUtil.copyOf(mBuckets, capacity);
+        resetFreeSlots(size);
+    }
+
+    /**
+     * Chains the slots from {@code first} on as free.
+     */
+    private void resetFreeSlots(int first) {
+        final int capacity = mIndex.getCapacity();
+        for (int i = first; i < capacity; i++) {
+            mNext[i] = i + 1 < capacity ? i + 1 : NONE;
+            mBuckets[i] = NONE;
+        }
+        mFree = first < capacity ? first : NONE;
+    }
+}
@@ -0,0 +1,37 @@
+package com.niznash.remind.util;
+
+/**
+ * Helps grow primitive arrays.
+ *
+ * @author niznash@gmail.com (Alejandro Nijamkin)
+ */
+public class ArrayUtil {
+
+    // Arrays.copyOf() is not available before API level 9
+
+    /**
+     * Copies an array into a new one, truncated or padded with zeros.
+     *
+     * @param array The array to copy
+     * @param length The length of the copy
+     * @return The copy
+     */
+    public static long[] copyOf(long[] array, int length) {
+        long[] copy = new long[length];
+        System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+        return copy;
+    }
+
+    /**
+     * Copies an array into a new one, truncated or padded with zeros.
+     *
+     * @param array The array to copy
+     * @param length The length of the copy
+     * @return The copy
+     */
+    public static int[] copyOf(int[] array, int length) {
+        int[] copy = new int[length];
+        System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+        return copy;
+    }
+}
@@ -0,0 +1,175 @@
+package com.niznash.remind.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations, in nanoseconds, with buckets on a log-linear scale: every power of two
+ * is split into {@value #SUB_BUCKETS} buckets, so any percentile is within 12.5% of the exact one,
+ * from a nanosecond to centuries, in under 4KB.
+ *
+ * <p>Recording is lock-free and does not allocate, so it can be left on in release builds.
+ * Readings taken while others record may mix a few values from before and after them, but never
+ * lose any.
+ *
+ * <p>Does not depend on Android.
+ *
+ * @author niznash@gmail.com (Alejandro Nijamkin)
+ */
+public class LatencyHistogram {
+
+    // Buckets per power of two, as a number of bits
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    // Values below this have a bucket of their own
+    private static final int LINEAR_LIMIT = SUB_BUCKETS * 2;
+
+    private static final int BUCKET_COUNT =
+        LINEAR_LIMIT + (63 - (SUB_BUCKET_BITS + 1)) * SUB_BUCKETS;
+
+    private final String mName;
+    private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong mCount = new AtomicLong();
+    private final AtomicLong mTotal = new AtomicLong();
+    private final AtomicLong mMax = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param name The name of what is timed
+     */
+    public LatencyHistogram(String name) {
+        mName = name;
+    }
+
+    /**
+     * @return The name of what is timed
+     */
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * Records a duration.
+     *
+     * @param nanos The duration, in nanoseconds; negative durations count as zero
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+
+        mBuckets.incrementAndGet(getBucket(nanos));
+        mCount.incrementAndGet();
+        mTotal.addAndGet(nanos);
+
+        long max = mMax.get();
+        while (nanos > max && !mMax.compareAndSet(max, nanos)) {
+            max = mMax.get();
+        }
+    }
+
+    /**
+     * Records the time since a start time.
+     *
+     * @param startNanos The start time, from {@link System#nanoTime()}
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * @return The number of durations recorded
+     */
+    public long getCount() {
+        return mCount.get();
+    }
+
+    /**
+     * @return The average duration, in nanoseconds, or {@code 0} if none was recorded
+     */
+    public long getMean() {
+        final long count = mCount.get();
+        return count > 0 ? mTotal.get() / count : 0;
+    }
+
+    /**
+     * @return The longest duration, in nanoseconds, or {@code 0} if none was recorded
+     */
+    public long getMax() {
+        return mMax.get();
+    }
+
+    /**
+     * Gets the duration that a given share of the durations recorded do not exceed, rounded up
+     * to the end of its bucket.
+     *
+     * @param percentile The share, between {@code 0} and {@code 100}
+     * @return The duration, in nanoseconds, or {@code 0} if none was recorded
+     */
+    public long getPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Not a percentile: " + percentile);
+        }
+
+        long total = 0;
+        long[] counts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = mBuckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        // Rank of the value, from 1
+        final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(getBucketEnd(i), mMax.get());
+            }
+        }
+        return mMax.get();
+    }
+
+    /**
+     * Forgets every duration recorded so far.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mBuckets.set(i, 0);
+        }
+        mCount.set(0);
+        mTotal.set(0);
+        mMax.set(0);
+    }
+
+    private static int getBucket(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+
+        // Power of two, and the next bits below it
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_LIMIT + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @return The largest value that falls in a bucket
+     */
+    private static long getBucketEnd(int bucket) {
+        if (bucket < LINEAR_LIMIT) {
+            return bucket;
+        }
+
+        final int exponent = (bucket - LINEAR_LIMIT) / SUB_BUCKETS + SUB_BUCKET_BITS + 1;
+        final int sub = (bucket - LINEAR_LIMIT) % SUB_BUCKETS;
+        final long width = 1L << (exponent - SUB_BUCKET_BITS);
+        final long start = (1L << exponent) + sub * width;
+        return start + width - 1 < 0 ? Long.MAX_VALUE : start + width - 1;
+    }
+}
@@ -0,0 +1,116 @@
+package com.niznash.remind.util;
+
+import java.util.Calendar;
+
+/**
+ * Builds and reads recurrence rules. A rule is packed into a single {@code int}, which is what
+ * gets stored with a reminder: the kind of rule in the low bits, and above them the interval
+ * (every N hours or days) or the set of days of the week. {@link #NONE} is a one-shot reminder.
+ *
+ * <p>A recurring reminder's time is its first occurrence; the others are computed when needed with
+ * {@link TimeUtil#nextOccurrence(long, int, long)}, never stored.
+ *
+ * <p>Does not depend on Android.
+ *
+ * @author niznash@gmail.com (Alejandro Nijamkin)
+ */
+public class Recurrence {
+
+    /**
+     * Does not recur
+     */
+    public static final int NONE = 0;
+
+    // Kinds of rule
+    public static final int KIND_HOURLY = 1;
+    public static final int KIND_DAILY = 2;
+    public static final int KIND_WEEKLY = 3;
+
+    /**
+     * Largest interval of an hourly or daily rule
+     */
+    public static final int MAX_INTERVAL = 0xFFFF;
+
+    // Layout of a rule
+    private static final int KIND_BITS = 4;
+    private static final int KIND_MASK = (1 << KIND_BITS) - 1;
+
+    private Recurrence() {
+    }
+
+    /**
+     * @param hours The number of hours between occurrences, elapsed time
+     * @return A rule for a reminder that recurs every {@code hours} hours
+     */
+    public static int everyHours(int hours) {
+        return KIND_HOURLY | (checkInterval(hours) << KIND_BITS);
+    }
+
+    /**
+     * @param days The number of days between occurrences
+     * @return A rule for a reminder that recurs every {@code days} days, at the same local time
+     */
+    public static int everyDays(int days) {
+        return KIND_DAILY | (checkInterval(days) << KIND_BITS);
+    }
+
+    /**
+     * @param daysOfWeek The days of the week, {@link Calendar#SUNDAY} to {@link Calendar#SATURDAY}
+     * @return A rule for a reminder that recurs on the given days of every week, at the same local
+     *     time
+     */
+    public static int onDaysOfWeek(int... daysOfWeek) {
+        int days = 0;
+        for (int day : daysOfWeek) {
+            if (day < Calendar.SUNDAY || day > Calendar.SATURDAY) {
+                throw new IllegalArgumentException("No such day of the week: " + day);
+            }
+            days |= 1 << (day - Calendar.SUNDAY);
+        }
+        if (days == 0) {
+            throw new IllegalArgumentException("Need at least one day of the week!");
+        }
+        return KIND_WEEKLY | (days << KIND_BITS);
+    }
+
+    /**
+     * @param rule A rule
+     * @return Whether the rule recurs at all
+     */
+    public static boolean isRecurring(int rule) {
+        return rule != NONE;
+    }
+
+    /**
+     * @param rule A rule
+     * @return Its kind: {@link #KIND_HOURLY}, {@link #KIND_DAILY}, {@link #KIND_WEEKLY} or
+     *     {@link #NONE}
+     */
+    public static int getKind(int rule) {
+        return rule & KIND_MASK;
+    }
+
+    /**
+     * @param rule An hourly or daily rule
+     * @return The number of hours or days between occurrences
+     */
+    public static int getInterval(int rule) {
+        return rule >>> KIND_BITS;
+    }
+
+    /**
+     * @param rule A weekly rule
+     * @param dayOfWeek A day of the week, {@link Calendar#SUNDAY} to {@link Calendar#SATURDAY}
+     * @return Whether the rule recurs on that day
+     */
+    public static boolean isOnDayOfWeek(int rule, int dayOfWeek) {
+        return ((rule >>> KIND_BITS) & (1 << (dayOfWeek - Calendar.SUNDAY))) != 0;
+    }
+
+    private static int checkInterval(int interval) {
+        if (interval < 1 || interval > MAX_INTERVAL) {
+            throw new IllegalArgumentException("Invalid interval: " + interval);
+        }
+        return interval;
+    }
+}
@@ -0,0 +1,164 @@
+package com.niznash.remind.util;
+
+import java.util.ArrayList;
+
+/**
+ * Search text typed by the user, split into words the way the full-text index splits titles.
+ *
+ * <p>A title matches when, for every word of the query, one of its words starts with it. Words
+ * are runs of ASCII letters and digits, plus any non-ASCII character; ASCII letters are
+ * lowercased. That is what the "simple" tokenizer of SQLite does, so {@link #matches(String)}
+ * agrees with the index on every title, and the query can be refined in memory.
+ *
+ * <p>Does not depend on Android.
+ *
+ * @author niznash@gmail.com (Alejandro Nijamkin)
+ */
+public class SearchQuery {
+
+    private final String mText;
+    private final String[] mWords;
+
+    /**
+     * Constructor.
+     *
+     * @param text The search text, as typed
+     */
+    public SearchQuery(String text) {
+        mText = text != null ? text.trim() : "";
+        mWords = split(mText);
+    }
+
+    /**
+     * @return The search text, without leading or trailing white space
+     */
+    public String getText() {
+        return mText;
+    }
+
+    /**
+     * @return Whether the text has no words, and so matches nothing
+     */
+    public boolean isEmpty() {
+        return mWords.length == 0;
+    }
+
+    /**
+     * Builds the full-text {@code MATCH} query: every word as a prefix, all of them required.
+     *
+     * <p>Only the characters of words make it into the query, so nothing the user types can be
+     * read as query syntax.
+     *
+     * @return The query, or {@code null} if the text has no words
+     */
+    public String toFtsQuery() {
+        if (mWords.length == 0) {
+            return null;
+        }
+
+        StringBuilder sb = new StringBuilder(mText.length() + mWords.length * 2);
+        for (String word : mWords) {
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.append(word).append('*');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Whether every title matched by this query is also matched by another one, as when more is
+     * typed: every word of the other query is the start of a word of this one.
+     *
+     * @param other The other query
+     * @return Whether this query finds a subset of what the other finds
+     */
+    public boolean narrows(SearchQuery other) {
+        if (other.mWords.length == 0) {
+            return false;
+        }
+
+        for (String prefix : other.mWords) {
+            if (!hasWordStartingWith(mWords, prefix)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param title A title
+     * @return Whether the full-text index would match the title with this query
+     */
+    public boolean matches(String title) {
+        if (mWords.length == 0) {
+            return false;
+        }
+
+        final String[] words = split(title);
+        for (String prefix : mWords) {
+            if (!hasWordStartingWith(words, prefix)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether a title starts with the search text, ignoring the case of ASCII letters only, as
+     * SQLite's {@code NOCASE} collation does.
+     *
+     * @param title A title
+     * @return Whether it starts with the text
+     */
+    public boolean isPrefixOf(String title) {
+        final int length = mText.length();
+        if (title.length() < length) {
+            return false;
+        }
+
+        for (int i = 0; i < length; i++) {
+            if (foldAscii(title.charAt(i)) != foldAscii(mText.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean hasWordStartingWith(String[] words, String prefix) {
+        for (String word : words) {
+            if (word.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Splits text into words, as the "simple" tokenizer of SQLite does.
+     */
+    private static String[] split(String text) {
+        ArrayList<String> words = new ArrayList<String>();
+        StringBuilder word = new StringBuilder();
+        final int length = text.length();
+        for (int i = 0; i < length; i++) {
+            final char c = text.charAt(i);
+            if (c >= 0x80 || (c >= '0' && c <= '9') || (c >= 'a' && c <= 'z')
+                    || (c >= 'A' && c <= 'Z')) {
+                word.append(foldAscii(c));
+            } else if (word.length() > 0) {
+                words.add(word.toString());
+                word.setLength(0);
+            }
+        }
+        if (word.length() > 0) {
+            words.add(word.toString());
+        }
+
+        return words.toArray(new String[words.size()]);
+    }
+
+    private static char foldAscii(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+}
@@ -0,0 +1,157 @@
+package com.niznash.remind.util;
+
+import java.util.Arrays;
+
+/**
+ * Index from {@code long} keys, such as reminder IDs, to the {@code int} slots of structures that
+ * keep their entries in parallel primitive arrays.
+ *
+ * <p>The key of every slot is held here, and found through an open-addressing hash table of slot
+ * numbers with linear probing, kept at most half full so probe sequences stay short. Removing a
+ * key shifts back the entries after it rather than leaving a tombstone, so lookups never slow down
+ * with churn. Neither a lookup, an insert nor a removal allocates. Which slots are free is up to
+ * the owner.
+ *
+ * <p>Not thread-safe. Does not depend on Android.
+ *
+ * @author niznash@gmail.com (Alejandro Nijamkin)
+ */
+public class SlotIndex {
+
+    /**
+     * Returned by {@link #find(long)} for a key that is not in the index
+     */
+    public static final int NONE = -1;
+
+    // Keys, by slot
+    private long[] mKeys;
+
+    // Hash table of slot + 1, 0 for an empty bucket
+    private int[] mTable;
+    private int mMask;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity Number of slots
+     */
+    public SlotIndex(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+
+        mKeys = new long[capacity];
+        allocateTable(capacity);
+    }
+
+    /**
+     * @return The number of slots
+     */
+    public int getCapacity() {
+        return mKeys.length;
+    }
+
+    /**
+     * @param slot A slot in the index
+     * @return Its key
+     */
+    public long getKey(int slot) {
+        return mKeys[slot];
+    }
+
+    /**
+     * @param key A key
+     * @return Its slot, or {@link #NONE} if it is not in the index
+     */
+    public int find(long key) {
+        for (int i = hash(key) & mMask; mTable[i] != 0; i = (i + 1) & mMask) {
+            if (mKeys[mTable[i] - 1] == key) {
+                return mTable[i] - 1;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Adds a key, at a slot that is not in the index. The key must not be in the index either.
+     *
+     * @param slot The slot
+     * @param key The key
+     */
+    public void add(int slot, long key) {
+        mKeys[slot] = key;
+        insert(slot);
+    }
+
+    /**
+     * Removes a slot, and its key, from the index.
+     *
+     * @param slot A slot in the index
+     */
+    public void remove(int slot) {
+        int i = hash(mKeys[slot]) & mMask;
+        while (mTable[i] != slot + 1) {
+            i = (i + 1) & mMask;
+        }
+
+        // Shift back the entries after the hole so no probe sequence is broken
+        mTable[i] = 0;
+        for (int j = (i + 1) & mMask; mTable[j] != 0; j = (j + 1) & mMask) {
+            // The entry at j can fill the hole at i unless its home bucket lies after i
+            final int home = hash(mKeys[mTable[j] - 1]) & mMask;
+            final boolean stays = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+            if (!stays) {
+                mTable[i] = mTable[j];
+                mTable[j] = 0;
+                i = j;
+            }
+        }
+    }
+
+    /**
+     * Removes every slot from the index.
+     */
+    public void clear() {
+        Arrays.fill(mTable, 0);
+    }
+
+    /**
+     * Makes room for more slots. The slots in the index keep their key.
+     *
+     * @param capacity The new number of slots, no less than the current one
+     */
+    public void grow(int capacity) {
+        if (capacity < mKeys.length) {
+            throw new IllegalArgumentException("Cannot shrink to " + capacity + " slots!");
+        }
+
+        final int[] table = mTable;
+        mKeys = ArrayUtil.copyOf(mKeys, capacity);
+        allocateTable(capacity);
+        for (int entry : table) {
+            if (entry != 0) {
+                insert(entry - 1);
+            }
+        }
+    }
+
+    private void allocateTable(int capacity) {
+        // At most half full
+        final int tableSize = Integer.highestOneBit(capacity * 2 - 1) << 1;
+        mTable = new int[tableSize];
+        mMask = tableSize - 1;
+    }
+
+    private void insert(int slot) {
+        int i = hash(mKeys[slot]) & mMask;
+        while (mTable[i] != 0) {
+            i = (i + 1) & mMask;
+        }
+        mTable[i] = slot + 1;
+    }
+
+    private static int hash(long key) {
+        final int h = (int) (key ^ (key >>> 32)) * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,37 @@
+package com.niznash.remind.util;
+
+/**
+ * Builds SQL fragments.
+ *
+ * @author niznash@gmail.com (Alejandro Nijamkin)
+ */
+public class SqlUtil {
+
+    /**
+     * Builds a {@code column IN (...)} selection that matches any of the given IDs.
+     *
+     * <p>The IDs are written into the SQL as literals rather than bound as arguments: they are
+     * numbers so there is nothing to escape, and SQLite limits the number of bound arguments per
+     * statement to 999.
+     *
+     * @param column The column to match
+     * @param ids The IDs to match, must not be empty
+     * @return The selection, without the "WHERE"
+     */
+    public static String inSelection(String column, long[] ids) {
+        if (ids.length == 0) {
+            throw new IllegalArgumentException("No IDs to select!");
+        }
+
+        // Each ID takes, on average, a handful of digits plus the separator
+        StringBuilder sb = new StringBuilder(column.length() + 6 + ids.length * 8);
+        sb.append(column).append(" IN (");
+        for (int i = 0; i < ids.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(ids[i]);
+        }
+        return sb.append(')').toString();
+    }
+}
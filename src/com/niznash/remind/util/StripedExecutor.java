@@ -0,0 +1,451 @@
+package com.niznash.remind.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs tasks on a fixed number of threads, called lanes, with the tasks for the same key always
+ * on the same lane. Tasks for one key run one at a time, in the order they were submitted; tasks
+ * for keys on different lanes run concurrently.
+ *
+ * <p>A task can also be keyed on several keys at once (see {@link #execute(long[], Runnable)}).
+ * It then runs after every task submitted before it on any of those keys, and before every task
+ * submitted after it.
+ *
+ * <p>Tasks submitted with a {@link Group} are run together with the tasks of the same group queued
+ * right behind them on their lane, up to a number of tasks and a time limit: a lane that takes
+ * such a task waits that long for more to come before running them all at once.
+ *
+ * <p>Keeps counters of the tasks queued, running and completed, and of how long they waited and
+ * ran (see {@link #getStats()}).
+ *
+ * <p>Nothing but the executor has its threads, and it never interrupts them: a lane whose thread
+ * is interrupted anyway finishes the tasks it took off its queue, and stops.
+ *
+ * <p>Does not depend on Android.
+ *
+ * @author niznash@gmail.com (Alejandro Nijamkin)
+ */
+public class StripedExecutor {
+
+    /**
+     * Snapshot of the counters of an executor.
+     */
+    public static class Stats {
+        /** Tasks submitted that have not started yet */
+        public int queued;
+
+        /** Tasks running */
+        public int running;
+
+        /** Tasks finished */
+        public long completed;
+
+        /** Total and longest time tasks waited to start, in nanoseconds */
+        public long totalWaitNanos;
+        public long maxWaitNanos;
+
+        /** Total and longest time tasks ran, with the rest of their group if any, in nanoseconds */
+        public long totalRunNanos;
+        public long maxRunNanos;
+
+        /** Groups run, and tasks run in them */
+        public long groups;
+        public long groupedTasks;
+
+        /**
+         * @return The average time a finished task waited to start, in milliseconds
+         */
+        public double getMeanWaitMillis() {
+            return completed > 0 ? totalWaitNanos / 1e6 / completed : 0;
+        }
+
+        /**
+         * @return The average time a finished task ran, in milliseconds
+         */
+        public double getMeanRunMillis() {
+            return completed > 0 ? totalRunNanos / 1e6 / completed : 0;
+        }
+
+        /**
+         * @return The average number of tasks in a group
+         */
+        public double getMeanGroupSize() {
+            return groups > 0 ? (double) groupedTasks / groups : 0;
+        }
+
+        @Override
+        public String toString() {
+            return "queued=" + queued + " running=" + running + " completed=" + completed
+                    + " meanWaitMs=" + getMeanWaitMillis() + " maxWaitMs=" + maxWaitNanos / 1e6
+                    + " meanRunMs=" + getMeanRunMillis() + " maxRunMs=" + maxRunNanos / 1e6
+                    + " groups=" + groups + " meanGroupSize=" + getMeanGroupSize();
+        }
+    }
+
+    /**
+     * Runs several tasks at once, e.g. in a single transaction.
+     */
+    public interface Group {
+        /**
+         * Runs the tasks, in the order they were submitted, with the same effect as running them
+         * one after the other.
+         *
+         * @param tasks The tasks, all submitted with this group
+         */
+        void run(List<Runnable> tasks);
+    }
+
+    private final Lane[] mLanes;
+
+    // Limits of a group
+    private final int mMaxGroupSize;
+    private final long mMaxGroupDelayNanos;
+
+    // Lane of the next task with no key
+    private final AtomicInteger mNextLane = new AtomicInteger();
+
+    // Held while a task keyed on several lanes is queued on all of them, so they all agree on
+    // the order of such tasks, and none waits on another that waits on it
+    private final Object mMultiLaneLock = new Object();
+
+    // Counters
+    private final AtomicInteger mQueued = new AtomicInteger();
+    private final AtomicInteger mRunning = new AtomicInteger();
+    private final AtomicLong mCompleted = new AtomicLong();
+    private final AtomicLong mTotalWaitNanos = new AtomicLong();
+    private final AtomicLong mMaxWaitNanos = new AtomicLong();
+    private final AtomicLong mTotalRunNanos = new AtomicLong();
+    private final AtomicLong mMaxRunNanos = new AtomicLong();
+    private final AtomicLong mGroups = new AtomicLong();
+    private final AtomicLong mGroupedTasks = new AtomicLong();
+
+    /**
+     * Constructor, for an executor that never groups tasks.
+     *
+     * @param lanes The number of lanes, and of threads
+     * @param name The name of the threads, numbered by lane
+     */
+    public StripedExecutor(int lanes, String name) {
+        this(lanes, 1, 0, name);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param lanes The number of lanes, and of threads
+     * @param maxGroupSize The maximum number of tasks to run in a group
+     * @param maxGroupDelayMillis The longest a lane waits, from the first task of a group, for
+     *     more tasks of the group to come
+     * @param name The name of the threads, numbered by lane
+     */
+    public StripedExecutor(int lanes, int maxGroupSize, long maxGroupDelayMillis, String name) {
+        if (lanes < 1) {
+            throw new IllegalArgumentException("Need at least one lane!");
+        }
+        if (maxGroupSize < 1 || maxGroupDelayMillis < 0) {
+            throw new IllegalArgumentException("Invalid group limits!");
+        }
+
+        mMaxGroupSize = maxGroupSize;
+        mMaxGroupDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxGroupDelayMillis);
+        mLanes = new Lane[lanes];
+        for (int i = 0; i < lanes; i++) {
+            mLanes[i] = new Lane();
+            Thread thread = new Thread(mLanes[i], name + "-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * @return The number of lanes
+     */
+    public int getLaneCount() {
+        return mLanes.length;
+    }
+
+    /**
+     * Runs a task after every task submitted before it for the same key.
+     *
+     * @param key The key
+     * @param task The task
+     */
+    public void execute(long key, Runnable task) {
+        execute(key, task, null);
+    }
+
+    /**
+     * Runs a task after every task submitted before it for the same key, possibly together with
+     * others of the same group.
+     *
+     * @param key The key
+     * @param task The task
+     * @param group The group of the task, or {@code null} to run it alone
+     */
+    public void execute(long key, Runnable task, Group group) {
+        mLanes[getLane(key)].execute(new Tracked(task, group, 1));
+    }
+
+    /**
+     * Runs a task that is not ordered with any other, on the next lane in turn.
+     *
+     * @param task The task
+     */
+    public void execute(Runnable task) {
+        execute(task, null);
+    }
+
+    /**
+     * Runs a task that is not ordered with any other, on the next lane in turn, possibly together
+     * with others of the same group.
+     *
+     * @param task The task
+     * @param group The group of the task, or {@code null} to run it alone
+     */
+    public void execute(Runnable task, Group group) {
+        final int lane = (mNextLane.getAndIncrement() & Integer.MAX_VALUE) % mLanes.length;
+        mLanes[lane].execute(new Tracked(task, group, 1));
+    }
+
+    /**
+     * Runs a task after every task submitted before it for any of the given keys, and before
+     * every task submitted after it for any of them. While it waits for the lanes of all the keys
+     * to get to it, the ones that already did are held. Such a task always runs alone.
+     *
+     * @param keys The keys, must not be empty
+     * @param task The task
+     */
+    public void execute(long[] keys, Runnable task) {
+        if (keys.length == 0) {
+            throw new IllegalArgumentException("No keys to run the task for!");
+        }
+
+        boolean[] used = new boolean[mLanes.length];
+        int count = 0;
+        for (long key : keys) {
+            final int lane = getLane(key);
+            if (!used[lane]) {
+                used[lane] = true;
+                count++;
+            }
+        }
+
+        Tracked tracked = new Tracked(task, null, count);
+        if (count == 1) {
+            mLanes[getLane(keys[0])].execute(tracked);
+            return;
+        }
+
+        synchronized (mMultiLaneLock) {
+            for (int lane = 0; lane < used.length; lane++) {
+                if (used[lane]) {
+                    mLanes[lane].execute(tracked);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return A snapshot of the counters
+     */
+    public Stats getStats() {
+        Stats stats = new Stats();
+        stats.queued = mQueued.get();
+        stats.running = mRunning.get();
+        stats.completed = mCompleted.get();
+        stats.totalWaitNanos = mTotalWaitNanos.get();
+        stats.maxWaitNanos = mMaxWaitNanos.get();
+        stats.totalRunNanos = mTotalRunNanos.get();
+        stats.maxRunNanos = mMaxRunNanos.get();
+        stats.groups = mGroups.get();
+        stats.groupedTasks = mGroupedTasks.get();
+        return stats;
+    }
+
+    private int getLane(long key) {
+        // Spread the bits, sequential IDs would otherwise land on the lanes in turn anyway, but
+        // keys with a common stride might not
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) ((hash >>> 33) % mLanes.length);
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Records that tasks started.
+     */
+    private void onStarted(int count) {
+        mQueued.addAndGet(-count);
+        mRunning.addAndGet(count);
+    }
+
+    /**
+     * Records that a task finished.
+     */
+    private void onFinished(Tracked task, long start, long end) {
+        mRunning.decrementAndGet();
+        mCompleted.incrementAndGet();
+        mTotalWaitNanos.addAndGet(start - task.mSubmitNanos);
+        updateMax(mMaxWaitNanos, start - task.mSubmitNanos);
+        mTotalRunNanos.addAndGet(end - start);
+        updateMax(mMaxRunNanos, end - start);
+    }
+
+    /**
+     * A lane: a thread that runs the tasks in its queue one at a time, or a group at a time.
+     */
+    private class Lane implements Runnable {
+        private final LinkedBlockingQueue<Tracked> mQueue = new LinkedBlockingQueue<Tracked>();
+
+        // Task taken off the queue while filling a group it does not belong to, runs next
+        private Tracked mNext;
+
+        // Group being run, reused
+        private final ArrayList<Tracked> mGroup = new ArrayList<Tracked>();
+        private final ArrayList<Runnable> mGroupTasks = new ArrayList<Runnable>();
+
+        public void execute(Tracked task) {
+            mQueue.add(task);
+        }
+
+        public void run() {
+            while (mNext != null || !Thread.currentThread().isInterrupted()) {
+                try {
+                    Tracked task = mNext != null ? mNext : mQueue.take();
+                    mNext = null;
+                    if (task.mGroup == null || mMaxGroupSize == 1) {
+                        task.run();
+                    } else {
+                        runGroup(task);
+                    }
+                } catch (InterruptedException e) {
+                    // Stop, and leave the thread marked as interrupted
+                    Thread.currentThread().interrupt();
+                } catch (Throwable t) {
+                    Thread thread = Thread.currentThread();
+                    thread.getUncaughtExceptionHandler().uncaughtException(thread, t);
+                }
+            }
+        }
+
+        /**
+         * Runs a task together with the ones of its group queued behind it, waiting for more up to
+         * the group limits. If interrupted while waiting, runs the group gathered so far and
+         * leaves the thread marked as interrupted.
+         */
+        private void runGroup(Tracked first) {
+            final long deadline = System.nanoTime() + mMaxGroupDelayNanos;
+            boolean interrupted = false;
+            mGroup.add(first);
+            while (mGroup.size() < mMaxGroupSize) {
+                final long remaining = deadline - System.nanoTime();
+                Tracked next;
+                try {
+                    next = remaining > 0 ? mQueue.poll(remaining, TimeUnit.NANOSECONDS)
+                            : mQueue.poll();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    break;
+                }
+                if (next == null) {
+                    break;
+                }
+                if (next.mGroup != first.mGroup) {
+                    mNext = next;
+                    break;
+                }
+                mGroup.add(next);
+            }
+
+            final int count = mGroup.size();
+            for (int i = 0; i < count; i++) {
+                mGroupTasks.add(mGroup.get(i).mTask);
+            }
+
+            final long start = System.nanoTime();
+            onStarted(count);
+            try {
+                first.mGroup.run(mGroupTasks);
+            } finally {
+                final long end = System.nanoTime();
+                for (int i = 0; i < count; i++) {
+                    onFinished(mGroup.get(i), start, end);
+                }
+                mGroups.incrementAndGet();
+                mGroupedTasks.addAndGet(count);
+                mGroup.clear();
+                mGroupTasks.clear();
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * A task, queued on one or more lanes. Runs once every lane got to it, on the last of them;
+     * the others wait for it to finish.
+     */
+    private class Tracked implements Runnable {
+        private final Runnable mTask;
+        private final Group mGroup;
+        private final long mSubmitNanos = System.nanoTime();
+
+        // Lanes that have yet to get to the task
+        private final AtomicInteger mWaiting;
+
+        // Whether the task finished, guarded by this
+        private boolean mDone;
+
+        public Tracked(Runnable task, Group group, int lanes) {
+            mTask = task;
+            mGroup = group;
+            mWaiting = new AtomicInteger(lanes);
+            mQueued.incrementAndGet();
+        }
+
+        public void run() {
+            if (mWaiting.decrementAndGet() > 0) {
+                awaitDone();
+                return;
+            }
+
+            final long start = System.nanoTime();
+            onStarted(1);
+            try {
+                mTask.run();
+            } finally {
+                onFinished(this, start, System.nanoTime());
+
+                synchronized (this) {
+                    mDone = true;
+                    notifyAll();
+                }
+            }
+        }
+
+        private synchronized void awaitDone() {
+            boolean interrupted = false;
+            while (!mDone) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
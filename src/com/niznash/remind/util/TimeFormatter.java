@@ -0,0 +1,165 @@
+package com.niznash.remind.util;
+
+import java.text.DateFormatSymbols;
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Formats Posix times as {@code "MMM dd h:mmaa"} (e.g. {@code "Oct 07 3:05PM"}) for a fixed
+ * locale and time zone.
+ *
+ * <p>Rendered labels are cached per minute, so formatting a time in a minute that was formatted
+ * recently returns the same {@code String} without allocating. Otherwise, the start and end of the
+ * last day formatted are kept, and times in that day get their hour and minute by plain arithmetic
+ * instead of a {@link Calendar} computation; only the label itself is allocated.
+ *
+ * <p>Not thread-safe.
+ *
+ * @author niznash@gmail.com (Alejandro Nijamkin)
+ */
+public class TimeFormatter {
+
+    private static final long MINUTE = 60 * 1000;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long DAY = 24 * HOUR;
+
+    // Number of labels cached, a power of two
+    private static final int CACHE_SIZE = 256;
+
+    // Labels by minute, direct-mapped
+    private final long[] mCacheKeys = new long[CACHE_SIZE];
+    private final String[] mCacheLabels = new String[CACHE_SIZE];
+
+    private final TimeZone mTimeZone;
+    private final Calendar mCalendar;
+    private final String[] mMonths;
+    private final String[] mAmPm;
+    private final StringBuilder mBuilder = new StringBuilder(24);
+
+    // The last day formatted: [start, end), and its "MMM dd " prefix
+    private long mDayStart = Long.MAX_VALUE;
+    private long mDayEnd = Long.MIN_VALUE;
+    private String mDayPrefix;
+
+    /*
+     * Whether the day starts at midnight, is 24 hours long and has the same time zone offset all
+     * day long, i.e. has no DST transition
+     */
+    private boolean mDayUniform;
+
+    /**
+     * Constructor.
+     *
+     * @param locale The locale for month names and AM/PM markers
+     * @param timeZone The time zone to format times in
+     */
+    public TimeFormatter(Locale locale, TimeZone timeZone) {
+        mTimeZone = timeZone;
+        mCalendar = Calendar.getInstance(timeZone, locale);
+        DateFormatSymbols symbols = new DateFormatSymbols(locale);
+        mMonths = symbols.getShortMonths();
+        mAmPm = symbols.getAmPmStrings();
+    }
+
+    /**
+     * Formats a time.
+     *
+     * @param time The time (Posix time)
+     * @return The label, e.g. {@code "Oct 07 3:05PM"}
+     */
+    public String format(long time) {
+        final long minute = floorDiv(time, MINUTE);
+        final int index = (int) (minute ^ (minute >>> 32)) & (CACHE_SIZE - 1);
+        if (mCacheKeys[index] == minute && mCacheLabels[index] != null) {
+            return mCacheLabels[index];
+        }
+
+        moveToDay(time);
+        final int hours = getHours(time);
+        final int minutes = getMinutes(time);
+
+        mBuilder.setLength(0);
+        mBuilder.append(mDayPrefix);
+        mBuilder.append(hours % 12 == 0 ? 12 : hours % 12).append(':');
+        if (minutes < 10) {
+            mBuilder.append('0');
+        }
+        mBuilder.append(minutes).append(mAmPm[hours < 12 ? 0 : 1]);
+        String label = mBuilder.toString();
+
+        // Only cache if the day starts on a whole minute, so each minute has a single label
+        if (mDayStart % MINUTE == 0) {
+            mCacheKeys[index] = minute;
+            mCacheLabels[index] = label;
+        }
+        return label;
+    }
+
+    /**
+     * Extracts the hours a day from a time.
+     *
+     * @param time The time (Posix time)
+     * @return The hours a day (24 hour format)
+     */
+    public int getHours(long time) {
+        moveToDay(time);
+        if (mDayUniform) {
+            return (int) ((time - mDayStart) / HOUR);
+        }
+
+        mCalendar.setTimeInMillis(time);
+        return mCalendar.get(Calendar.HOUR_OF_DAY);
+    }
+
+    /**
+     * Extracts the minutes from a time.
+     *
+     * @param time The time (Posix time)
+     * @return The minutes
+     */
+    public int getMinutes(long time) {
+        moveToDay(time);
+        if (mDayUniform) {
+            return (int) ((time - mDayStart) % HOUR / MINUTE);
+        }
+
+        mCalendar.setTimeInMillis(time);
+        return mCalendar.get(Calendar.MINUTE);
+    }
+
+    /**
+     * Makes the day of the given time the current day, unless it already is.
+     */
+    private void moveToDay(long time) {
+        if (time >= mDayStart && time < mDayEnd) {
+            return;
+        }
+
+        mCalendar.setTimeInMillis(time);
+        mCalendar.set(Calendar.HOUR_OF_DAY, 0);
+        mCalendar.set(Calendar.MINUTE, 0);
+        mCalendar.set(Calendar.SECOND, 0);
+        mCalendar.set(Calendar.MILLISECOND, 0);
+        mDayStart = mCalendar.getTimeInMillis();
+        final int month = mCalendar.get(Calendar.MONTH);
+        final int day = mCalendar.get(Calendar.DAY_OF_MONTH);
+        mCalendar.add(Calendar.DAY_OF_MONTH, 1);
+        mDayEnd = mCalendar.getTimeInMillis();
+        final int offset = mTimeZone.getOffset(mDayStart);
+        mDayUniform = mDayEnd - mDayStart == DAY && (mDayStart + offset) % DAY == 0
+            && offset == mTimeZone.getOffset(mDayEnd - 1);
+
+        mBuilder.setLength(0);
+        mBuilder.append(mMonths[month]).append(' ');
+        if (day < 10) {
+            mBuilder.append('0');
+        }
+        mDayPrefix = mBuilder.append(day).append(' ').toString();
+    }
+
+    private static long floorDiv(long x, long y) {
+        final long q = x / y;
+        return (x % y != 0 && (x < 0) != (y < 0)) ? q - 1 : q;
+    }
+}
@@ -2,17 +2,47 @@ package com.niznash.remind.util;
 
 import java.util.Calendar;
 import java.util.Locale;
-
-import android.text.format.DateFormat;
+import java.util.TimeZone;
 
 /**
  * Converts {@code long}s to readable dates.
  *
+ * <p>Formatting goes through a shared {@link TimeFormatter} for the default locale and time zone.
+ * It is rebuilt when the default locale changes, and must be dropped with {@link #invalidate()}
+ * when the time zone changes.
+ *
  * @author niznash@gmail.com (Alejandro Nijamkin)
  */
 public class TimeUtil {
 
-    private static final String FORMAT = "MMM dd h:mmaa";
+    private static final long DAY = 24 * 60 * 60 * 1000;
+
+    private static TimeFormatter sFormatter;
+    private static Locale sLocale;
+
+    // For occurrences, in the default time zone
+    private static Calendar sCalendar;
+
+    /**
+     * Gets the shared formatter, (re)creating it if needed.
+     */
+    private static TimeFormatter getFormatter() {
+        // Locale.getDefault() returns the same instance until the default changes
+        final Locale locale = Locale.getDefault();
+        if (sFormatter == null || locale != sLocale) {
+            sLocale = locale;
+            sFormatter = new TimeFormatter(locale, TimeZone.getDefault());
+        }
+        return sFormatter;
+    }
+
+    /**
+     * Drops the cached formatting state. Call when the default time zone or locale changes.
+     */
+    public static synchronized void invalidate() {
+        sFormatter = null;
+        sCalendar = null;
+    }
 
     /**
      * Converts a time (in Posix time} to readable text.
@@ -20,8 +50,8 @@ public class TimeUtil {
      * @param time The time
      * @return A user readable string for that time
      */
-    public static String toText(long time) {
-        return (String) DateFormat.format(FORMAT, time);
+    public static synchronized String toText(long time) {
+        return getFormatter().format(time);
     }
 
     /**
@@ -30,10 +60,8 @@ public class TimeUtil {
      * @param time The time
      * @return The hours a day
      */
-    public static int getHours(long time) {
-        Calendar c = Calendar.getInstance(Locale.getDefault());
-        c.setTimeInMillis(time);
-        return c.get(Calendar.HOUR_OF_DAY);
+    public static synchronized int getHours(long time) {
+        return getFormatter().getHours(time);
     }
 
     /**
@@ -42,10 +70,20 @@ public class TimeUtil {
      * @param time The time
      * @return The minutes
      */
-    public static int getMinutes(long time) {
-        Calendar c = Calendar.getInstance(Locale.getDefault());
-        c.setTimeInMillis(time);
-        return c.get(Calendar.MINUTE);
+    public static synchronized int getMinutes(long time) {
+        return getFormatter().getMinutes(time);
+    }
+
+    /**
+     * Extracts the day of the week from the given Posix time.
+     *
+     * @param time The time
+     * @return The day of the week, {@link Calendar#SUNDAY} to {@link Calendar#SATURDAY}
+     */
+    public static synchronized int getDayOfWeek(long time) {
+        Calendar calendar = getCalendar();
+        calendar.setTimeInMillis(time);
+        return calendar.get(Calendar.DAY_OF_WEEK);
     }
 
     /**
@@ -68,4 +106,101 @@ public class TimeUtil {
 
         return result;
     }
+
+    /**
+     * Computes the first occurrence of a reminder after a given time.
+     *
+     * <p>Hourly rules recur every so many hours of elapsed time. Daily and weekly rules recur at
+     * the same local time of day as the first occurrence, whatever daylight saving time changes
+     * come in between; a time of day skipped by a change moves forward by the length of the gap,
+     * and one repeated by a change is taken the second time, in standard time.
+     * Takes constant time however far apart the two times are.
+     *
+     * @param start The first occurrence, the reminder's time
+     * @param rule The {@link Recurrence} rule of the reminder
+     * @param after The time to look after
+     * @return The first occurrence strictly after {@code after}, or {@link Long#MAX_VALUE} if there
+     *     is none
+     */
+    public static synchronized long nextOccurrence(long start, int rule, long after) {
+        if (after < start && Recurrence.getKind(rule) != Recurrence.KIND_WEEKLY) {
+            return start;
+        }
+
+        switch (Recurrence.getKind(rule)) {
+            case Recurrence.NONE:
+                return Long.MAX_VALUE;
+
+            case Recurrence.KIND_HOURLY: {
+                final long period = Recurrence.getInterval(rule) * 60L * 60 * 1000;
+                return start + ((after - start) / period + 1) * period;
+            }
+
+            case Recurrence.KIND_DAILY: {
+                // The last occurrence on or before the day of "after", or the one after that
+                final int interval = Recurrence.getInterval(rule);
+                final long days = getDaysBetween(start, after) / interval * interval;
+                final long occurrence = addDays(start, days);
+                return occurrence > after ? occurrence : addDays(start, days + interval);
+            }
+
+            case Recurrence.KIND_WEEKLY: {
+                // Every day of the following week, starting from the day of "after"
+                final long first = Math.max(getDaysBetween(start, Math.max(after, start)), 0);
+                for (long days = first; days <= first + 7; days++) {
+                    final long occurrence = addDays(start, days);
+                    if (occurrence > after && Recurrence.isOnDayOfWeek(rule,
+                            sCalendar.get(Calendar.DAY_OF_WEEK))) {
+                        return occurrence;
+                    }
+                }
+                return Long.MAX_VALUE;
+            }
+
+            default:
+                throw new IllegalArgumentException("Unknown recurrence: " + rule);
+        }
+    }
+
+    private static Calendar getCalendar() {
+        if (sCalendar == null) {
+            sCalendar = Calendar.getInstance(TimeZone.getDefault());
+        }
+        return sCalendar;
+    }
+
+    /**
+     * @return The number of local calendar days from the day of one time to the day of another
+     */
+    private static long getDaysBetween(long from, long to) {
+        return getLocalDay(to) - getLocalDay(from);
+    }
+
+    /**
+     * @return The local day of a time, counted in days since the epoch
+     */
+    private static long getLocalDay(long time) {
+        Calendar calendar = getCalendar();
+        calendar.setTimeInMillis(time);
+        final long local = time + calendar.get(Calendar.ZONE_OFFSET)
+                + calendar.get(Calendar.DST_OFFSET);
+        return local >= 0 ? local / DAY : (local + 1) / DAY - 1;
+    }
+
+    /**
+     * @return The same local time of day as a time, some days later; leaves the result in
+     *     {@link #sCalendar}
+     */
+    private static long addDays(long time, long days) {
+        Calendar calendar = getCalendar();
+        calendar.setTimeInMillis(time);
+
+        // Moves the date from noon, which no change skips, then sets the time of day back as a
+        // wall clock time; add() alone would move a skipped time back instead of forward
+        final int hourOfDay = calendar.get(Calendar.HOUR_OF_DAY);
+        calendar.set(Calendar.HOUR_OF_DAY, 12);
+        calendar.add(Calendar.DAY_OF_MONTH, (int) days);
+        calendar.set(Calendar.HOUR_OF_DAY, hourOfDay);
+        return calendar.getTimeInMillis();
+    }
 }